@@ -0,0 +1,80 @@
+package com.example.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import weka.classifiers.trees.RandomForest;
+import weka.core.Instances;
+
+/*
+RandomForest với bootstrap cân bằng class (balanced bagging)
+Mỗi cây lấy từ MỖI class cùng một số dòng (= số dòng của class nhỏ nhất × bagSizePercent / 100),
+rút có hoàn lại → class đa số bị undersample. Cây train trên ít dòng hơn, không có dữ liệu tổng hợp.
+Seed theo từng cây như Bagging (seed + iteration) nên kết quả không phụ thuộc số execution slot.
+Class numeric → bootstrap thường của RandomForest.
+ */
+public class BalancedRandomForest extends RandomForest {
+    private static final long serialVersionUID = 1L;
+
+    // rows[c] = index các dòng thuộc class c trong m_data
+    private transient int[][] rows;
+    private transient int perClass;
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        rows = null;
+        if (data.classAttribute().isNominal()) {
+            List<List<Integer>> byClass = new ArrayList<>();
+            for (int c = 0; c < data.numClasses(); c++) {
+                byClass.add(new ArrayList<>());
+            }
+            for (int j = 0; j < data.numInstances(); j++) {
+                if (!data.instance(j).classIsMissing()) {
+                    byClass.get((int) data.instance(j).classValue()).add(j);
+                }
+            }
+            int smallest = Integer.MAX_VALUE;
+            List<int[]> present = new ArrayList<>();
+            for (List<Integer> indices : byClass) {
+                if (!indices.isEmpty()) {
+                    present.add(indices.stream().mapToInt(Integer::intValue).toArray());
+                    smallest = Math.min(smallest, indices.size());
+                }
+            }
+            if (!present.isEmpty()) {
+                rows = present.toArray(new int[0][]);
+                perClass = Math.max(1, smallest * m_BagSizePercent / 100);
+            }
+        }
+        try {
+            super.buildClassifier(data);
+        } finally {
+            rows = null;
+        }
+    }
+
+    @Override
+    protected synchronized Instances getTrainingSet(int iteration) throws Exception {
+        if (rows == null) {
+            return super.getTrainingSet(iteration);
+        }
+        Random random = new Random(m_Seed + iteration);
+        boolean[] inBag = null;
+        if (m_CalcOutOfBag) {
+            inBag = new boolean[m_data.numInstances()];
+            m_inBag[iteration] = inBag;
+        }
+        Instances bag = new Instances(m_data, rows.length * perClass);
+        for (int[] classRows : rows) {
+            for (int i = 0; i < perClass; i++) {
+                int row = classRows[random.nextInt(classRows.length)];
+                bag.add(m_data.instance(row));
+                if (inBag != null) {
+                    inBag[row] = true;
+                }
+            }
+        }
+        return bag;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.algorithms;
+
+/*
+Cách J48Classifier / RandomForestClassifier xử lý mất cân bằng class
+- SMOTE: sinh mẫu tổng hợp cho class thiểu số (mặc định, như cũ; cách chạy chọn bằng SmoteMode)
+- INSTANCE_WEIGHTS: không thêm dòng, bọc model trong ClassWeightedClassifier: lúc train weight mỗi instance
+  = N / (số class × số instance của class đó), fold test / dữ liệu đánh giá giữ weight gốc
+- COST_SENSITIVE: không đổi dữ liệu, bọc model trong CostSensitiveClassifier với cost matrix
+  tỉ lệ nghịch tần suất class (reweight lúc train, CV đánh giá trên phân phối gốc)
+- BALANCED_BAGGING: chỉ RandomForest — mỗi cây bootstrap cân bằng class bằng cách undersample class
+  đa số (BalancedRandomForest); J48 không có bagging nên dùng SMOTE
+ */
+public enum BalancingMode {
+    SMOTE,
+    INSTANCE_WEIGHTS,
+    COST_SENSITIVE,
+    BALANCED_BAGGING
+}
@@ -0,0 +1,183 @@
+package com.example.algorithms;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import com.example.data.DatasetProfile;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.CostMatrix;
+import weka.classifiers.meta.CostSensitiveClassifier;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Instances;
+
+/*
+Cân bằng class dùng chung cho J48Classifier / RandomForestClassifier (trừ SMOTE, mỗi model tự chạy)
+Khi bật compare, classifier train lại đường SMOTE và mode đang dùng sau khi các nhánh pipeline đã xong, lần lượt
+từng mode một, và ghi lại (model, mode, số dòng, thời gian, CPU, peak heap, F1 và recall class bệnh của CV
+tuning) để in bảng so sánh.
+CPU và peak heap đo cho cả process (mọi worker: fold CV, cây RF, SMOTE) → chỉ đúng vì lúc đo không có việc
+nào khác chạy. Peak heap = tổng peak các memory pool heap từ lúc bắt đầu run (GC trước đó để bỏ rác của run trước).
+ */
+public final class ClassBalancing {
+
+    private ClassBalancing() {
+    }
+
+    /*
+    Bọc classifier theo mode (COST_SENSITIVE → CostSensitiveClassifier, INSTANCE_WEIGHTS →
+    ClassWeightedClassifier, còn lại giữ nguyên). Cả hai chỉ reweight dữ liệu train bên trong buildClassifier.
+    @param base Classifier gốc (J48, RandomForest)
+    @param data Dataset train (dùng để tính cost matrix)
+    @param mode Balancing mode
+    @return Classifier để train / cross-validate
+     */
+    public static Classifier wrap(Classifier base, Instances data, BalancingMode mode) {
+        if (!data.classAttribute().isNominal()) {
+            if (mode == BalancingMode.INSTANCE_WEIGHTS) {
+                System.out.println("Instance weighting skipped: class attribute is not nominal.");
+            }
+            return base;
+        }
+        if (mode == BalancingMode.INSTANCE_WEIGHTS) {
+            ClassWeightedClassifier classifier = new ClassWeightedClassifier();
+            classifier.setClassifier(base);
+            return classifier;
+        }
+        if (mode != BalancingMode.COST_SENSITIVE) {
+            return base;
+        }
+        // cost(actual = i, predicted ≠ i) = max count / count_i → CostSensitiveClassifier reweight theo class
+        long[] counts = DatasetProfile.of(data).getClassCounts();
+        long max = 0;
+        for (long count : counts) {
+            max = Math.max(max, count);
+        }
+        CostMatrix costs = new CostMatrix(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            for (int j = 0; j < counts.length; j++) {
+                costs.setElement(i, j, i == j ? 0.0 : (double) max / Math.max(1, counts[i]));
+            }
+        }
+        CostSensitiveClassifier classifier = new CostSensitiveClassifier();
+        classifier.setClassifier(base);
+        classifier.setCostMatrix(costs);
+        classifier.setMinimizeExpectedCost(false);
+        return classifier;
+    }
+
+    // Forest cho mode: BALANCED_BAGGING → bootstrap cân bằng class mỗi cây, còn lại RandomForest thường
+    public static RandomForest newForest(BalancingMode mode) {
+        return mode == BalancingMode.BALANCED_BAGGING ? new BalancedRandomForest() : new RandomForest();
+    }
+
+    // N / (số class có dữ liệu × count_c): tổng weight giữ bằng N
+    static double[] classWeights(Instances data) {
+        long[] counts = DatasetProfile.of(data).getClassCounts();
+        long total = 0;
+        int present = 0;
+        for (long count : counts) {
+            total += count;
+            present += count > 0 ? 1 : 0;
+        }
+        double[] weights = new double[counts.length];
+        for (int c = 0; c < counts.length; c++) {
+            weights[c] = counts[c] == 0 ? 1.0 : (double) total / (present * counts[c]);
+        }
+        return weights;
+    }
+
+    // Các mode cần train khi so sánh: đường SMOTE, rồi mode đang dùng (nếu khác)
+    public static Set<BalancingMode> comparedModes(BalancingMode used) {
+        return EnumSet.of(BalancingMode.SMOTE, used);
+    }
+
+    // Điểm bắt đầu đo một lần train
+    public static final class Run {
+        private final long start = System.nanoTime();
+        private final long cpuStart = processCpuNanos();
+    }
+
+    // Bắt đầu đo một lần train (thời gian, CPU và peak heap của process)
+    public static Run startRun() {
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools()) {
+            pool.resetPeakUsage();
+        }
+        return new Run();
+    }
+
+    /*
+    Kết quả một lần train, gọi ngay khi train xong (giữa startRun() và đây không có việc nào khác chạy song song)
+    @param model Tên model
+    @param mode Balancing mode đã dùng
+    @param rows Số dòng dữ liệu train sau cân bằng
+    @param run Giá trị trả về của startRun()
+    @param f1 Weighted F1 tốt nhất của CV tuning
+    @param recall Recall class bệnh của cấu hình tốt nhất đó
+    @param used true = mode pipeline đang dùng, false = chỉ để so sánh
+    @return Dòng bảng cho printReport (classifier tự giữ danh sách của nó)
+     */
+    public static String[] record(String model, BalancingMode mode, int rows, Run run, double f1, double recall,
+                                  boolean used) {
+        double seconds = (System.nanoTime() - run.start) / 1e9;
+        long cpu = processCpuNanos();
+        String cpuSeconds = cpu < 0 || run.cpuStart < 0 ? "n/a" : String.format("%.1f", (cpu - run.cpuStart) / 1e9);
+        String peakHeapMb = String.format("%.0f", peakHeapBytes() / (1024.0 * 1024.0));
+        System.out.printf("  Balancing %s (%s): %d rows, %.1f s (%.0f rows/s), CPU %s s, peak heap %s MB, F1 %.4f, disease recall %.4f%s%n",
+                model, mode, rows, seconds, rows / seconds, cpuSeconds, peakHeapMb, f1, recall,
+                used ? "" : " [comparison only]");
+        return new String[]{model, mode.name(), String.valueOf(rows), String.format("%.1f", seconds),
+                String.format("%.0f", rows / seconds), cpuSeconds, peakHeapMb, String.format("%.4f", f1),
+                String.format("%.4f", recall), used ? "✓" : ""};
+    }
+
+    /*
+    In bảng các lần train
+    @param runs Các dòng record() của những classifier cần so sánh
+     */
+    public static void printReport(List<String[]> runs) {
+        if (runs.isEmpty()) {
+            return;
+        }
+        System.out.println("\nClass Balancing Comparison");
+        System.out.println(String.format("%-12s %-16s %10s %10s %10s %10s %13s %8s %8s %5s",
+                "Model", "Mode", "Rows", "Time (s)", "Rows/s", "CPU (s)", "Peak heap MB", "F1", "Recall", "Used"));
+        System.out.println("-".repeat(111));
+        for (String[] row : runs) {
+            System.out.println(String.format("%-12s %-16s %10s %10s %10s %10s %13s %8s %8s %5s", (Object[]) row));
+        }
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heap.add(pool);
+            }
+        }
+        return heap;
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools()) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
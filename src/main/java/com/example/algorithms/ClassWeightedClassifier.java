@@ -0,0 +1,43 @@
+package com.example.algorithms;
+
+import weka.classifiers.SingleClassifierEnhancer;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.WeightedInstancesHandler;
+
+/*
+Balancing INSTANCE_WEIGHTS: nhân weight mỗi instance train với N / (số class có dữ liệu × count_c) rồi build
+classifier gốc. Weight chỉ tính và đặt trong buildClassifier (trên bản copy của tập train / fold train) nên
+fold test của CV và dữ liệu đánh giá vẫn giữ weight gốc — giống CostSensitiveClassifier reweight lúc train.
+ */
+public class ClassWeightedClassifier extends SingleClassifierEnhancer implements WeightedInstancesHandler {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        getCapabilities().testWithFail(data);
+        if (!data.classAttribute().isNominal()) {
+            m_Classifier.buildClassifier(data);
+            return;
+        }
+        double[] weights = ClassBalancing.classWeights(data);
+        Instances weighted = new Instances(data);
+        for (int j = 0; j < weighted.numInstances(); j++) {
+            Instance instance = weighted.instance(j);
+            if (!instance.classIsMissing()) {
+                instance.setWeight(instance.weight() * weights[(int) instance.classValue()]);
+            }
+        }
+        m_Classifier.buildClassifier(weighted);
+    }
+
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception {
+        return m_Classifier.distributionForInstance(instance);
+    }
+
+    @Override
+    public String toString() {
+        return "ClassWeightedClassifier\n\n" + (m_Classifier == null ? "" : m_Classifier.toString());
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.algorithms;
+
+import java.util.List;
+
+import com.example.data.FastCfsSubsetEval;
+import com.example.data.ParallelBestFirst;
+import com.example.data.RankingFeatureSelector;
+
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.AttributeSelection;
+
+/*
+Feature selection dùng chung cho J48Classifier / RandomForestClassifier
+Mỗi lần chạy được ghi lại (model, mode, số attribute, thời gian) vào danh sách của classifier gọi để in bảng
+so sánh; khi bật compare, mode còn lại cũng được chạy (chỉ lấy thời gian) để hai cột đặt cạnh nhau.
+ */
+public final class FeatureSelection {
+    private FeatureSelection() {
+    }
+
+    /*
+    @param model Tên model (dùng trong bảng timing)
+    @param data Dataset đã set class
+    @param mode Mode dùng cho kết quả
+    @param ranking Cấu hình cho mode RANKING
+    @param compare true = chạy thêm mode còn lại để so sánh thời gian
+    @param timings Danh sách timing của classifier gọi (mỗi mode đã chạy thêm một dòng)
+    @return Dataset sau khi chọn attribute
+    @throws Exception Lỗi feature selection
+     */
+    public static Instances apply(String model, Instances data, FeatureSelectionMode mode,
+                                  RankingFeatureSelector ranking, boolean compare, List<String[]> timings)
+            throws Exception {
+        Instances result = null;
+        for (FeatureSelectionMode candidate : FeatureSelectionMode.values()) {
+            if (candidate != mode && !compare) {
+                continue;
+            }
+            long start = System.nanoTime();
+            Instances selected = candidate == FeatureSelectionMode.CFS
+                    ? applyCfs(data)
+                    : applyRanking(data, ranking, candidate == mode);
+            double millis = (System.nanoTime() - start) / 1_000_000.0;
+            timings.add(record(model, candidate, data.numAttributes() - 1, selected.numAttributes() - 1, millis,
+                    candidate == mode));
+            if (candidate == mode) {
+                result = selected;
+            }
+        }
+        return result;
+    }
+
+    // Tham số ảnh hưởng tới output của apply (compare chỉ thêm thời gian so sánh)
+    public static String describe(FeatureSelectionMode mode, RankingFeatureSelector ranking) {
+        return mode == FeatureSelectionMode.CFS ? "CFS BestFirst -D 1 -N 10" : "RANKING " + ranking.describe();
+    }
+
+    private static Instances applyCfs(Instances data) throws Exception {
+        AttributeSelection filter = new AttributeSelection();
+        // CFS trên ma trận correlation tính sẵn (cache theo fingerprint), subset con đánh giá song song
+        FastCfsSubsetEval eval = new FastCfsSubsetEval();
+        ParallelBestFirst search = new ParallelBestFirst();
+        search.setOptions(new String[]{"-D", "1", "-N", "10"});
+
+        filter.setEvaluator(eval);
+        filter.setSearch(search);
+        filter.setInputFormat(data);
+
+        return Filter.useFilter(data, filter);
+    }
+
+    private static Instances applyRanking(Instances data, RankingFeatureSelector selector, boolean verbose)
+            throws Exception {
+        RankingFeatureSelector.Ranking ranking = selector.rank(data);
+        if (verbose) {
+            System.out.println("\n  Attribute ranking (" + selector.getMeasure() + "):");
+            selector.printRanking(data, ranking);
+        }
+        return selector.reduce(data, ranking);
+    }
+
+    private static String[] record(String model, FeatureSelectionMode mode, int before, int after, double millis,
+                                   boolean used) {
+        System.out.printf("  Feature selection %s (%s): %d → %d attributes in %.1f ms%s%n",
+                model, mode, before, after, millis, used ? "" : " [comparison only]");
+        return new String[]{model, mode.name(), before + " → " + after, String.format("%.1f", millis),
+                used ? "✓" : ""};
+    }
+
+    /*
+    In bảng thời gian
+    @param timings Các dòng của những classifier cần so sánh, theo thứ tự in
+     */
+    public static void printTimings(List<String[]> timings) {
+        if (timings.isEmpty()) {
+            return;
+        }
+        System.out.println("\nFeature Selection Timings");
+        System.out.println(String.format("%-12s %-8s %-12s %12s %5s", "Model", "Mode", "Attributes", "Time (ms)", "Used"));
+        System.out.println("-".repeat(53));
+        for (String[] row : timings) {
+            System.out.println(String.format("%-12s %-8s %-12s %12s %5s", (Object[]) row));
+        }
+    }
+}
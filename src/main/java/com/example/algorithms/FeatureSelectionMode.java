@@ -0,0 +1,11 @@
+package com.example.algorithms;
+
+/*
+Cách applyFeatureSelection chọn attribute
+- CFS: CfsSubsetEval (FastCfsSubsetEval) + BestFirst, tìm subset tốt nhất
+- RANKING: xếp hạng từng attribute bằng InfoGain / GainRatio, rẻ hơn khi dataset rộng
+ */
+public enum FeatureSelectionMode {
+    CFS,
+    RANKING
+}
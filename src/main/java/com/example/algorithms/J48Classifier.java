@@ -1,23 +1,35 @@
 package com.example.algorithms;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
+import com.example.data.DatasetProfile;
+import com.example.data.FastSMOTE;
+import com.example.data.RankingFeatureSelector;
+import com.example.data.SmoteMode;
+import com.example.evaluation.CrossValidationCache;
+import com.example.evaluation.ModelEvaluator;
+import com.example.evaluation.ParallelCrossValidation;
+import com.example.evaluation.StreamingMetrics;
+import com.example.utils.ArtifactSink;
+import com.example.utils.ConsoleCapture;
 import com.example.utils.Helpers;
+import com.example.utils.PreprocessingDag;
+import com.example.utils.ResourceGovernor;
 
-import weka.attributeSelection.BestFirst;
-import weka.attributeSelection.CfsSubsetEval;
-import weka.classifiers.Evaluation;
+import weka.classifiers.Classifier;
 import weka.classifiers.trees.J48;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.filters.Filter;
-import weka.filters.supervised.attribute.AttributeSelection;
 import weka.filters.supervised.attribute.Discretize;
-import weka.filters.supervised.instance.SMOTE;
 
 public class J48Classifier implements Algorithm {
+    private static final int TUNING_FOLDS = 10;
     private static final String[] DEFAULT_OPTIONS = {"-C", "0.25", "-M", "2"};
     private static final String[] CLASS_NAME_CANDIDATES = {
         "heart_disease", "heart disease status", "heart_disease_status",
@@ -26,32 +38,157 @@ public class J48Classifier implements Algorithm {
 
     private J48 tree;
     private double bestF1Score = 0.0;
+    private double bestRecall = 0.0;
+    private StreamingMetrics bestEvaluation;
     private String[] bestOptions = DEFAULT_OPTIONS.clone();
     private Instances trainingData;
+    private ArtifactSink artifactSink;
+    private FeatureSelectionMode featureSelectionMode = FeatureSelectionMode.CFS;
+    private RankingFeatureSelector rankingSelector = new RankingFeatureSelector();
+    private boolean compareFeatureSelection = false;
+    private SmoteMode smoteMode = SmoteMode.WEKA;
+    private FastSMOTE smote = new FastSMOTE();
+    private BalancingMode balancingMode = BalancingMode.SMOTE;
+    private boolean compareBalancing = false;
+    private final List<String[]> featureSelectionTimings = new ArrayList<>();
+    private Classifier model;
+    private PreprocessingDag preprocessingDag = new PreprocessingDag();
+    private ResourceGovernor governor = new ResourceGovernor();
+    private CrossValidationCache cvCache;
+    private double trainSeconds;
 
     @Override
     public Instances specificPreprocess(Instances data) throws Exception {
         Instances workingCopy = new Instances(data);
         workingCopy = ensureClassAttribute(workingCopy);
-        logClassDistribution("Before SMOTE", workingCopy);
-        workingCopy = applySMOTE(workingCopy);
-        logClassDistribution("After SMOTE", workingCopy);
-        workingCopy = applyDiscretize(workingCopy);
-        return applyFeatureSelection(workingCopy);
+        if (balancingMode == BalancingMode.SMOTE) {
+            logClassDistribution("Before SMOTE", workingCopy);
+            workingCopy = preprocessingDag.run("smote", smote.describe(smoteMode), workingCopy, this::applySMOTE);
+            logClassDistribution("After SMOTE", workingCopy);
+        } else {
+            logClassDistribution("Class distribution (" + balancingMode + ")", workingCopy);
+        }
+        workingCopy = preprocessingDag.run("discretize", "supervised, better encoding", workingCopy,
+                this::applyDiscretize);
+        workingCopy = preprocessingDag.run("feature-selection",
+                FeatureSelection.describe(featureSelectionMode, rankingSelector), workingCopy, this::applyFeatureSelection);
+        // INSTANCE_WEIGHTS: weight đặt trong ClassBalancing.wrap lúc build (chỉ trên dữ liệu / fold train)
+        return workingCopy;
     }
 
     @Override
     public void train(Instances data) throws Exception {
-        Instances processedData = specificPreprocess(data);
-        this.trainingData = new Instances(processedData);
-        optimizeJ48(processedData);
+        train(data, balancingMode, true);
+    }
 
-        Helpers helper = new Helpers();
-        helper.exportToCSV(processedData, "j48_filtered_dataset.csv");
+    // used = false: lần train chỉ để so sánh (không export)
+    private void train(Instances data, BalancingMode mode, boolean used) throws Exception {
+        BalancingMode configured = balancingMode;
+        balancingMode = mode;
+        try {
+            Instances processedData = specificPreprocess(data);
+            this.trainingData = new Instances(processedData);
+            if (used) {
+                exportFilteredDataset(processedData, "j48_filtered_dataset.csv");
+            }
+            optimizeJ48(processedData);
 
-        tree = new J48();
-        tree.setOptions(bestOptions);
-        tree.buildClassifier(processedData);
+            tree = new J48();
+            tree.setOptions(bestOptions);
+            model = ClassBalancing.wrap(tree, processedData, mode);
+            long buildStart = System.nanoTime();
+            governor.buildClassifier(model, processedData);
+            trainSeconds = (System.nanoTime() - buildStart) / 1e9;
+            // CV của bộ tham số tốt nhất chính là CV của model cuối cùng → ModelEvaluator không chạy lại
+            if (cvCache != null && bestEvaluation != null) {
+                cvCache.put(model, processedData, TUNING_FOLDS, 1, bestEvaluation);
+            }
+            bestEvaluation = null;
+        } finally {
+            balancingMode = configured;
+        }
+    }
+
+    /*
+    Dùng chung DAG preprocessing với model khác: SMOTE / discretize / feature selection trên cùng dữ liệu
+    với cùng tham số chỉ chạy một lần
+    @param preprocessingDag DAG của pipeline (mặc định mỗi classifier một DAG riêng)
+     */
+    public void setPreprocessingDag(PreprocessingDag preprocessingDag) {
+        this.preprocessingDag = preprocessingDag;
+    }
+
+    /*
+    Dùng chung ngân sách CPU với phần còn lại của pipeline
+    @param governor Governor của pipeline (mặc định mỗi classifier một ngân sách = số core)
+     */
+    public void setResourceGovernor(ResourceGovernor governor) {
+        this.governor = governor;
+    }
+
+    /*
+    Lưu CV của bộ tham số tốt nhất để ModelEvaluator dùng lại cho model cuối cùng
+    @param cvCache Cache của pipeline (null = không lưu)
+     */
+    public void setCrossValidationCache(CrossValidationCache cvCache) {
+        this.cvCache = cvCache;
+    }
+
+    // Thời gian build model cuối cùng (giây, không tính tuning)
+    public double getTrainSeconds() {
+        return trainSeconds;
+    }
+
+    /*
+    So sánh cân bằng class trên dữ liệu classifier này đã train: đường SMOTE và mode đang dùng, mỗi mode train
+    bằng một bản copy với DAG riêng (SMOTE tính vào mọi lần chạy dùng nó) và được ClassBalancing đo khi không còn
+    việc nào khác chạy → gọi sau khi các nhánh pipeline đã xong
+    @param data Dữ liệu đã truyền cho train()
+    @return Mỗi mode một dòng cho ClassBalancing.printReport (rỗng nếu không bật compare)
+     */
+    public List<String[]> compareBalancing(Instances data) throws Exception {
+        List<String[]> runs = new ArrayList<>();
+        if (!compareBalancing) {
+            return runs;
+        }
+        for (BalancingMode mode : ClassBalancing.comparedModes(balancingMode)) {
+            J48Classifier copy = new J48Classifier();
+            copy.setResourceGovernor(governor);
+            copy.setFeatureSelection(featureSelectionMode, rankingSelector, false);
+            copy.setSmoteMode(smoteMode, smote);
+            ClassBalancing.Run run = ClassBalancing.startRun();
+            // Log train của bản copy không in lại, chỉ in dòng kết quả
+            ConsoleCapture.capture(() -> governor.call(() -> {
+                copy.train(data, mode, false);
+                return null;
+            }));
+            runs.add(ClassBalancing.record("J48", mode, copy.trainingData.numInstances(), run, copy.bestF1Score,
+                    copy.bestRecall, mode == balancingMode));
+        }
+        return runs;
+    }
+
+    // Một dòng cho mỗi lần feature selection của classifier này (kể cả mode so sánh), cho FeatureSelection.printTimings
+    public List<String[]> getFeatureSelectionTimings() {
+        return new ArrayList<>(featureSelectionTimings);
+    }
+
+    /*
+    Ghi export qua ArtifactSink (bất đồng bộ) thay vì chặn training
+    @param artifactSink Sink dùng chung của pipeline (null = ghi đồng bộ như cũ)
+     */
+    public void setArtifactSink(ArtifactSink artifactSink) {
+        this.artifactSink = artifactSink;
+    }
+
+    private void exportFilteredDataset(Instances processedData, String fileName) throws Exception {
+        Helpers helper = new Helpers();
+        if (artifactSink == null) {
+            helper.exportToCSV(processedData, fileName);
+            return;
+        }
+        Instances snapshot = new Instances(processedData);
+        artifactSink.submit(fileName, () -> helper.exportToCSV(snapshot, fileName));
     }
 
     public Instances getTrainingData() {
@@ -63,23 +200,53 @@ public class J48Classifier implements Algorithm {
         return tree == null ? "" : tree.toString();
     }
 
+    // J48, hoặc J48 được bọc (CostSensitiveClassifier / ClassWeightedClassifier) theo balancing mode
     @Override
-    public J48 getClassifier() {
-        return tree;
+    public Classifier getClassifier() {
+        return model;
     }
 
     @Override
     public Instances applyFeatureSelection(Instances data) throws Exception {
-        AttributeSelection filter = new AttributeSelection();
-        CfsSubsetEval eval = new CfsSubsetEval();
-        BestFirst search = new BestFirst();
-        search.setOptions(new String[]{"-D", "1", "-N", "10"});
+        return FeatureSelection.apply("J48", data, featureSelectionMode, rankingSelector, compareFeatureSelection,
+                featureSelectionTimings);
+    }
+
+    /*
+    Chọn cách feature selection (mặc định CFS như cũ)
+    @param mode CFS hoặc RANKING (InfoGain / GainRatio, cấu hình qua rankingSelector)
+    @param rankingSelector Cấu hình cho RANKING (null = giữ cấu hình hiện tại)
+    @param compare true = chạy thêm mode còn lại để báo cáo thời gian cạnh nhau
+     */
+    public void setFeatureSelection(FeatureSelectionMode mode, RankingFeatureSelector rankingSelector, boolean compare) {
+        this.featureSelectionMode = mode;
+        if (rankingSelector != null) {
+            this.rankingSelector = rankingSelector;
+        }
+        this.compareFeatureSelection = compare;
+    }
 
-        filter.setEvaluator(eval);
-        filter.setSearch(search);
-        filter.setInputFormat(data);
+    /*
+    Chọn cách chạy SMOTE trong specificPreprocess
+    @param smoteMode WEKA (mặc định), FAST hoặc APPROXIMATE (FastSMOTE)
+    @param smote Cấu hình FastSMOTE (percentage, K, núm LSH); null = giữ cấu hình hiện tại (100%, K = 5)
+     */
+    public void setSmoteMode(SmoteMode smoteMode, FastSMOTE smote) {
+        this.smoteMode = smoteMode;
+        if (smote != null) {
+            this.smote = smote;
+        }
+    }
 
-        return Filter.useFilter(data, filter);
+    /*
+    Chọn cách cân bằng class (mặc định SMOTE như cũ)
+    @param mode SMOTE, INSTANCE_WEIGHTS hoặc COST_SENSITIVE (BALANCED_BAGGING chỉ cho RandomForest → SMOTE)
+    @param compare true = train lại đường SMOTE và mode này để so sánh thời gian / CPU / bộ nhớ / F1 (compareBalancing)
+     */
+    public void setBalancing(BalancingMode mode, boolean compare) {
+        // J48 là một cây, không có bootstrap để cân bằng → giữ đường SMOTE
+        this.balancingMode = mode == BalancingMode.BALANCED_BAGGING ? BalancingMode.SMOTE : mode;
+        this.compareBalancing = compare;
     }
 
     private void optimizeJ48(Instances data) throws Exception {
@@ -97,27 +264,36 @@ public class J48Classifier implements Algorithm {
         };
 
         bestF1Score = 0.0;
+        bestRecall = 0.0;
+        bestEvaluation = null;
+        int diseaseClass = ModelEvaluator.diseaseClass(data);
         bestOptions = DEFAULT_OPTIONS.clone();
 
+        // Các bộ tham số được đánh giá trong ResourceGovernor (cùng lúc nếu còn slot), in theo thứ tự grid
+        List<Callable<Object>> tasks = new ArrayList<>();
         for (String[] options : paramGrid) {
-            try {
-                J48 tempTree = new J48();
-                tempTree.setOptions(options);
-                tempTree.buildClassifier(data);
+            tasks.add(() -> evaluateOptions(data, options));
+        }
+        List<Object> outcomes = governor.invokeAll(tasks);
 
-                Evaluation eval = new Evaluation(data);
-                eval.crossValidateModel(tempTree, data, 10, new Random(1));
-                double f1Score = eval.weightedFMeasure();
+        for (int c = 0; c < paramGrid.length; c++) {
+            String[] options = paramGrid[c];
+            if (outcomes.get(c) instanceof Exception) {
+                System.err.println("Error evaluating options " + String.join(" ", options) + ": "
+                    + ((Exception) outcomes.get(c)).getMessage());
+                continue;
+            }
+            StreamingMetrics eval = (StreamingMetrics) outcomes.get(c);
+            double f1Score = eval.weightedFMeasure();
 
-                System.out.printf("Options: %s | Accuracy: %.2f%% | Weighted F1: %.3f%n",
-                    String.join(" ", options), eval.pctCorrect(), f1Score);
+            System.out.printf("Options: %s | Accuracy: %.2f%% | Weighted F1: %.3f%n",
+                String.join(" ", options), eval.pctCorrect(), f1Score);
 
-                if (f1Score > bestF1Score) {
-                    bestF1Score = f1Score;
-                    bestOptions = options.clone();
-                }
-            } catch (Exception e) {
-                System.err.println("Error evaluating options " + String.join(" ", options) + ": " + e.getMessage());
+            if (f1Score > bestF1Score) {
+                bestF1Score = f1Score;
+                bestRecall = eval.recall(diseaseClass);
+                bestEvaluation = eval;
+                bestOptions = options.clone();
             }
         }
 
@@ -125,6 +301,18 @@ public class J48Classifier implements Algorithm {
             String.join(" ", bestOptions), bestF1Score);
     }
 
+    // 10-fold CV một bộ tham số; lỗi trả về dưới dạng Exception để grid chạy tiếp
+    private Object evaluateOptions(Instances data, String[] options) {
+        try {
+            J48 tempTree = new J48();
+            tempTree.setOptions(options.clone());
+            return ParallelCrossValidation.run(governor, ClassBalancing.wrap(tempTree, data, balancingMode),
+                data, TUNING_FOLDS, new Random(1));
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
     private Instances applyDiscretize(Instances data) throws Exception {
         Discretize discretize = new Discretize();
         discretize.setUseBetterEncoding(true);
@@ -135,11 +323,12 @@ public class J48Classifier implements Algorithm {
     private Instances applySMOTE(Instances data) throws Exception {
         Instances copy = new Instances(data);
         copy = ensureClassAttribute(copy);
-        SMOTE smote = new SMOTE();
-        smote.setPercentage(100);
-        smote.setNearestNeighbors(5);
-        smote.setInputFormat(copy);
-        return Filter.useFilter(copy, smote);
+        // Cùng stage "smote" với RandomForestClassifier trong DAG dùng chung → cùng hành vi
+        if (!copy.classAttribute().isNominal()) {
+            System.out.println("SMOTE skipped: class attribute is not nominal.");
+            return copy;
+        }
+        return smote.oversample(copy, smoteMode);
     }
 
     private Instances ensureClassAttribute(Instances data) {
@@ -192,7 +381,7 @@ public class J48Classifier implements Algorithm {
             System.out.println(stage + ": class attribute not set or not nominal.");
             return;
         }
-        int[] counts = data.attributeStats(data.classIndex()).nominalCounts;
+        long[] counts = DatasetProfile.of(data).getClassCounts();
         if (counts == null) {
             System.out.println(stage + ": unable to read class distribution.");
             return;
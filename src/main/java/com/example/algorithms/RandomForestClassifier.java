@@ -1,25 +1,34 @@
 package com.example.algorithms;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Random;
-
+import java.util.concurrent.Callable;
+
+import com.example.data.DatasetProfile;
+import com.example.data.FastSMOTE;
+import com.example.data.RankingFeatureSelector;
+import com.example.data.SmoteMode;
+import com.example.evaluation.ModelEvaluator;
+import com.example.evaluation.ParallelCrossValidation;
+import com.example.evaluation.StreamingMetrics;
+import com.example.utils.ArtifactSink;
+import com.example.utils.ConsoleCapture;
 import com.example.utils.Helpers;
+import com.example.utils.PreprocessingDag;
+import com.example.utils.ResourceGovernor;
 
-import weka.filters.supervised.attribute.AttributeSelection;
-import weka.attributeSelection.BestFirst;
-import weka.attributeSelection.CfsSubsetEval;
 import weka.classifiers.Classifier;
-import weka.classifiers.Evaluation;
 import weka.classifiers.trees.RandomForest;
 import weka.core.Attribute;
 import weka.core.Instances;
-import weka.filters.Filter;
-import weka.filters.supervised.instance.SMOTE;
 
 
 public class RandomForestClassifier implements Algorithm {
 
+    private static final int TUNING_FOLDS = 5;
     private static final String[] CLASS_NAME_CANDIDATES = {
         "heart_disease", "heart disease status", "heart_disease_status",
         "target", "num", "diagnosis", "condition", "class"
@@ -27,38 +36,150 @@ public class RandomForestClassifier implements Algorithm {
 
     private RandomForest randomForest;
     private Instances trainingData;
+    private ArtifactSink artifactSink;
+    private FeatureSelectionMode featureSelectionMode = FeatureSelectionMode.CFS;
+    private RankingFeatureSelector rankingSelector = new RankingFeatureSelector();
+    private boolean compareFeatureSelection = false;
+    private SmoteMode smoteMode = SmoteMode.WEKA;
+    private FastSMOTE smote = new FastSMOTE();
+    private BalancingMode balancingMode = BalancingMode.SMOTE;
+    private boolean compareBalancing = false;
+    private final List<String[]> featureSelectionTimings = new ArrayList<>();
+    private Classifier model;
+    private PreprocessingDag preprocessingDag = new PreprocessingDag();
+    private ResourceGovernor governor = new ResourceGovernor();
+    private double trainSeconds;
 
     // Tuning
     private double bestF1Score = 0.0;
+    private double bestRecall = 0.0;
     private int bestNumTrees = 100;
     private int bestMaxDepth = 0;    // 0 = unlimited
     private int bestNumFeatures = 0; // 0 = default (sqrt)
 
     @Override
     public void train(Instances data) throws Exception {
-        // 1. Pre-proccessing: set class, SMOTE, choosing features
-        Instances processedData = specificPreprocess(data);
-        this.trainingData = new Instances(processedData);
+        train(data, balancingMode, true);
+    }
 
-        // 2. Tuning Random Forest with cross-validation
-        optimizeRandomForest(processedData);
+    /**
+     * One training run with the given balancing mode; used = false skips the dataset export (comparison runs).
+     */
+    private void train(Instances data, BalancingMode mode, boolean used) throws Exception {
+        BalancingMode configured = balancingMode;
+        balancingMode = mode;
+        try {
+            // 1. Pre-proccessing: set class, SMOTE / weights, choosing features
+            Instances processedData = specificPreprocess(data);
+            this.trainingData = new Instances(processedData);
+
+            // 2. export dataset after filter report (async when an ArtifactSink is set)
+            if (used) {
+                exportFilteredDataset(processedData, "RandomForest_filtered_dataset.csv");
+            }
 
-        // 3. export dataset after filter report
-        Helpers helper = new Helpers();
-        helper.exportToCSV(processedData, "RandomForest_filtered_dataset.csv");
-
-        // 4. Build final model with best hyper-parameters 
-        randomForest = new RandomForest();
-        randomForest.setNumIterations(bestNumTrees);
-        randomForest.setSeed(1);
-        if (bestMaxDepth > 0) {
-            randomForest.setMaxDepth(bestMaxDepth);
+            // 3. Tuning Random Forest with cross-validation
+            optimizeRandomForest(processedData);
+
+            // 4. Build final model with best hyper-parameters 
+            randomForest = ClassBalancing.newForest(mode);
+            randomForest.setNumIterations(bestNumTrees);
+            randomForest.setSeed(1);
+            if (bestMaxDepth > 0) {
+                randomForest.setMaxDepth(bestMaxDepth);
+            }
+            if (bestNumFeatures > 0) {
+                randomForest.setNumFeatures(bestNumFeatures);
+            }
+
+            model = ClassBalancing.wrap(randomForest, processedData, mode);
+            long buildStart = System.nanoTime();
+            governor.buildClassifier(model, processedData);
+            trainSeconds = (System.nanoTime() - buildStart) / 1e9;
+            // Tuning CV (TUNING_FOLDS folds) is not cached: ModelEvaluator evaluates with 10 folds, it would never match
+        } finally {
+            balancingMode = configured;
         }
-        if (bestNumFeatures > 0) {
-            randomForest.setNumFeatures(bestNumFeatures);
+    }
+
+    /**
+     * Share the preprocessing DAG with other models: SMOTE / feature selection on the same data
+     * with the same parameters run once (default: one DAG per classifier).
+     */
+    public void setPreprocessingDag(PreprocessingDag preprocessingDag) {
+        this.preprocessingDag = preprocessingDag;
+    }
+
+    /**
+     * Share the CPU budget with the rest of the pipeline (default: a budget of all cores for this classifier).
+     */
+    public void setResourceGovernor(ResourceGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Seconds spent building the final model (tuning excluded).
+     */
+    public double getTrainSeconds() {
+        return trainSeconds;
+    }
+
+    /**
+     * Balancing comparison on the data this classifier was trained on: the SMOTE path and the configured mode,
+     * each trained by a fresh copy with its own preprocessing DAG (SMOTE is charged to every run that uses it)
+     * and measured by ClassBalancing while nothing else runs. Call it after the pipeline branches have finished.
+     *
+     * @return one row per mode for ClassBalancing.printReport (empty when comparison is off)
+     */
+    public List<String[]> compareBalancing(Instances data) throws Exception {
+        List<String[]> runs = new ArrayList<>();
+        if (!compareBalancing) {
+            return runs;
+        }
+        for (BalancingMode mode : ClassBalancing.comparedModes(balancingMode)) {
+            RandomForestClassifier copy = new RandomForestClassifier();
+            copy.setResourceGovernor(governor);
+            copy.setFeatureSelection(featureSelectionMode, rankingSelector, false);
+            copy.setSmoteMode(smoteMode, smote);
+            ClassBalancing.Run run = ClassBalancing.startRun();
+            // Log train của bản copy không in lại, chỉ in dòng kết quả
+            ConsoleCapture.capture(() -> governor.call(() -> {
+                copy.train(data, mode, false);
+                return null;
+            }));
+            runs.add(ClassBalancing.record("RF", mode, copy.trainingData.numInstances(), run, copy.bestF1Score,
+                    copy.bestRecall, mode == balancingMode));
         }
+        return runs;
+    }
+
+    /**
+     * One row per feature selection run of this classifier (comparison modes included), for
+     * FeatureSelection.printTimings.
+     */
+    public List<String[]> getFeatureSelectionTimings() {
+        return new ArrayList<>(featureSelectionTimings);
+    }
 
-        randomForest.buildClassifier(processedData);
+    /**
+     * Route dataset exports through a shared ArtifactSink (null = write synchronously).
+     */
+    public void setArtifactSink(ArtifactSink artifactSink) {
+        this.artifactSink = artifactSink;
+    }
+
+    private void exportFilteredDataset(Instances processedData, String fileName) throws Exception {
+        Helpers helper = new Helpers();
+        if (artifactSink == null) {
+            helper.exportToCSV(processedData, fileName);
+            return;
+        }
+        Instances snapshot = new Instances(processedData);
+        artifactSink.submit(fileName, () -> helper.exportToCSV(snapshot, fileName));
+    }
+
+    public Instances getTrainingData() {
+        return trainingData == null ? null : new Instances(trainingData);
     }
 
     @Override
@@ -83,32 +204,63 @@ public class RandomForestClassifier implements Algorithm {
         return sb.toString();
     }
 
+    /**
+     * RandomForest, or RandomForest wrapped (CostSensitiveClassifier / ClassWeightedClassifier) per balancing mode.
+     */
     @Override
     public Classifier getClassifier() {
-        return randomForest;
+        return model;
     }
 
     /**
-     * choose attribute with CfsSubsetEval + BestFirst (like J48)
+     * choose attribute via FeatureSelection: CFS + BestFirst by default (like J48), or InfoGain / GainRatio ranking
      */
     @Override
     public Instances applyFeatureSelection(Instances data) throws Exception {
-        AttributeSelection filter = new AttributeSelection();
-        CfsSubsetEval eval = new CfsSubsetEval();
-        BestFirst search = new BestFirst();
-        search.setOptions(new String[]{"-D", "1", "-N", "10"});
+        return FeatureSelection.apply("RF", data, featureSelectionMode, rankingSelector, compareFeatureSelection,
+                featureSelectionTimings);
+    }
 
-        filter.setEvaluator(eval);
-        filter.setSearch(search);
-        filter.setInputFormat(data);
+    /*
+    Chọn cách feature selection (mặc định CFS như cũ)
+    @param mode CFS hoặc RANKING (InfoGain / GainRatio, cấu hình qua rankingSelector)
+    @param rankingSelector Cấu hình cho RANKING (null = giữ cấu hình hiện tại)
+    @param compare true = chạy thêm mode còn lại để báo cáo thời gian cạnh nhau
+     */
+    public void setFeatureSelection(FeatureSelectionMode mode, RankingFeatureSelector rankingSelector, boolean compare) {
+        this.featureSelectionMode = mode;
+        if (rankingSelector != null) {
+            this.rankingSelector = rankingSelector;
+        }
+        this.compareFeatureSelection = compare;
+    }
+
+    /*
+    Chọn cách chạy SMOTE trong specificPreprocess
+    @param smoteMode WEKA (mặc định), FAST hoặc APPROXIMATE (FastSMOTE)
+    @param smote Cấu hình FastSMOTE (percentage, K, núm LSH); null = giữ cấu hình hiện tại (100%, K = 5)
+     */
+    public void setSmoteMode(SmoteMode smoteMode, FastSMOTE smote) {
+        this.smoteMode = smoteMode;
+        if (smote != null) {
+            this.smote = smote;
+        }
+    }
 
-        return Filter.useFilter(data, filter);
+    /*
+    Chọn cách cân bằng class (mặc định SMOTE như cũ)
+    @param mode SMOTE, INSTANCE_WEIGHTS, COST_SENSITIVE hoặc BALANCED_BAGGING (bootstrap cân bằng mỗi cây)
+    @param compare true = train lại đường SMOTE và mode này để so sánh thời gian / CPU / bộ nhớ / F1 (compareBalancing)
+     */
+    public void setBalancing(BalancingMode mode, boolean compare) {
+        this.balancingMode = mode;
+        this.compareBalancing = compare;
     }
 
     /**
      * Pre-proccessing Random Forest:
      * - ensure class attribute is set
-     * - apply SMOTE
+     * - apply SMOTE, or instance weights / nothing (cost matrix or balanced bootstrap at training) per balancingMode
      * - feature selection
      */
     @Override
@@ -116,12 +268,18 @@ public class RandomForestClassifier implements Algorithm {
         Instances workingCopy = new Instances(data);
 
         workingCopy = ensureClassAttribute(workingCopy);
-        logClassDistribution("RF - Before SMOTE", workingCopy);
+        if (balancingMode == BalancingMode.SMOTE) {
+            logClassDistribution("RF - Before SMOTE", workingCopy);
 
-        workingCopy = applySMOTE(workingCopy);
-        logClassDistribution("RF - After SMOTE", workingCopy);
+            workingCopy = preprocessingDag.run("smote", smote.describe(smoteMode), workingCopy, this::applySMOTE);
+            logClassDistribution("RF - After SMOTE", workingCopy);
+        } else {
+            logClassDistribution("RF - Class distribution (" + balancingMode + ")", workingCopy);
+        }
 
-        return applyFeatureSelection(workingCopy);
+        // INSTANCE_WEIGHTS: weights are set by ClassBalancing.wrap at build time, on training data / folds only
+        return preprocessingDag.run("feature-selection",
+                FeatureSelection.describe(featureSelectionMode, rankingSelector), workingCopy, this::applyFeatureSelection);
     }
 
     /**
@@ -130,6 +288,7 @@ public class RandomForestClassifier implements Algorithm {
      * - maxDepth: 0 (unlimited), 10, 15
      * - numFeatures: 0 (default), sqrt(#features)
      * Uses 5-fold cross-validation and weighted F1-score for evaluation.
+     * Grid cells, folds and trees share the ResourceGovernor budget.
      */
     private void optimizeRandomForest(Instances data) throws Exception {
         int numAttrs = data.numAttributes() - 1; // minus class
@@ -140,56 +299,82 @@ public class RandomForestClassifier implements Algorithm {
         int[] numFeaturesOptions = {0, defaultNumFeatures}; // 0 = default
 
         bestF1Score = 0.0;
+        bestRecall = 0.0;
+        int diseaseClass = ModelEvaluator.diseaseClass(data);
         bestNumTrees = numTreesOptions[0];
         bestMaxDepth = maxDepthOptions[0];
         bestNumFeatures = 0;
 
-        Random rand = new Random(1);
-
+        // Mỗi cấu hình được đánh giá trong ResourceGovernor (cùng lúc nếu còn slot), kết quả in theo thứ tự grid
+        List<int[]> grid = new ArrayList<>();
         for (int numTrees : numTreesOptions) {
             for (int maxDepth : maxDepthOptions) {
                 for (int numFeatures : numFeaturesOptions) {
-                    try {
-                        RandomForest candidate = new RandomForest();
-                        candidate.setNumIterations(numTrees);
-                        candidate.setSeed(1);
-                        if (maxDepth > 0) {
-                            candidate.setMaxDepth(maxDepth);
-                        }
-                        if (numFeatures > 0) {
-                            candidate.setNumFeatures(numFeatures);
-                        }
-
-                        Evaluation eval = new Evaluation(data);
-                        eval.crossValidateModel(candidate, data, 5, rand);
-                        double f1 = eval.weightedFMeasure();
-
-                        System.out.printf(Locale.ROOT,
-                                "RF tuning → trees=%d, maxDepth=%d, numFeatures=%d | Acc=%.2f%% | F1=%.3f%n",
-                                numTrees, maxDepth, numFeatures,
-                                eval.pctCorrect(), f1);
-
-                        if (f1 > bestF1Score) {
-                            bestF1Score = f1;
-                            bestNumTrees = numTrees;
-                            bestMaxDepth = maxDepth;
-                            bestNumFeatures = numFeatures;
-                        }
-                    } catch (Exception e) {
-                        System.err.printf(
-                                Locale.ROOT,
-                                "Error evaluating RF config (trees=%d, depth=%d, features=%d): %s%n",
-                                numTrees, maxDepth, numFeatures, e.getMessage());
-                    }
+                    grid.add(new int[]{numTrees, maxDepth, numFeatures});
                 }
             }
         }
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int[] config : grid) {
+            tasks.add(() -> evaluateConfig(data, config[0], config[1], config[2]));
+        }
+
+        List<Object> outcomes = governor.invokeAll(tasks);
+        for (int c = 0; c < grid.size(); c++) {
+            int numTrees = grid.get(c)[0];
+            int maxDepth = grid.get(c)[1];
+            int numFeatures = grid.get(c)[2];
+            if (outcomes.get(c) instanceof Exception) {
+                System.err.printf(
+                        Locale.ROOT,
+                        "Error evaluating RF config (trees=%d, depth=%d, features=%d): %s%n",
+                        numTrees, maxDepth, numFeatures, ((Exception) outcomes.get(c)).getMessage());
+                continue;
+            }
+            StreamingMetrics eval = (StreamingMetrics) outcomes.get(c);
+            double f1 = eval.weightedFMeasure();
+
+            System.out.printf(Locale.ROOT,
+                    "RF tuning → trees=%d, maxDepth=%d, numFeatures=%d | Acc=%.2f%% | F1=%.3f%n",
+                    numTrees, maxDepth, numFeatures,
+                    eval.pctCorrect(), f1);
+
+            if (f1 > bestF1Score) {
+                bestF1Score = f1;
+                bestRecall = eval.recall(diseaseClass);
+                bestNumTrees = numTrees;
+                bestMaxDepth = maxDepth;
+                bestNumFeatures = numFeatures;
+            }
+        }
 
         System.out.printf(Locale.ROOT,
                 "RF best config → trees=%d, maxDepth=%d, numFeatures=%d | Best F1=%.3f%n",
                 bestNumTrees, bestMaxDepth, bestNumFeatures, bestF1Score);
     }
 
+    /**
+     * 5-fold CV of one grid cell; returns its StreamingMetrics, or the Exception so one bad cell does not stop the grid.
+     * Each cell has its own Random(1) (same folds for every cell, independent of evaluation order).
+     */
+    private Object evaluateConfig(Instances data, int numTrees, int maxDepth, int numFeatures) {
+        try {
+            RandomForest candidate = ClassBalancing.newForest(balancingMode);
+            candidate.setNumIterations(numTrees);
+            candidate.setSeed(1);
+            if (maxDepth > 0) {
+                candidate.setMaxDepth(maxDepth);
+            }
+            if (numFeatures > 0) {
+                candidate.setNumFeatures(numFeatures);
+            }
+            return ParallelCrossValidation.run(governor, ClassBalancing.wrap(candidate, data, balancingMode),
+                    data, TUNING_FOLDS, new Random(1));
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
     /**
      * SMOTE generic, no more hard-code "uses_ad_boosts"
      */
@@ -198,16 +383,11 @@ public class RandomForestClassifier implements Algorithm {
         copy = ensureClassAttribute(copy);
 
         if (!copy.classAttribute().isNominal()) {
-            System.out.println("RandomForest SMOTE skipped: class attribute is not nominal.");
+            System.out.println("SMOTE skipped: class attribute is not nominal.");
             return copy;
         }
 
-        SMOTE smote = new SMOTE();
-        smote.setPercentage(100);
-        smote.setNearestNeighbors(5);
-        smote.setInputFormat(copy);
-
-        return Filter.useFilter(copy, smote);
+        return smote.oversample(copy, smoteMode);
     }
 
     /**
@@ -266,7 +446,7 @@ public class RandomForestClassifier implements Algorithm {
             System.out.println(stage + ": class attribute not set or not nominal.");
             return;
         }
-        int[] counts = data.attributeStats(data.classIndex()).nominalCounts;
+        long[] counts = DatasetProfile.of(data).getClassCounts();
         if (counts == null) {
             System.out.println(stage + ": unable to read class distribution.");
             return;
@@ -1,14 +1,40 @@
 package com.example.controllers;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.algorithms.BalancingMode;
+import com.example.algorithms.ClassBalancing;
+import com.example.algorithms.FeatureSelection;
+import com.example.algorithms.FeatureSelectionMode;
 import com.example.algorithms.J48Classifier;
 import com.example.algorithms.RandomForestClassifier;
 import com.example.data.Analyzer;
 import com.example.data.Cleaner;
+import com.example.data.CorrelationMatrix;
+import com.example.data.DatasetProfile;
+import com.example.data.FastSMOTE;
+import com.example.data.FeatureDsl;
 import com.example.data.FeatureEngineer;
 import com.example.data.Loader;
+import com.example.data.RankingFeatureSelector;
+import com.example.data.ShardedPreprocessor;
+import com.example.data.SmoteMode;
+import com.example.data.StreamingSummary;
+import com.example.evaluation.CrossValidationCache;
 import com.example.evaluation.ModelEvaluator;
+import com.example.utils.ArtifactSink;
+import com.example.utils.ConsoleCapture;
+import com.example.utils.ConsoleCapture.Captured;
+import com.example.utils.PreprocessingDag;
+import com.example.utils.ResourceGovernor;
 
-import weka.classifiers.trees.RandomForest;
 import weka.core.Instances;
 
 //Main controller cho Data Mining Pipeline
@@ -20,6 +46,24 @@ public class MiningController {
     private final Loader loader = new Loader();
     private final FeatureEngineer engineer = new FeatureEngineer();
     private final ModelEvaluator evaluator = new ModelEvaluator();
+    // > 0: stream dataset, chỉ giữ reservoir sample mỗi class (dataset lớn hơn heap)
+    private int streamingSampleSize = 0;
+    // true: impute → dedupe → IQR → features chạy bằng ShardedPreprocessor (map-reduce theo shard dòng)
+    private boolean shardedPreprocessing = false;
+    // Feature selection của J48 / RF: CFS (mặc định) hoặc ranking InfoGain / GainRatio
+    private FeatureSelectionMode featureSelectionMode = FeatureSelectionMode.CFS;
+    private RankingFeatureSelector rankingSelector = new RankingFeatureSelector();
+    private boolean compareFeatureSelection = false;
+    // SMOTE của Cleaner / J48 / RF: weka filter (mặc định) hoặc FastSMOTE
+    private SmoteMode smoteMode = SmoteMode.WEKA;
+    private FastSMOTE smote = new FastSMOTE();
+    // Cân bằng class: SMOTE (mặc định) hoặc weight / cost matrix, không sinh dòng mới
+    private BalancingMode balancingMode = BalancingMode.SMOTE;
+    private boolean compareBalancing = false;
+    // Số nhánh pipeline train song song (1 = tuần tự như cũ)
+    private int pipelineThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    // Tổng số thread làm việc cùng lúc trên toàn pipeline (ResourceGovernor)
+    private int cpuBudget = Runtime.getRuntime().availableProcessors();
 
     /*
     Chạy toàn bộ pipeline: Preprocessing → Training → Evaluation 
@@ -28,61 +72,190 @@ public class MiningController {
     @throws Exception Lỗi trong quá trình xử lý
      */
     public void runPipeline(String rawPath, String reportPath) throws Exception {
+        // Export CSV/ARFF ghi nền, pipeline chỉ chờ ở cuối; pipeline lỗi thì close() vẫn chờ file đang ghi
+        try (ArtifactSink sink = new ArtifactSink()) {
+            runPipeline(rawPath, reportPath, sink);
+            System.out.println("\nWaiting for pending exports...");
+            sink.awaitAll();
+        }
+        // Final Summary
+        printFinalSummary(reportPath);
+    }
+
+    /*
+    Các nhánh độc lập (RF raw, J48 raw, preprocessing) train song song trên pool chung; RF / J48 improved
+    chạy khi preprocessing xong. Output console của mỗi task được gom lại rồi in cùng phần đánh giá
+    theo đúng thứ tự tuần tự cũ, nên báo cáo không phụ thuộc nhánh nào xong trước.
+     */
+    private void runPipeline(String rawPath, String reportPath, ArtifactSink sink) throws Exception {
+        // SMOTE / CFS / discretize trên cùng dữ liệu + tham số chỉ chạy một lần cho mọi model
+        PreprocessingDag dag = new PreprocessingDag();
+        // Một ngân sách CPU cho mọi tầng song song: nhánh pipeline → grid tuning → fold CV → cây RF
+        ResourceGovernor governor = new ResourceGovernor(cpuBudget);
+        evaluator.setResourceGovernor(governor);
+        rankingSelector.setResourceGovernor(governor);
+        // CV của cấu hình tốt nhất lúc tuning được ModelEvaluator dùng lại thay vì cross-validate lần nữa
+        CrossValidationCache cvCache = new CrossValidationCache();
+        evaluator.setCrossValidationCache(cvCache);
         printHeader("EVALUATE MODELS WITH RAW DATA FOR COMPARE LATER WITH \n  THE MODELS THAT ARE EVALUATED WITH PREPROCESSED DATA");
-        Instances data = loader.loadDataset(rawPath);
+        // Load cũng chạy trong ngân sách (parse CSV, profile song song qua ResourceGovernor.parallelFor)
+        Instances rawData = governor.call(() -> {
+            if (streamingSampleSize > 0) {
+                StreamingSummary summary = loader.loadDatasetStreaming(rawPath, streamingSampleSize);
+                analyzer.analyzeData(summary);
+                return summary.getSample();
+            }
+            return loader.loadDataset(rawPath);
+        });
 
-//        RandomForest rf = new RandomForest();
-//        rf.setNumIterations(200);
-//        rf.setSeed(1);
-//        rf.buildClassifier(data);
-//        evaluator.evaluateModel(rf, data, reportPath);
-        RandomForestClassifier rfClassifier = new RandomForestClassifier();
-        rfClassifier.train(data);
+        ExecutorService pool = newPipelinePool();
+        List<String[]> balancingRuns = new ArrayList<>();
+        List<String[]> featureSelectionTimings = new ArrayList<>();
+        try {
+            CompletableFuture<Captured<RandomForestClassifier>> rawRf = submit(pool, governor, () -> {
+                RandomForestClassifier rfClassifier = newRandomForest(sink, dag, governor);
+                rfClassifier.train(rawData);
+                return rfClassifier;
+            });
+            CompletableFuture<Captured<J48Classifier>> rawJ48 = submit(pool, governor, () -> {
+                J48Classifier j48Raw = newJ48(sink, dag, governor, cvCache);
+                j48Raw.train(rawData);
+                return j48Raw;
+            });
+            // Cleaner sửa dataset tại chỗ → preprocessing làm trên bản copy, hai nhánh raw vẫn đọc dữ liệu gốc
+            CompletableFuture<Captured<Instances>> preprocessed = submit(pool, governor,
+                    () -> preprocess(new Instances(rawData), sink, dag));
+            // Model improved export cùng file với model raw cùng loại → chờ model raw để file cuối cùng vẫn là của improved
+            CompletableFuture<Captured<RandomForestClassifier>> improvedRf = preprocessed.thenCombine(rawRf,
+                    (prep, raw) -> prep).thenCompose(prep ->
+                    submit(pool, governor, () -> {
+                        // Train RandomForestClassifier (custom class) trên improved data
+                        RandomForestClassifier rfClassifier = newRandomForest(sink, dag, governor);
+                        rfClassifier.train(prep.getValue());   // gọi train() sẽ tự xử lý preprocess + build model
+                        return rfClassifier;
+                    }));
+            CompletableFuture<Captured<J48Classifier>> improvedJ48 = preprocessed.thenCombine(rawJ48,
+                    (prep, raw) -> prep).thenCompose(prep ->
+                    submit(pool, governor, () -> {
+                        // Train J48 trên improved data (selectedData đã qua SMOTE + feature selection)
+                        J48Classifier customJ48 = newJ48(sink, dag, governor, cvCache);
+                        customJ48.train(prep.getValue());   // dùng cùng dữ liệu improved như RandomForest
+                        return customJ48;
+                    }));
+
+            // Báo cáo theo thứ tự cố định, mỗi phần chờ task của nó
+            RandomForestClassifier rfRaw = await(rawRf).replay();
+            featureSelectionTimings.addAll(rfRaw.getFeatureSelectionTimings());
+            // Evaluate kết quả
+            evaluator.evaluateTrainedModel(rfRaw.getClassifier(), rfRaw.getTrainingData(), rfRaw.getTrainSeconds(),
+                    reportPath);
 
-        // Evaluate kết quả
-        evaluator.evaluateModel(rfClassifier.getClassifier(), rfClassifier.getTrainingData(), reportPath);
+            evaluator.compareRFBeforeAfterPreprocessingComparision(reportPath);
 
-        evaluator.compareRFBeforeAfterPreprocessingComparision(reportPath);
+            J48Classifier j48Raw = await(rawJ48).replay();
+            featureSelectionTimings.addAll(j48Raw.getFeatureSelectionTimings());
+            Instances j48RawData = j48Raw.getTrainingData();
+            evaluator.evaluateTrainedModel(j48Raw.getClassifier(), j48RawData, j48Raw.getTrainSeconds(), reportPath);
 
+            await(preprocessed).replay();
 
-        J48Classifier j48Raw = new J48Classifier();
-        j48Raw.train(data);
-        Instances j48RawData = j48Raw.getTrainingData();
-        evaluator.evaluateModel(j48Raw.getClassifier(), j48RawData, reportPath);
+            RandomForestClassifier rfImproved = await(improvedRf).replay();
+            featureSelectionTimings.addAll(rfImproved.getFeatureSelectionTimings());
+            // Evaluate kết quả
+            evaluator.evaluateTrainedModel(rfImproved.getClassifier(), rfImproved.getTrainingData(),
+                    rfImproved.getTrainSeconds(), reportPath);
 
+            evaluator.compareRFBeforeAfterPreprocessingComparision(reportPath);
+
+            System.out.println("\nSTEP 2 COMPLETED: Custom J48 pipeline evaluated!");
+
+            printSectionHeader("STEP 3: J48 CLASSIFIER");
+            J48Classifier customJ48 = await(improvedJ48).replay();
+            featureSelectionTimings.addAll(customJ48.getFeatureSelectionTimings());
+            Instances j48ReadyData = customJ48.getTrainingData();
+            evaluator.evaluateTrainedModel(customJ48.getClassifier(), j48ReadyData, customJ48.getTrainSeconds(),
+                    reportPath);
+            evaluator.compareJ48BeforeAfterPreprocessingComparision(reportPath);
+            // Repeated CV (nếu bật): RF vs J48 trên dữ liệu improved, cùng fold, corrected t-test
+            evaluator.compareRepeated("RandomForest", rfImproved.getClassifier(), rfImproved.getTrainingData(),
+                    "J48", customJ48.getClassifier(), j48ReadyData, reportPath);
+
+            // So sánh cân bằng class (nếu bật): train lại từng mode khi mọi nhánh và export đã xong,
+            // để CPU / bộ nhớ đo trên cả process chỉ là của lần train đó
+            if (compareBalancing) {
+                sink.awaitAll();
+                Instances improvedData = await(preprocessed).getValue();
+                balancingRuns.addAll(rfRaw.compareBalancing(rawData));
+                balancingRuns.addAll(j48Raw.compareBalancing(rawData));
+                balancingRuns.addAll(rfImproved.compareBalancing(improvedData));
+                balancingRuns.addAll(customJ48.compareBalancing(improvedData));
+            }
+        } finally {
+            pool.shutdownNow();
+            governor.shutdown();
+        }
+
+        System.out.println("\nSTEP 3 COMPLETED!");
+
+        printSectionHeader("STEP 4: MODEL COMPARISON");
+        
+        FeatureSelection.printTimings(featureSelectionTimings);
+        ClassBalancing.printReport(balancingRuns);
+        dag.printSummary();
+        governor.printUtilization();
+        System.out.println("\nGenerating comparison report...");
+        evaluator.compareModels(reportPath);
+        dag.clear();
+        cvCache.clear();
+        FeatureDsl.clear();
+        CorrelationMatrix.clear();
+    }
+
+    // STEP 1 + phần đầu STEP 2: clean → outliers → features → SMOTE → CFS, trả về improved data
+    private Instances preprocess(Instances data, ArtifactSink sink, PreprocessingDag dag) throws Exception {
         printHeader("HEART DISEASE RISK PREDICTOR");
         printSectionHeader("STEP 1: DATA PREPROCESSING");
 
         exploreDataset(data);
-        System.out.println("\nCleaning data...");
-        data = cleaner.cleanData(data);
-        System.out.println("\nRemoving outliers...");
-        data = cleaner.removeOutliers(data);
-        System.out.println("\nEngineering features...");
-        data = engineer.createFeatures(data);
+        if (shardedPreprocessing) {
+            System.out.println("\nCleaning data, removing outliers, engineering features (sharded)...");
+            data = new ShardedPreprocessor().process(data);
+        } else {
+            System.out.println("\nCleaning data...");
+            data = cleaner.cleanData(data);
+            System.out.println("\nRemoving outliers...");
+            data = cleaner.removeOutliers(data);
+            System.out.println("\nEngineering features...");
+            data = engineer.createFeatures(data);
+        }
         //Normalize Data
         // System.out.println("\nNormalizing data...");
         // data = cleaner.normalize(data);
         //Data Analysis
         System.out.println("\nAnalyzing dataset...");
         analyzer.analyzeData(data);
-        //Feature Importance Analysis
-        // System.out.println("\nCalculating feature importance...");
-        // analyzer.featureImportance(data);
         //Save Preprocessed Data
         System.out.println("\nSaving preprocessed data...");
         String cleanedPath = "output/heart_data_cleaned.arff";
-        loader.saveARFF(data, cleanedPath);
+        saveARFFAsync(sink, data, cleanedPath);
 
         System.out.println("\nSTEP 1 COMPLETED: Data preprocessing finished!");
         System.out.println("   Preprocessed data saved to: " + cleanedPath);
         printSectionHeader("STEP 2: RANDOM FOREST CLASSIFIER");
-        System.out.println("\nApplying SMOTE for class balancing...");
-        Instances balancedData = cleaner.applySMOTE(data);
+        Instances balancedData;
+        if (balancingMode == BalancingMode.SMOTE) {
+            System.out.println("\nApplying SMOTE for class balancing...");
+            balancedData = dag.run("cleaner-smote", smote.describe(smoteMode), data, cleaner::applySMOTE);
+        } else {
+            // Weight / cost matrix được đặt trong từng classifier, không sinh dòng ở đây
+            System.out.println("\nClass balancing: " + balancingMode + " (SMOTE skipped)");
+            balancedData = data;
+        }
 
         // Feature Selection
         System.out.println("\nPerforming feature selection...");
-        Instances selectedData = cleaner.selectFeatures(balancedData);
+        Instances selectedData = dag.run("cfs-greedy", "CFS GreedyStepwise backward", balancedData,
+                cleaner::selectFeatures);
 
         // (optional safety) make sure class attribute is set
         if (selectedData.classIndex() < 0) {
@@ -91,38 +264,164 @@ public class MiningController {
 
         // Save improved dataset
         String improvedPath = "output/heart_data_improved.arff";
-        loader.saveARFF(selectedData, improvedPath);
+        saveARFFAsync(sink, selectedData, improvedPath);
         System.out.println("   Improved data saved to: " + improvedPath);
+        return selectedData;
+    }
 
-        // Train RandomForestClassifier (custom class) trên improved data
-        rfClassifier.train(selectedData);   // gọi train() sẽ tự xử lý preprocess + build model
+    private RandomForestClassifier newRandomForest(ArtifactSink sink, PreprocessingDag dag, ResourceGovernor governor) {
+        RandomForestClassifier rfClassifier = new RandomForestClassifier();
+        rfClassifier.setResourceGovernor(governor);
+        rfClassifier.setArtifactSink(sink);
+        rfClassifier.setPreprocessingDag(dag);
+        rfClassifier.setFeatureSelection(featureSelectionMode, rankingSelector, compareFeatureSelection);
+        rfClassifier.setSmoteMode(smoteMode, smote);
+        rfClassifier.setBalancing(balancingMode, compareBalancing);
+        return rfClassifier;
+    }
 
-        // Evaluate kết quả
-        evaluator.evaluateModel(rfClassifier.getClassifier(), rfClassifier.getTrainingData(), reportPath);
+    private J48Classifier newJ48(ArtifactSink sink, PreprocessingDag dag, ResourceGovernor governor,
+                                 CrossValidationCache cvCache) {
+        J48Classifier j48 = new J48Classifier();
+        j48.setResourceGovernor(governor);
+        j48.setCrossValidationCache(cvCache);
+        j48.setArtifactSink(sink);
+        j48.setPreprocessingDag(dag);
+        j48.setFeatureSelection(featureSelectionMode, rankingSelector, compareFeatureSelection);
+        j48.setSmoteMode(smoteMode, smote);
+        j48.setBalancing(balancingMode, compareBalancing);
+        return j48;
+    }
 
-        evaluator.compareRFBeforeAfterPreprocessingComparision(reportPath);
+    private ExecutorService newPipelinePool() {
+        AtomicInteger threadId = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, pipelineThreads), runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-        System.out.println("\nSTEP 2 COMPLETED: Custom J48 pipeline evaluated!");
-        
-        printSectionHeader("STEP 3: J48 CLASSIFIER");
-        // Train J48 trên improved data (selectedData đã qua SMOTE + feature selection)
-        J48Classifier customJ48 = new J48Classifier();
-        customJ48.train(selectedData);   // dùng cùng dữ liệu improved như RandomForest
-        Instances j48ReadyData = customJ48.getTrainingData();
-        evaluator.evaluateModel(customJ48.getClassifier(), j48ReadyData, reportPath);
-        evaluator.compareJ48BeforeAfterPreprocessingComparision(reportPath);
+    // Task trên pool (giữ một slot của governor khi chạy), output console gom lại để in theo thứ tự báo cáo
+    private static <T> CompletableFuture<Captured<T>> submit(ExecutorService pool, ResourceGovernor governor,
+                                                             Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return ConsoleCapture.capture(() -> governor.call(task));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, pool);
+    }
 
-        System.out.println("\nSTEP 3 COMPLETED!");
+    private static <T> Captured<T> await(CompletableFuture<Captured<T>> task) throws Exception {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
 
-        printSectionHeader("STEP 4: MODEL COMPARISON");
-        
-        System.out.println("\nGenerating comparison report...");
-        evaluator.compareModels(reportPath);
-        
-        // Final Summary
-        printFinalSummary(reportPath);
+    // Snapshot dataset rồi ghi ARFF trên I/O thread của sink
+    private void saveARFFAsync(ArtifactSink sink, Instances data, String path) {
+        Instances snapshot = new Instances(data);
+        sink.submit(path, () -> loader.saveARFF(snapshot, path));
     }
     
+    /*
+    Bật chế độ streaming cho dataset lớn hơn heap
+    @param streamingSampleSize Số instance giữ lại mỗi class (0 = load toàn bộ như cũ)
+     */
+    public void setStreamingSampleSize(int streamingSampleSize) {
+        this.streamingSampleSize = streamingSampleSize;
+    }
+
+    /*
+    Số nhánh pipeline (RF / J48 raw, preprocessing, RF / J48 improved) chạy cùng lúc
+    @param pipelineThreads 1 = tuần tự như cũ; output luôn in theo cùng một thứ tự
+     */
+    public void setPipelineThreads(int pipelineThreads) {
+        this.pipelineThreads = pipelineThreads;
+    }
+
+    /*
+    Ngân sách CPU chung: nhánh pipeline, grid tuning, fold CV và cây RandomForest chia nhau số slot này
+    @param cpuBudget Số thread làm việc tối đa (mặc định = số core)
+     */
+    public void setCpuBudget(int cpuBudget) {
+        this.cpuBudget = cpuBudget;
+    }
+
+    /*
+    Repeated k-fold để so sánh RF / J48 có kiểm định thống kê (fold và repeat chạy song song trong ngân sách CPU)
+    @param repeats Số lần lặp 10-fold CV (vd 10 → 10×10; 0 = tắt như cũ)
+     */
+    public void setRepeatedCrossValidation(int repeats) {
+        evaluator.setRepeatedCrossValidation(repeats);
+    }
+
+    /*
+    Chạy preprocessing bằng ShardedPreprocessor (kết quả giống đường tuần tự mặc định)
+    @param shardedPreprocessing true = map-reduce theo shard dòng
+     */
+    public void setShardedPreprocessing(boolean shardedPreprocessing) {
+        this.shardedPreprocessing = shardedPreprocessing;
+    }
+
+    /*
+    Chọn cách feature selection cho J48 / RandomForest
+    @param mode CFS (mặc định) hoặc RANKING
+    @param rankingSelector Cấu hình ranking (measure, top-k / threshold); null = mặc định
+    @param compare true = chạy cả hai mode, in thời gian cạnh nhau ở bước so sánh model
+     */
+    public void setFeatureSelection(FeatureSelectionMode mode, RankingFeatureSelector rankingSelector, boolean compare) {
+        this.featureSelectionMode = mode;
+        if (rankingSelector != null) {
+            this.rankingSelector = rankingSelector;
+        }
+        this.compareFeatureSelection = compare;
+    }
+
+    /*
+    Chọn cách chạy SMOTE cho Cleaner, J48 và RandomForest
+    @param smoteMode WEKA (mặc định, weka SMOTE filter), FAST (FastSMOTE: VP-tree + song song,
+           cùng neighbor và số mẫu nhưng khác chuỗi random) hoặc APPROXIMATE (FastSMOTE: neighbor gần đúng
+           qua LSH, in recall so với neighbor chính xác)
+    @param smote Cấu hình FastSMOTE (percentage, K, núm LSH); null = giữ cấu hình hiện tại
+     */
+    public void setSmoteMode(SmoteMode smoteMode, FastSMOTE smote) {
+        this.smoteMode = smoteMode;
+        if (smote != null) {
+            this.smote = smote;
+        }
+        cleaner.setSmoteMode(smoteMode, this.smote);
+    }
+
+    /*
+    Chọn cách cân bằng class cho J48 / RandomForest
+    @param mode SMOTE (mặc định), INSTANCE_WEIGHTS, COST_SENSITIVE hoặc BALANCED_BAGGING (RandomForest;
+           J48 vẫn SMOTE); khác SMOTE thì bỏ luôn SMOTE của Cleaner
+    @param compare true = sau các nhánh pipeline, train lại đường SMOTE và mode này (lần lượt, không chạy cùng
+           việc khác), in thời gian / CPU / bộ nhớ / F1 cạnh nhau ở bước so sánh model
+     */
+    public void setBalancing(BalancingMode mode, boolean compare) {
+        this.balancingMode = mode;
+        this.compareBalancing = compare;
+    }
+
+    /*
+    Bật thống kê xấp xỉ (quantile sketch) cho Cleaner và Analyzer
+    @param epsilon Sai số rank cho phép (vd 0.01), 0 = tính chính xác như cũ
+     */
+    public void setApproximateStatistics(double epsilon) {
+        cleaner.setApproximateStatistics(epsilon);
+        analyzer.setApproximateStatistics(epsilon);
+    }
+
     /**
      * Explore dataset - In thông tin tổng quan
      */
@@ -132,6 +431,8 @@ public class MiningController {
         System.out.println("-Total attributes: " + data.numAttributes());
         System.out.println("-Class attribute: " + data.classAttribute().name());
         System.out.println("-Class values: " + data.classAttribute().numValues());
+        // Profile được cache cho data → Cleaner / Analyzer dùng lại, không quét lại
+        System.out.println("-Missing values: " + DatasetProfile.of(data).getTotalMissing());
         
         System.out.println("\n--- Attributes List ---");
         for (int i = 0; i < Math.min(10, data.numAttributes()); i++) {
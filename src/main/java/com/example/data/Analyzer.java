@@ -1,15 +1,23 @@
 package com.example.data;
 
-import weka.attributeSelection.GainRatioAttributeEval;
-import weka.attributeSelection.InfoGainAttributeEval;
 import weka.core.Attribute;
-import weka.core.AttributeStats;
 import weka.core.Instances;
 
 /*Data Analyzer cho Heart Disease Dataset
  Phân tích: class distribution, attributes, correlations, feature importance
  */
 public class Analyzer {
+    // > 0: thống kê một lượt qua ColumnSketches (kèm quartile xấp xỉ) thay vì DatasetProfile
+    private double approximateError = 0.0;
+
+    /*
+     Bật chế độ thống kê xấp xỉ (quantile sketch) cho dataset rất lớn
+     @param epsilon Sai số rank cho phép (vd 0.01), 0 = thống kê chính xác (DatasetProfile)
+     */
+    public void setApproximateStatistics(double epsilon) {
+        this.approximateError = epsilon;
+    }
+
     /*
      Phân tích tổng quan dataset
      @param data Dataset cần phân tích
@@ -18,6 +26,10 @@ public class Analyzer {
         System.out.println(" DATA ANALYSIS REPORT");
         //Basic Information
         printBasicInfo(data);
+        if (approximateError > 0) {
+            analyzeApproximate(data);
+            return;
+        }
         //Class Distribution
         analyzeClassDistribution(data);
         //Attribute Statistics
@@ -36,19 +48,21 @@ public class Analyzer {
     }
     
     private void analyzeClassDistribution(Instances data) {
+        printClassDistribution(DatasetProfile.of(data).getClassCounts(), data.numInstances());
+    }
+
+    private void printClassDistribution(long[] counts, long total) {
         System.out.println("\nClass Distribution");
-        int[] counts = data.attributeStats(data.classIndex()).nominalCounts;
         if (counts == null || counts.length == 0) {
             System.out.println("Warning: No class distribution available");
             return;
         }
         //Binary classification: 0 vs 1-4
-        int class0 = counts[0];
-        int classDisease = 0;
+        long class0 = counts[0];
+        long classDisease = 0;
         for (int i = 1; i < counts.length; i++) {
             classDisease += counts[i];
         }
-        int total = data.numInstances();
         System.out.println("\n  Class 0 (No Disease):");
         System.out.printf("    Count: %d (%.1f%%)%n", 
             class0, class0 * 100.0 / total);
@@ -76,28 +90,82 @@ public class Analyzer {
     
 
     private void analyzeAttributes(Instances data) {
-        System.out.println("\nAttribute Statistics");
+        printAttributeHeader();
+        DatasetProfile profile = DatasetProfile.of(data);
         int numericCount = 0;
         int nominalCount = 0;
-        System.out.println("\nNumeric Attributes:");
-        System.out.println(String.format("%-20s %10s %10s %10s %10s", 
-            "Attribute", "Min", "Max", "Mean", "StdDev"));
-        System.out.println("-".repeat(70));
         for (int i = 0; i < data.numAttributes(); i++) {
             Attribute attr = data.attribute(i);
             if (attr.isNumeric() && i != data.classIndex()) {
-                AttributeStats stats = data.attributeStats(i);
-                System.out.printf("%-20s %10.2f %10.2f %10.2f %10.2f%n",
-                    truncate(attr.name(), 20),
-                    stats.numericStats.min,
-                    stats.numericStats.max,
-                    stats.numericStats.mean,
-                    stats.numericStats.stdDev);
+                RunningStats stats = profile.getStats(i);
+                printNumericRow(attr.name(),
+                    stats.getMin(),
+                    stats.getMax(),
+                    stats.getMean(),
+                    stats.getStdDev());
                 numericCount++;
             } else if (attr.isNominal() && i != data.classIndex()) {
                 nominalCount++;
             }
         }
+        printAttributeSummary(numericCount, nominalCount);
+    }
+
+    // Class distribution, attribute statistics, quartiles, missing values từ một lượt sketch
+    private void analyzeApproximate(Instances data) {
+        ColumnSketches sketches = ColumnSketches.loadOrBuild(data, approximateError, ColumnSketches.DEFAULT_DIRECTORY);
+        printClassDistribution(sketches.getStats(data.classIndex()).getNominalCounts(), data.numInstances());
+
+        printAttributeHeader();
+        int numericCount = 0;
+        int nominalCount = 0;
+        long[] missing = new long[data.numAttributes()];
+        for (int i = 0; i < data.numAttributes(); i++) {
+            RunningStats stats = sketches.getStats(i);
+            missing[i] = stats.getMissingCount();
+            if (i == data.classIndex()) {
+                continue;
+            }
+            if (data.attribute(i).isNumeric()) {
+                printNumericRow(data.attribute(i).name(),
+                    stats.getMin(), stats.getMax(), stats.getMean(), stats.getStdDev());
+                numericCount++;
+            } else if (data.attribute(i).isNominal()) {
+                nominalCount++;
+            }
+        }
+        printAttributeSummary(numericCount, nominalCount);
+
+        System.out.printf("%nApproximate Quartiles (±%.2f%% rank error)%n", approximateError * 100);
+        System.out.println(String.format("%-20s %10s %10s %10s", "Attribute", "Q1", "Median", "Q3"));
+        System.out.println("-".repeat(53));
+        for (int i = 0; i < data.numAttributes(); i++) {
+            if (i != data.classIndex() && data.attribute(i).isNumeric()) {
+                long valid = sketches.getStats(i).getValueCount();
+                System.out.printf("%-20s %10.2f %10.2f %10.2f%n",
+                    truncate(data.attribute(i).name(), 20),
+                    sketches.valueAtSortedIndex(i, valid / 4),
+                    sketches.median(i),
+                    sketches.valueAtSortedIndex(i, 3 * valid / 4));
+            }
+        }
+        printMissingValues(data, missing, data.numInstances());
+    }
+
+    private void printAttributeHeader() {
+        System.out.println("\nAttribute Statistics");
+        System.out.println("\nNumeric Attributes:");
+        System.out.println(String.format("%-20s %10s %10s %10s %10s", 
+            "Attribute", "Min", "Max", "Mean", "StdDev"));
+        System.out.println("-".repeat(70));
+    }
+
+    private void printNumericRow(String name, double min, double max, double mean, double stdDev) {
+        System.out.printf("%-20s %10.2f %10.2f %10.2f %10.2f%n",
+            truncate(name, 20), min, max, mean, stdDev);
+    }
+
+    private void printAttributeSummary(int numericCount, int nominalCount) {
         System.out.println("\nAttribute Type Summary:");
         System.out.println(" Numeric attributes: " + numericCount);
         System.out.println(" Nominal attributes: " + nominalCount);
@@ -106,24 +174,31 @@ public class Analyzer {
     
 
     private void analyzeMissingValues(Instances data) {
+        DatasetProfile profile = DatasetProfile.of(data);
+        long[] missing = new long[data.numAttributes()];
+        for (int i = 0; i < data.numAttributes(); i++) {
+            missing[i] = profile.getMissingCount(i);
+        }
+        printMissingValues(data, missing, data.numInstances());
+    }
+
+    private void printMissingValues(Instances header, long[] missing, long total) {
         System.out.println("\nMissing Values Analysis");
-        int totalMissing = 0;
+        long totalMissing = 0;
         boolean hasMissing = false; 
-        for (int i = 0; i < data.numAttributes(); i++) {
-            int missing = data.attributeStats(i).missingCount;
-            
-            if (missing > 0) {
+        for (int i = 0; i < header.numAttributes(); i++) {
+            if (missing[i] > 0) {
                 if (!hasMissing) {
                     System.out.println("\nAttributes with missing values:");
                     hasMissing = true;
                 }
-                double percentage = missing * 100.0 / data.numInstances();
+                double percentage = missing[i] * 100.0 / total;
                 System.out.printf("  %-20s: %4d (%.1f%%)%n", 
-                    truncate(data.attribute(i).name(), 20), 
-                    missing, 
+                    truncate(header.attribute(i).name(), 20), 
+                    missing[i], 
                     percentage);
                 
-                totalMissing += missing;
+                totalMissing += missing[i];
             }
         }
         if (!hasMissing) {
@@ -131,88 +206,53 @@ public class Analyzer {
         } else {
             System.out.println("\n Total missing values: " + totalMissing);
             double totalPercentage = totalMissing * 100.0 / 
-                (data.numInstances() * data.numAttributes());
+                ((double) total * header.numAttributes());
             System.out.printf(" Overall missing rate: %.2f%%%n", totalPercentage);
         }
     }
-    
+
     /*
-     Feature Importance Analysis using Information Gain
-     @param data Dataset
-     @throws Exception
+     Phân tích dataset đã stream (StreamingLoader)
+     Class distribution, attribute statistics và missing values tính trên toàn bộ stream
+     @param summary Kết quả streaming
      */
-//    public void featureImportance(Instances data) throws Exception {
-//        System.out.println("FEATURE IMPORTANCE ANALYSIS");
-//        //Information Gain
-//        analyzeInfoGain(data);
-//        //Gain Ratio
-//        analyzeGainRatio(data);
-//        System.out.println("\n Interpretation:");
-//        System.out.println("   -Higher score = More important for prediction");
-//        System.out.println("   -Focus on top 5-10 features for model training");
-//        System.out.println("   -Consider removing features with score < 0.01");
-//    }
-    
-//    private void analyzeInfoGain(Instances data) throws Exception {
-//        System.out.println("\nInformation Gain Ranking");
-//        InfoGainAttributeEval eval = new InfoGainAttributeEval();
-//        eval.buildEvaluator(data);
-//        //Calculate scores
-//        double[][] scores = new double[data.numAttributes() - 1][2];
-//        for (int i = 0; i < data.numAttributes() - 1; i++) {
-//            scores[i][0] = i; // attribute index
-//            scores[i][1] = eval.evaluateAttribute(i);
-//        }
-//        //Sort by score (descending)
-//        java.util.Arrays.sort(scores, (a, b) -> Double.compare(b[1], a[1]));
-//        //Print top features
-//        System.out.println("\nTop 10 Most Important Features:");
-//        System.out.println(String.format("%-4s %-25s %12s", "Rank", "Attribute", "InfoGain"));
-//        System.out.println("-".repeat(45));
-//        for (int i = 0; i < Math.min(10, scores.length); i++) {
-//            int attrIndex = (int) scores[i][0];
-//            System.out.printf("%-4d %-25s %12.4f%n",
-//                i + 1,
-//                truncate(data.attribute(attrIndex).name(), 25),
-//                scores[i][1]);
-//        }
-//        //Print least important (bottom 5)
-//        if (scores.length > 10) {
-//            System.out.println("\nLeast Important Features (Bottom 5):");
-//            for (int i = Math.max(0, scores.length - 5); i < scores.length; i++) {
-//                int attrIndex = (int) scores[i][0];
-//                System.out.printf("%-4d %-25s %12.4f%n",
-//                    i + 1,
-//                    truncate(data.attribute(attrIndex).name(), 25),
-//                    scores[i][1]);
-//            }
-//        }
-//    }
-//
-//
-//    private void analyzeGainRatio(Instances data) throws Exception {
-//        System.out.println("\nGain Ratio Ranking (Top 5):");
-//        GainRatioAttributeEval eval = new GainRatioAttributeEval();
-//        eval.buildEvaluator(data);
-//        //Calculate scores
-//        double[][] scores = new double[data.numAttributes() - 1][2];
-//        for (int i = 0; i < data.numAttributes() - 1; i++) {
-//            scores[i][0] = i;
-//            scores[i][1] = eval.evaluateAttribute(i);
-//        }
-//        //Sort
-//        java.util.Arrays.sort(scores, (a, b) -> Double.compare(b[1], a[1]));
-//        System.out.println(String.format("%-4s %-25s %12s", "Rank", "Attribute", "GainRatio"));
-//        System.out.println("-".repeat(45));
-//        for (int i = 0; i < Math.min(5, scores.length); i++) {
-//            int attrIndex = (int) scores[i][0];
-//            System.out.printf("%-4d %-25s %12.4f%n",
-//                i + 1,
-//                truncate(data.attribute(attrIndex).name(), 25),
-//                scores[i][1]);
-//        }
-//    }
-//
+    public void analyzeData(StreamingSummary summary) {
+        System.out.println(" DATA ANALYSIS REPORT (streaming)");
+        Instances header = summary.getHeader();
+        System.out.println("\n--- Dataset Overview ---");
+        System.out.println("Total instances: " + summary.getTotalRows());
+        System.out.println("Sampled instances: " + summary.getSample().numInstances());
+        System.out.println("Total attributes: " + header.numAttributes());
+        System.out.println("Class attribute: " + header.classAttribute().name());
+        System.out.println("Class values: " + summary.getClassCounts().size());
+        System.out.println("Rows without class: " + summary.getMissingClassRows());
+        System.out.println("Relation name: " + header.relationName());
+
+        // Phân bố class chỉ tính trên dòng có class
+        long[] classCounts = summary.getClassCounts().values().stream().mapToLong(Long::longValue).toArray();
+        printClassDistribution(classCounts, summary.getTotalRows() - summary.getMissingClassRows());
+
+        printAttributeHeader();
+        int numericCount = 0;
+        int nominalCount = 0;
+        long[] missing = new long[header.numAttributes()];
+        for (int i = 0; i < header.numAttributes(); i++) {
+            RunningStats stats = summary.getAttributeStats(i);
+            missing[i] = stats.getMissingCount();
+            if (i == header.classIndex()) {
+                continue;
+            }
+            if (header.attribute(i).isNumeric()) {
+                printNumericRow(header.attribute(i).name(),
+                    stats.getMin(), stats.getMax(), stats.getMean(), stats.getStdDev());
+                numericCount++;
+            } else if (header.attribute(i).isNominal()) {
+                nominalCount++;
+            }
+        }
+        printAttributeSummary(numericCount, nominalCount);
+        printMissingValues(header, missing, summary.getTotalRows());
+    }
 
     /**
      * Helper: Truncate string to max length
@@ -241,7 +281,6 @@ public class Analyzer {
             // Analyze
             Analyzer analyzer = new Analyzer();
             analyzer.analyzeData(data);
-//            analyzer.featureImportance(data);
             
             System.out.println("\nAnalysis completed!");
             
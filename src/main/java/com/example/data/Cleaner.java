@@ -1,21 +1,28 @@
 package com.example.data;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+import com.example.utils.QuickSelect;
+import com.example.utils.ResourceGovernor;
 
 import weka.attributeSelection.AttributeSelection;
-import weka.attributeSelection.CfsSubsetEval;
 import weka.attributeSelection.GreedyStepwise;
 import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 import weka.filters.Filter;
-import weka.filters.supervised.instance.SMOTE;
 import weka.filters.unsupervised.attribute.Normalize;
-import weka.filters.unsupervised.instance.RemoveDuplicates;
 
 
 public class Cleaner {
+    private boolean sequentialOutlierBounds = false;
+    // > 0: median / Q1 / Q3 lấy từ quantile sketch với sai số rank này (0 = chính xác)
+    private double approximateError = 0.0;
+    private SmoteMode smoteMode = SmoteMode.WEKA;
+    private FastSMOTE smote = new FastSMOTE();
     
     /*
     Clean data: Handle missing values + Remove duplicates
@@ -41,50 +48,24 @@ public class Cleaner {
         if (totalMissing > 0) {
             System.out.println("Found " + totalMissing + " missing values");
             
-            // Xử lý từng attribute
+            // Tính giá trị thay thế cho tất cả attribute song song (mỗi attribute độc lập)
+            ColumnSketches sketches = approximateError > 0 ? sketchesFor(data) : null;
+            double[] fillValues = new double[data.numAttributes()];
+            ResourceGovernor.parallelFor(data.numAttributes(),
+                    i -> fillValues[i] = imputationValue(data, i, sketches));
+
+            // Log theo thứ tự attribute như cũ
             for (int i = 0; i < data.numAttributes(); i++) {
                 Attribute attr = data.attribute(i);
-                
                 if (attr.isNumeric()) {
-                    // Tính median cho numeric attributes
-                    double[] values = data.attributeToDoubleArray(i);
-                    double median = calculateMedian(values);
-                    
-                    // Replace missing với median
-                    for (int j = 0; j < data.numInstances(); j++) {
-                        if (data.instance(j).isMissing(i)) {
-                            data.instance(j).setValue(i, median);
-                        }
-                    }
-                    System.out.println("  " + attr.name() + ": replaced with median = " + median);
-                    
+                    System.out.println("  " + attr.name() + ": replaced with median = " + fillValues[i]);
                 } else if (attr.isNominal()) {
-                    // Tính mode cho nominal attributes
-                    int[] counts = new int[attr.numValues()];
-                    
-                    for (int j = 0; j < data.numInstances(); j++) {
-                        if (!data.instance(j).isMissing(i)) {
-                            counts[(int) data.instance(j).value(i)]++;
-                        }
-                    }
-                    
-                    // Tìm mode
-                    int modeIndex = 0;
-                    for (int k = 1; k < counts.length; k++) {
-                        if (counts[k] > counts[modeIndex]) {
-                            modeIndex = k;
-                        }
-                    }
-                    
-                    // Replace missing với mode
-                    for (int j = 0; j < data.numInstances(); j++) {
-                        if (data.instance(j).isMissing(i)) {
-                            data.instance(j).setValue(i, modeIndex);
-                        }
-                    }
-                    System.out.println("  " + attr.name() + ": replaced with mode = " + attr.value(modeIndex));
+                    System.out.println("  " + attr.name() + ": replaced with mode = " + attr.value((int) fillValues[i]));
                 }
             }
+
+            // Ghi lại một lần cho mỗi dòng có missing
+            fillMissingValues(data, fillValues);
             
             System.out.println("Completed: Replaced with median (numeric) / mode (nominal)");
         } else {
@@ -94,37 +75,96 @@ public class Cleaner {
         return data;
     }
 
-    // Hàm tính median
+    /*
+    Giá trị thay thế cho một attribute: median (numeric) / mode (nominal), NaN = không xử lý
+    Chỉ đọc dataset nên gọi song song an toàn
+     */
+    private double imputationValue(Instances data, int attIndex, ColumnSketches sketches) {
+        Attribute attr = data.attribute(attIndex);
+        if (attr.isNumeric()) {
+            return sketches != null
+                    ? sketches.median(attIndex)
+                    : calculateMedian(data.attributeToDoubleArray(attIndex));
+        }
+        if (!attr.isNominal()) {
+            return Double.NaN;
+        }
+        // Mode: label xuất hiện nhiều nhất, hoà thì lấy label đầu tiên
+        int[] counts = new int[attr.numValues()];
+        for (int j = 0; j < data.numInstances(); j++) {
+            double value = data.instance(j).value(attIndex);
+            if (!Utils.isMissingValue(value)) {
+                counts[(int) value]++;
+            }
+        }
+        int modeIndex = 0;
+        for (int k = 1; k < counts.length; k++) {
+            if (counts[k] > counts[modeIndex]) {
+                modeIndex = k;
+            }
+        }
+        return modeIndex;
+    }
+
+    /*
+    Thay missing bằng fillValues, song song theo dòng
+    Mỗi dòng chỉ cấp phát một mảng values mới (thay vì clone mỗi lần setValue)
+     */
+    private void fillMissingValues(Instances data, double[] fillValues) {
+        ResourceGovernor.parallelFor(data.numInstances(), j -> {
+            Instance instance = data.instance(j);
+            double[] values = null;
+            for (int i = 0; i < fillValues.length; i++) {
+                if (!Double.isNaN(fillValues[i]) && instance.isMissing(i)) {
+                    if (values == null) {
+                        values = instance.toDoubleArray();
+                    }
+                    values[i] = fillValues[i];
+                }
+            }
+            if (values == null) {
+                return;
+            }
+            if (instance instanceof DenseInstance) {
+                // set() thay phần tử tại chỗ, không đổi kích thước list → an toàn khi song song
+                data.set(j, instance.copy(values));
+            } else {
+                for (int i = 0; i < fillValues.length; i++) {
+                    if (values[i] != instance.value(i)) {
+                        instance.setValue(i, values[i]);
+                    }
+                }
+            }
+        });
+        DatasetProfile.invalidate(data);
+    }
+
+    // Hàm tính median (bỏ qua missing), quickselect trên mảng primitive thay cho sort List<Double>
     private double calculateMedian(double[] values) {
-        // Lọc bỏ missing values (NaN)
-        List<Double> validValues = new ArrayList<>();
+        int size = 0;
         for (double v : values) {
             if (!Double.isNaN(v)) {
-                validValues.add(v);
+                values[size++] = v;
             }
         }
         
-        if (validValues.isEmpty()) {
+        if (size == 0) {
             return 0.0;
         }
         
-        Collections.sort(validValues);
-        int size = validValues.size();
-        
-        if (size % 2 == 0) {
-            return (validValues.get(size/2 - 1) + validValues.get(size/2)) / 2.0;
-        } else {
-            return validValues.get(size/2);
-        }
+        return QuickSelect.median(values, size);
     }
     
     private Instances removeDuplicates(Instances data) throws Exception {
         System.out.println("\nRemoving duplicates...");
         int beforeCount = data.numInstances();
         
-        RemoveDuplicates filter = new RemoveDuplicates();
-        filter.setInputFormat(data);
-        data = Filter.useFilter(data, filter);
+        // Fingerprint 128-bit + bảng hash song song, cùng kết quả với RemoveDuplicates
+        Deduplicator deduplicator = new Deduplicator();
+        data = deduplicator.removeDuplicates(data);
+        if (deduplicator.getLastCollisions() > 0) {
+            System.out.println("  Fingerprint collisions verified: " + deduplicator.getLastCollisions());
+        }
         int removed = beforeCount - data.numInstances();
         if (removed > 0) {
             System.out.println("  Removed: " + removed + " duplicates");
@@ -155,31 +195,148 @@ public class Cleaner {
     }
     
 
+    /*
+    Chọn cách tính biên IQR
+    @param sequentialOutlierBounds true = như bản cũ: duyệt từng attribute, biên của attribute sau
+           tính trên các dòng còn lại sau attribute trước; false (mặc định) = mọi biên tính trên dữ liệu gốc, song song
+     */
+    public void setSequentialOutlierBounds(boolean sequentialOutlierBounds) {
+        this.sequentialOutlierBounds = sequentialOutlierBounds;
+    }
+
+    /*
+    Bật chế độ thống kê xấp xỉ cho dataset rất lớn (không cần sort từng cột)
+    Median (missing values) và Q1/Q3 (IQR, chế độ song song) lấy từ quantile sketch,
+    sketch được lưu trong output/sketches theo fingerprint dataset để dùng lại.
+    @param epsilon Sai số rank cho phép (vd 0.01), 0 = tính chính xác như cũ
+     */
+    public void setApproximateStatistics(double epsilon) {
+        this.approximateError = epsilon;
+    }
+
+    /*
+    Chọn cách chạy SMOTE
+    @param smoteMode WEKA (mặc định, weka SMOTE filter), FAST (FastSMOTE: VP-tree + song song)
+           hoặc APPROXIMATE (FastSMOTE, neighbor xấp xỉ qua LSH)
+    @param smote Cấu hình FastSMOTE (percentage, K, núm LSH); null = giữ cấu hình hiện tại (100%, K = 5)
+     */
+    public void setSmoteMode(SmoteMode smoteMode, FastSMOTE smote) {
+        this.smoteMode = smoteMode;
+        if (smote != null) {
+            this.smote = smote;
+        }
+    }
+
+    private ColumnSketches sketchesFor(Instances data) {
+        return ColumnSketches.loadOrBuild(data, approximateError, ColumnSketches.DEFAULT_DIRECTORY);
+    }
+
     private Instances removeOutliersIQR(Instances data) throws Exception {
-        Instances cleanData = new Instances(data);
-        
-        //Iterate through each numeric attribute (except class)
-        for (int i = 0; i < cleanData.numAttributes() - 1; i++) {
-            if (cleanData.attribute(i).isNumeric()) {
-                double[] values = cleanData.attributeToDoubleArray(i);
-                //Calculate Q1, Q3, IQR
-                java.util.Arrays.sort(values);
-                int n = values.length;
-                double q1 = values[n / 4];
-                double q3 = values[3 * n / 4];
-                double iqr = q3 - q1;    
-                double lowerBound = q1 - 1.5 * iqr;
-                double upperBound = q3 + 1.5 * iqr;
-                //Remove instances with outliers
-                for (int j = cleanData.numInstances() - 1; j >= 0; j--) {
-                    double value = cleanData.instance(j).value(i);
-                    if (value < lowerBound || value > upperBound) {
-                        cleanData.delete(j);
+        //Numeric attributes (except last attribute = class)
+        int[] numericAttributes = IntStream.range(0, data.numAttributes() - 1)
+                .filter(i -> data.attribute(i).isNumeric())
+                .toArray();
+
+        // Đánh dấu dòng outlier vào bitset, cuối cùng copy các dòng còn lại một lần
+        BitSet outliers = sequentialOutlierBounds
+                ? markOutliersSequential(data, numericAttributes)
+                : markOutliersParallel(data, numericAttributes);
+
+        Instances cleanData = new Instances(data, data.numInstances() - outliers.cardinality());
+        for (int j = outliers.nextClearBit(0); j < data.numInstances(); j = outliers.nextClearBit(j + 1)) {
+            cleanData.add(data.instance(j));
+        }
+        return cleanData;
+    }
+
+    // Biên của mọi attribute tính trên toàn bộ dữ liệu, song song theo attribute
+    private BitSet markOutliersParallel(Instances data, int[] numericAttributes) {
+        double[][] bounds = new double[numericAttributes.length][];
+        if (approximateError > 0) {
+            ColumnSketches sketches = sketchesFor(data);
+            for (int a = 0; a < numericAttributes.length; a++) {
+                bounds[a] = approximateIqrBounds(sketches, numericAttributes[a], data.numInstances());
+            }
+        } else {
+            ResourceGovernor.parallelFor(numericAttributes.length,
+                    a -> bounds[a] = iqrBounds(data.attributeToDoubleArray(numericAttributes[a]),
+                            data.numInstances()));
+        }
+
+        int rows = data.numInstances();
+        int blockSize = 4096;
+        BitSet[] blocks = new BitSet[(rows + blockSize - 1) / blockSize];
+        ResourceGovernor.parallelFor(blocks.length, b -> {
+            BitSet local = new BitSet();
+            for (int j = b * blockSize; j < Math.min(rows, (b + 1) * blockSize); j++) {
+                Instance instance = data.instance(j);
+                for (int a = 0; a < numericAttributes.length; a++) {
+                    if (bounds[a] != null && isOutlier(instance.value(numericAttributes[a]), bounds[a])) {
+                        local.set(j);
+                        break;
                     }
                 }
             }
+            blocks[b] = local;
+        });
+
+        BitSet outliers = new BitSet(rows);
+        for (BitSet block : blocks) {
+            outliers.or(block);
         }
-        return cleanData;
+        return outliers;
+    }
+
+    // Giữ ngữ nghĩa cũ: attribute sau chỉ thấy các dòng chưa bị loại bởi attribute trước
+    private BitSet markOutliersSequential(Instances data, int[] numericAttributes) {
+        int rows = data.numInstances();
+        BitSet outliers = new BitSet(rows);
+        double[] values = new double[rows];
+        for (int attIndex : numericAttributes) {
+            int n = 0;
+            for (int j = outliers.nextClearBit(0); j < rows; j = outliers.nextClearBit(j + 1)) {
+                values[n++] = data.instance(j).value(attIndex);
+            }
+            double[] bounds = iqrBounds(values, n);
+            if (bounds == null) {
+                continue;
+            }
+            for (int j = outliers.nextClearBit(0); j < rows; j = outliers.nextClearBit(j + 1)) {
+                if (isOutlier(data.instance(j).value(attIndex), bounds)) {
+                    outliers.set(j);
+                }
+            }
+        }
+        return outliers;
+    }
+
+    /*
+    Q1 = values[n/4], Q3 = values[3n/4] sau khi sort (missing/NaN đứng cuối như Arrays.sort)
+    @return {lowerBound, upperBound} hoặc null nếu không còn dòng nào
+     */
+    private double[] iqrBounds(double[] values, int n) {
+        if (n == 0) {
+            return null;
+        }
+        double q1 = QuickSelect.select(values, n, n / 4);
+        double q3 = QuickSelect.select(values, n, 3 * n / 4);
+        double iqr = q3 - q1;
+        return new double[]{q1 - 1.5 * iqr, q3 + 1.5 * iqr};
+    }
+
+    // Cùng vị trí n/4, 3n/4 nhưng đọc từ sketch
+    private double[] approximateIqrBounds(ColumnSketches sketches, int attIndex, int n) {
+        if (n == 0) {
+            return null;
+        }
+        double q1 = sketches.valueAtSortedIndex(attIndex, n / 4);
+        double q3 = sketches.valueAtSortedIndex(attIndex, 3 * n / 4);
+        double iqr = q3 - q1;
+        return new double[]{q1 - 1.5 * iqr, q3 + 1.5 * iqr};
+    }
+
+    private boolean isOutlier(double value, double[] bounds) {
+        return value < bounds[0] || value > bounds[1];
     }
     
     /*
@@ -215,11 +372,8 @@ public class Cleaner {
         (double) Math.min(beforeCounts[0], beforeCounts[1]);
         System.out.println("    Imbalance ratio: " + String.format("%.2f", ratio));
         //Apply SMOTE
-        SMOTE smote = new SMOTE();
-        smote.setInputFormat(data);
-        smote.setPercentage(100.0); // Increase minority class by 100%
-        smote.setNearestNeighbors(5); // Use 5 nearest neighbors
-        Instances balancedData = Filter.useFilter(data, smote);
+        // Increase minority class by 100%, use 5 nearest neighbors (mặc định của FastSMOTE)
+        Instances balancedData = smote.oversample(data, smoteMode);
         //Check sau SMOTE
         int[] afterCounts = getClassCounts(balancedData);
         System.out.println("\n  After SMOTE:");
@@ -243,16 +397,26 @@ public class Cleaner {
     public Instances selectFeatures(Instances data) throws Exception {
         System.out.println("\nFeature Selection (CFS)");
         int originalFeatures = data.numAttributes() - 1; // Exclude class
-        //CfsSubsetEval - Correlation-based Feature Selection
-        CfsSubsetEval eval = new CfsSubsetEval();
-        //GreedyStepwise search
+        //CFS - Correlation-based Feature Selection (ma trận correlation tính sẵn, cache theo fingerprint)
+        FastCfsSubsetEval eval = new FastCfsSubsetEval();
+        //GreedyStepwise search, các subset con đánh giá song song
         GreedyStepwise search = new GreedyStepwise();
         search.setSearchBackwards(true);
         //Attribute selection
         AttributeSelection selector = new AttributeSelection();
         selector.setEvaluator(eval);
         selector.setSearch(search);
-        selector.SelectAttributes(data);
+        // Số execution slot = số slot xin được từ governor của pipeline (ngoài governor: mọi core)
+        ResourceGovernor governor = ResourceGovernor.current();
+        if (governor == null) {
+            search.setNumExecutionSlots(Runtime.getRuntime().availableProcessors());
+            selector.SelectAttributes(data);
+        } else {
+            try (ResourceGovernor.Lease lease = governor.acquire(governor.getBudget())) {
+                search.setNumExecutionSlots(lease.slots());
+                selector.SelectAttributes(data);
+            }
+        }
         //Get selected attributes
         int[] selectedIndices = selector.selectedAttributes();
         System.out.println("  Original features: " + originalFeatures);
@@ -270,24 +434,20 @@ public class Cleaner {
     }
     
     private int countMissingValues(Instances data) {
-        int count = 0;
-        for (int i = 0; i < data.numAttributes(); i++) {
-            count += data.attributeStats(i).missingCount;
-        }
-        return count;
+        return (int) DatasetProfile.of(data).getTotalMissing();
     }
     
 
     private int[] getClassCounts(Instances data) {
-        int[] counts = data.attributeStats(data.classIndex()).nominalCounts;
+        long[] counts = DatasetProfile.of(data).getClassCounts();
         //Handle both binary and multi-class
         if (counts == null || counts.length < 2) {
             return new int[]{0, 0};
         }
-        int class0 = counts[0];
+        int class0 = (int) counts[0];
         int class1 = 0;
         for (int i = 1; i < counts.length; i++) {
-            class1 += counts[i];
+            class1 += (int) counts[i];
         }
         return new int[]{class0, class1};
     }
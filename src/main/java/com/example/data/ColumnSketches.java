@@ -0,0 +1,253 @@
+package com.example.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.example.utils.DatasetFingerprint;
+import com.example.utils.QuantileSketch;
+import com.example.utils.ResourceGovernor;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/*
+Thống kê xấp xỉ cho mọi attribute, build trong MỘT lượt đọc dữ liệu
+- Numeric: QuantileSketch (median, Q1, Q3 xấp xỉ) + RunningStats (min/max/mean/stdDev chính xác)
+- Nominal: RunningStats (đếm label)
+Mỗi khối dòng build sketch riêng (song song), sau đó merge theo thứ tự khối.
+Kết quả được lưu ra file theo fingerprint của dataset, lần chạy sau đọc lại thay vì tính lại.
+Thư mục chỉ giữ MAX_STORED_FILES file dùng gần nhất (đọc lại thì cập nhật mtime, ghi mới thì xoá file cũ nhất).
+ */
+public class ColumnSketches {
+    public static final File DEFAULT_DIRECTORY = new File("output/sketches");
+
+    private static final int MAGIC = 0x514B4331; // "QKC1"
+    private static final int VERSION = 1;
+    private static final int ROWS_PER_BLOCK = 1 << 16;
+    private static final long SEED = 1L;
+    private static final String EXTENSION = ".qsk";
+    private static final int MAX_STORED_FILES = 32;
+
+    private final long fingerprint;
+    private final int k;
+    private final long numRows;
+    private final RunningStats[] stats;
+    private final QuantileSketch[] sketches;
+
+    private ColumnSketches(long fingerprint, int k, long numRows, RunningStats[] stats, QuantileSketch[] sketches) {
+        this.fingerprint = fingerprint;
+        this.k = k;
+        this.numRows = numRows;
+        this.stats = stats;
+        this.sketches = sketches;
+    }
+
+    /*
+    Đọc sketch đã lưu cho dataset này, nếu chưa có thì build rồi lưu lại
+    @param data Dataset
+    @param epsilon Sai số rank cho phép (vd 0.01)
+    @param directory Thư mục lưu sketch
+    @return ColumnSketches của data
+     */
+    public static ColumnSketches loadOrBuild(Instances data, double epsilon, File directory) {
+        long start = System.nanoTime();
+        long fingerprint = DatasetFingerprint.of(data);
+        int k = QuantileSketch.kForError(epsilon);
+        File file = new File(directory, String.format("%016x-k%d%s", fingerprint, k, EXTENSION));
+
+        ColumnSketches stored = read(file, data, fingerprint, k);
+        if (stored != null) {
+            System.out.printf("  Quantile sketches loaded from %s (%.1f ms)%n",
+                    file.getName(), (System.nanoTime() - start) / 1_000_000.0);
+            return stored;
+        }
+        ColumnSketches built = build(data, epsilon, fingerprint);
+        try {
+            built.write(file);
+        } catch (IOException e) {
+            System.out.println("  ℹ Could not persist quantile sketches: " + e.getMessage());
+        }
+        System.out.printf("  Quantile sketches built (k=%d, ±%.2f%% rank error) in %.1f ms%n",
+                k, epsilon * 100, (System.nanoTime() - start) / 1_000_000.0);
+        return built;
+    }
+
+    // Một lượt song song theo khối dòng, merge các khối theo thứ tự
+    public static ColumnSketches build(Instances data, double epsilon, long fingerprint) {
+        int k = QuantileSketch.kForError(epsilon);
+        int rows = data.numInstances();
+        int numBlocks = Math.max(1, (rows + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK);
+        ColumnSketches[] partial = new ColumnSketches[numBlocks];
+        ResourceGovernor.parallelFor(numBlocks, b -> {
+            ColumnSketches block = empty(data, k, fingerprint, SEED + b);
+            for (int j = b * ROWS_PER_BLOCK; j < Math.min(rows, (b + 1) * ROWS_PER_BLOCK); j++) {
+                block.add(data.instance(j));
+            }
+            partial[b] = block;
+        });
+
+        ColumnSketches result = partial[0];
+        for (int b = 1; b < numBlocks; b++) {
+            result.merge(partial[b]);
+        }
+        return new ColumnSketches(fingerprint, k, rows, result.stats, result.sketches);
+    }
+
+    private static ColumnSketches empty(Instances data, int k, long fingerprint, long seed) {
+        RunningStats[] stats = new RunningStats[data.numAttributes()];
+        QuantileSketch[] sketches = new QuantileSketch[data.numAttributes()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new RunningStats(data.attribute(i));
+            if (data.attribute(i).isNumeric()) {
+                sketches[i] = new QuantileSketch(k, seed * 31 + i);
+            }
+        }
+        return new ColumnSketches(fingerprint, k, 0, stats, sketches);
+    }
+
+    private void add(Instance instance) {
+        for (int i = 0; i < stats.length; i++) {
+            double value = instance.value(i);
+            stats[i].add(value, instance.weight());
+            if (sketches[i] != null) {
+                sketches[i].update(value);
+            }
+        }
+    }
+
+    private void merge(ColumnSketches other) {
+        for (int i = 0; i < stats.length; i++) {
+            stats[i].merge(other.stats[i]);
+            if (sketches[i] != null) {
+                sketches[i].merge(other.sketches[i]);
+            }
+        }
+    }
+
+    public RunningStats getStats(int attIndex) {
+        return stats[attIndex];
+    }
+
+    public long getNumRows() {
+        return numRows;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    // Median xấp xỉ của các giá trị không missing (0.0 nếu cột toàn missing, giống bản chính xác)
+    public double median(int attIndex) {
+        QuantileSketch sketch = sketches[attIndex];
+        long n = sketch.getCount();
+        if (n == 0) {
+            return 0.0;
+        }
+        if (n % 2 == 1) {
+            return sketch.valueAtRank(n / 2);
+        }
+        return (sketch.valueAtRank(n / 2 - 1) + sketch.valueAtRank(n / 2)) / 2.0;
+    }
+
+    /*
+    Giá trị xấp xỉ của values[index] khi sort cả cột (missing/NaN đứng cuối như Arrays.sort)
+    @param attIndex Numeric attribute
+    @param index 0 .. numRows-1
+     */
+    public double valueAtSortedIndex(int attIndex, long index) {
+        QuantileSketch sketch = sketches[attIndex];
+        return index >= sketch.getCount() ? Double.NaN : sketch.valueAtRank(index);
+    }
+
+    // ===============================
+    // Lưu / đọc file
+    // ===============================
+    private void write(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory.getPath());
+        }
+        // Mỗi lần ghi một file tạm riêng → hai pipeline ghi cùng sketch không giẫm lên nhau
+        Path temp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+        try {
+            writeTo(temp);
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        prune(directory);
+    }
+
+    private void writeTo(Path temp) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(k);
+            out.writeLong(numRows);
+            out.writeInt(stats.length);
+            for (int i = 0; i < stats.length; i++) {
+                stats[i].writeTo(out);
+                out.writeBoolean(sketches[i] != null);
+                if (sketches[i] != null) {
+                    sketches[i].writeTo(out);
+                }
+            }
+        }
+    }
+
+    // Xoá các file sketch ít dùng nhất, chỉ giữ MAX_STORED_FILES file mới nhất theo mtime
+    private static void prune(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null || files.length <= MAX_STORED_FILES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = MAX_STORED_FILES; i < files.length; i++) {
+            if (!files[i].delete() && files[i].exists()) {
+                System.out.println("  ℹ Could not delete old sketch file " + files[i].getName());
+            }
+        }
+    }
+
+    private static ColumnSketches read(File file, Instances data, long fingerprint, int k) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint
+                    || in.readInt() != k) {
+                return null;
+            }
+            long numRows = in.readLong();
+            int numAttributes = in.readInt();
+            if (numRows != data.numInstances() || numAttributes != data.numAttributes()) {
+                return null;
+            }
+            RunningStats[] stats = new RunningStats[numAttributes];
+            QuantileSketch[] sketches = new QuantileSketch[numAttributes];
+            for (int i = 0; i < numAttributes; i++) {
+                stats[i] = RunningStats.readFrom(in, data.attribute(i));
+                if (in.readBoolean()) {
+                    sketches[i] = QuantileSketch.readFrom(in, SEED * 31 + i);
+                }
+            }
+            // Đánh dấu vừa dùng để prune giữ lại
+            file.setLastModified(System.currentTimeMillis());
+            return new ColumnSketches(fingerprint, k, numRows, stats, sketches);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("  ℹ Ignoring unreadable sketch file " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
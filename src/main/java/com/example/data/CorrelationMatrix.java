@@ -0,0 +1,286 @@
+package com.example.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.utils.DatasetFingerprint;
+import com.example.utils.ResourceGovernor;
+
+import weka.core.ContingencyTables;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.Discretize;
+
+/*
+Ma trận symmetric uncertainty giữa mọi cặp attribute (kể cả class), như CfsSubsetEval dùng
+- Dữ liệu được discretize giống hệt CfsSubsetEval (supervised, better encoding, bỏ dòng thiếu class)
+- Mỗi cột chuyển thành mảng int một lần; các cặp (i, j) tính song song, mỗi cặp một bảng đếm
+- Missing được phân bổ lại theo tỉ lệ như CfsSubsetEval (missingSeparate = false)
+Kết quả giống hệt từng phần tử CfsSubsetEval tính lazy, được cache trong bộ nhớ (đến khi clear()) và
+trên đĩa theo fingerprint của dataset nên các lần search khác nhau (và lần chạy sau) dùng lại.
+ */
+public class CorrelationMatrix {
+    public static final File DEFAULT_DIRECTORY = new File("output/cfs");
+
+    private static final int MAGIC = 0x43465331; // "CFS1"
+    private static final Map<Long, CorrelationMatrix> CACHE = new ConcurrentHashMap<>();
+
+    private final long fingerprint;
+    private final int classIndex;
+    // Tam giác dưới: values[i][j] với j < i, đường chéo = 1
+    private final float[][] values;
+
+    private CorrelationMatrix(long fingerprint, int classIndex, float[][] values) {
+        this.fingerprint = fingerprint;
+        this.classIndex = classIndex;
+        this.values = values;
+    }
+
+    /*
+    Ma trận của dataset: lấy từ cache bộ nhớ, file đã lưu, hoặc tính mới
+    @param data Dataset có class nominal
+    @param directory Thư mục lưu ma trận (null = không lưu file)
+    @return CorrelationMatrix
+    @throws Exception Lỗi discretize
+     */
+    public static CorrelationMatrix forData(Instances data, File directory) throws Exception {
+        long start = System.nanoTime();
+        long fingerprint = DatasetFingerprint.of(data);
+        CorrelationMatrix cached = CACHE.get(fingerprint);
+        if (cached != null) {
+            return cached;
+        }
+        File file = directory == null ? null : new File(directory, String.format("%016x.cfs", fingerprint));
+        CorrelationMatrix matrix = file == null ? null : read(file, data, fingerprint);
+        if (matrix != null) {
+            System.out.printf("  CFS correlation matrix loaded from %s (%.1f ms)%n",
+                    file.getName(), (System.nanoTime() - start) / 1_000_000.0);
+        } else {
+            matrix = compute(data, fingerprint);
+            System.out.printf("  CFS correlation matrix computed (%d attributes) in %.1f ms%n",
+                    data.numAttributes(), (System.nanoTime() - start) / 1_000_000.0);
+            if (file != null) {
+                try {
+                    matrix.write(file);
+                } catch (IOException e) {
+                    System.out.println("  ℹ Could not persist correlation matrix: " + e.getMessage());
+                }
+            }
+        }
+        CACHE.put(fingerprint, matrix);
+        return matrix;
+    }
+
+    // Xoá cache bộ nhớ (file trên đĩa vẫn giữ); MiningController gọi cuối mỗi pipeline
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    private static CorrelationMatrix compute(Instances data, long fingerprint) throws Exception {
+        Instances train = new Instances(data);
+        train.deleteWithMissingClass();
+        Discretize discretize = new Discretize();
+        discretize.setUseBetterEncoding(true);
+        discretize.setInputFormat(train);
+        train = Filter.useFilter(train, discretize);
+
+        int numAttribs = train.numAttributes();
+        int rows = train.numInstances();
+        // Missing → label cuối (numValues), giống ô "missing" của CfsSubsetEval
+        int[][] columns = new int[numAttribs][rows];
+        Instances source = train;
+        ResourceGovernor.parallelFor(numAttribs, i -> {
+            int missingCode = source.attribute(i).numValues();
+            for (int r = 0; r < rows; r++) {
+                Instance instance = source.instance(r);
+                columns[i][r] = instance.isMissing(i) ? missingCode : (int) instance.value(i);
+            }
+        });
+
+        float[][] values = new float[numAttribs][];
+        for (int i = 0; i < numAttribs; i++) {
+            values[i] = new float[i + 1];
+            values[i][i] = 1.0f;
+        }
+        int classIndex = train.classIndex();
+        ResourceGovernor.parallelFor(numAttribs * (numAttribs - 1) / 2, p -> {
+            int i = (int) ((1 + Math.sqrt(1 + 8.0 * p)) / 2);
+            while (i * (i - 1) / 2 > p) {
+                i--;
+            }
+            while ((i + 1) * i / 2 <= p) {
+                i++;
+            }
+            int j = p - i * (i - 1) / 2;
+            values[i][j] = (float) symmetricalUncertainty(columns[i], columns[j],
+                    source.attribute(i).numValues() + 1, source.attribute(j).numValues() + 1, rows,
+                    i == classIndex || j == classIndex);
+        });
+        return new CorrelationMatrix(fingerprint, classIndex, values);
+    }
+
+    // Port CfsSubsetEval.symmUncertCorr (missingSeparate = false), đếm bằng long cho nhanh
+    private static double symmetricalUncertainty(int[] column1, int[] column2, int ni, int nj, int numInstances,
+                                                 boolean withClass) {
+        long[] raw = new long[ni * nj];
+        for (int r = 0; r < numInstances; r++) {
+            raw[column1[r] * nj + column2[r]]++;
+        }
+        double[][] counts = new double[ni][nj];
+        double[] sumi = new double[ni];
+        double[] sumj = new double[nj];
+        double sum = 0.0;
+        for (int i = 0; i < ni; i++) {
+            for (int j = 0; j < nj; j++) {
+                counts[i][j] = raw[i * nj + j];
+            }
+        }
+        for (int i = 0; i < ni; i++) {
+            for (int j = 0; j < nj; j++) {
+                sumi[i] += counts[i][j];
+                sum += counts[i][j];
+            }
+        }
+        for (int j = 0; j < nj; j++) {
+            for (int i = 0; i < ni; i++) {
+                sumj[j] += counts[i][j];
+            }
+        }
+
+        if (sumi[ni - 1] < numInstances && sumj[nj - 1] < numInstances) {
+            double[] iCopy = sumi.clone();
+            double[] jCopy = sumj.clone();
+            double[][] countsCopy = new double[ni][];
+            for (int i = 0; i < ni; i++) {
+                countsCopy[i] = counts[i].clone();
+            }
+            double totalMissing = sumi[ni - 1] + sumj[nj - 1] - counts[ni - 1][nj - 1];
+
+            // Phân bổ missing của att1 theo tỉ lệ các giá trị đã biết
+            if (sumi[ni - 1] > 0.0) {
+                for (int j = 0; j < nj - 1; j++) {
+                    if (counts[ni - 1][j] > 0.0) {
+                        for (int i = 0; i < ni - 1; i++) {
+                            double temp = iCopy[i] / (sum - iCopy[ni - 1]) * counts[ni - 1][j];
+                            counts[i][j] += temp;
+                            sumi[i] += temp;
+                        }
+                        counts[ni - 1][j] = 0.0;
+                    }
+                }
+            }
+            sumi[ni - 1] = 0.0;
+
+            // Phân bổ missing của att2
+            if (sumj[nj - 1] > 0.0) {
+                for (int i = 0; i < ni - 1; i++) {
+                    if (counts[i][nj - 1] > 0.0) {
+                        for (int j = 0; j < nj - 1; j++) {
+                            double temp = jCopy[j] / (sum - jCopy[nj - 1]) * counts[i][nj - 1];
+                            counts[i][j] += temp;
+                            sumj[j] += temp;
+                        }
+                        counts[i][nj - 1] = 0.0;
+                    }
+                }
+            }
+            sumj[nj - 1] = 0.0;
+
+            // Missing ở cả hai
+            if (counts[ni - 1][nj - 1] > 0.0 && totalMissing != sum) {
+                for (int i = 0; i < ni - 1; i++) {
+                    for (int j = 0; j < nj - 1; j++) {
+                        double temp = countsCopy[i][j] / (sum - totalMissing) * countsCopy[ni - 1][nj - 1];
+                        counts[i][j] += temp;
+                        sumi[i] += temp;
+                        sumj[j] += temp;
+                    }
+                }
+                counts[ni - 1][nj - 1] = 0.0;
+            }
+        }
+
+        double measure = ContingencyTables.symmetricalUncertainty(counts);
+        if (Utils.eq(measure, 0.0)) {
+            return withClass ? 0.0 : 1.0;
+        }
+        return measure;
+    }
+
+    // Correlation giữa hai attribute (thứ tự bất kỳ)
+    public float get(int att1, int att2) {
+        return att1 >= att2 ? values[att1][att2] : values[att2][att1];
+    }
+
+    public int numAttributes() {
+        return values.length;
+    }
+
+    public int getClassIndex() {
+        return classIndex;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    // ===============================
+    // Lưu / đọc file
+    // ===============================
+    private void write(File file) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory.getPath());
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(classIndex);
+            out.writeInt(values.length);
+            for (float[] row : values) {
+                for (float value : row) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static CorrelationMatrix read(File file, Instances data, long fingerprint) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readLong() != fingerprint) {
+                return null;
+            }
+            int classIndex = in.readInt();
+            int numAttribs = in.readInt();
+            if (classIndex != data.classIndex() || numAttribs != data.numAttributes()) {
+                return null;
+            }
+            float[][] values = new float[numAttribs][];
+            for (int i = 0; i < numAttribs; i++) {
+                values[i] = new float[i + 1];
+                for (int j = 0; j <= i; j++) {
+                    values[i][j] = in.readFloat();
+                }
+            }
+            return new CorrelationMatrix(fingerprint, classIndex, values);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("  ℹ Ignoring unreadable correlation matrix " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
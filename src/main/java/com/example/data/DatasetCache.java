@@ -0,0 +1,362 @@
+package com.example.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/*
+Binary columnar cache (sidecar file) cho dataset đã parse
+Layout: header (magic, version, size/mtime/hash của file nguồn, relation, attributes,
+nominal dictionary) rồi từng cột: missing bitmap (long[]) + values
+(double[] cho numeric, int[] dictionary code cho nominal).
+Lần load sau chỉ cần memory-map sidecar khi size/mtime/hash của file nguồn khớp.
+Chỉ hỗ trợ attribute numeric / nominal, instance weight = 1 và mỗi cột ≤ 2 GB (một ByteBuffer),
+các dataset khác không được cache.
+ */
+public class DatasetCache {
+    public static final String SUFFIX = ".colcache";
+
+    private static final int MAGIC = 0x57434331; // "WCC1"
+    private static final int VERSION = 1;
+    private static final byte TYPE_NUMERIC = 0;
+    private static final byte TYPE_NOMINAL = 1;
+    private static final long HASH_CHUNK_BYTES = 64L << 20;
+    // Một cột phải nằm trong một ByteBuffer / MappedByteBuffer
+    private static final long MAX_COLUMN_BYTES = Integer.MAX_VALUE - 8;
+
+    /*
+    Đọc dataset từ sidecar nếu còn hợp lệ
+    @param source File dataset gốc
+    @return Instances hoặc null nếu không có cache hợp lệ
+     */
+    public Instances load(File source) {
+        File sidecar = sidecarFor(source);
+        if (!sidecar.isFile() || !source.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                return null;
+            }
+            long size = mapped.getLong();
+            long modified = mapped.getLong();
+            long hash = mapped.getLong();
+            if (size != source.length() || modified != source.lastModified()
+                    || hash != contentHash(source)) {
+                return null;
+            }
+            return readColumns(mapped, channel);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("  ℹ Ignoring unreadable dataset cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+    Ghi sidecar cho dataset vừa parse
+    @param source File dataset gốc
+    @param data Dataset đã parse từ source
+    @return true nếu đã ghi cache
+     */
+    public boolean store(File source, Instances data) throws IOException {
+        if (!isCacheable(data)) {
+            return false;
+        }
+        ByteBuffer header = encodeHeader(source, data);
+        Path target = sidecarFor(source).toPath();
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            writeColumns(temp, header, data);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // Không để lại file tạm dở dang
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return true;
+    }
+
+    public File sidecarFor(File source) {
+        return new File(source.getAbsoluteFile().getParentFile(), source.getName() + SUFFIX);
+    }
+
+    /*
+    Số byte của một cột trong sidecar (missing bitmap + values), tính bằng long để không tràn int
+    @param numeric Cột numeric (double) hay nominal (int code)
+    @param numRows Số dòng
+    @return Số byte, đã căn 8
+     */
+    private static long columnBytes(boolean numeric, int numRows) {
+        long bitmapBytes = ((numRows + 63L) / 64) * 8;
+        long valueBytes = numeric ? numRows * 8L : (numRows * 4L + 7) & ~7L;
+        return bitmapBytes + valueBytes;
+    }
+
+    private void writeColumns(Path temp, ByteBuffer header, Instances data) throws IOException {
+        int numAttributes = data.numAttributes();
+        int numRows = data.numInstances();
+        int bitmapWords = (numRows + 63) / 64;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (int col = 0; col < numAttributes; col++) {
+                boolean numeric = data.attribute(col).isNumeric();
+                ByteBuffer column = ByteBuffer.allocate((int) columnBytes(numeric, numRows))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                long[] missing = new long[bitmapWords];
+                for (int row = 0; row < numRows; row++) {
+                    double value = data.instance(row).value(col);
+                    if (Utils.isMissingValue(value)) {
+                        missing[row >>> 6] |= 1L << (row & 63);
+                    }
+                }
+                column.asLongBuffer().put(missing);
+                column.position(bitmapWords * 8);
+                for (int row = 0; row < numRows; row++) {
+                    double value = data.instance(row).value(col);
+                    boolean isMissing = Utils.isMissingValue(value);
+                    if (numeric) {
+                        column.putDouble(isMissing ? 0.0 : value);
+                    } else {
+                        column.putInt(isMissing ? -1 : (int) value);
+                    }
+                }
+                column.rewind();
+                writeFully(channel, column);
+            }
+        }
+    }
+
+    /*
+    Hash 64-bit nội dung file, tính song song theo từng đoạn memory-mapped
+    rồi kết hợp theo thứ tự nên kết quả không phụ thuộc số thread
+     */
+    public long contentHash(File source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) ((size + HASH_CHUNK_BYTES - 1) / HASH_CHUNK_BYTES);
+            long[] partial = new long[chunks];
+            try {
+                ResourceGovernor.parallelFor(chunks, c -> {
+                    long from = c * HASH_CHUNK_BYTES;
+                    long length = Math.min(HASH_CHUNK_BYTES, size - from);
+                    try {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+                        partial[c] = hashBuffer(buffer.order(ByteOrder.LITTLE_ENDIAN));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+            long hash = mix(size);
+            for (long h : partial) {
+                hash = mix(hash ^ h);
+            }
+            return hash;
+        }
+    }
+
+    // ===============================
+    // Encoding
+    // ===============================
+
+    private boolean isCacheable(Instances data) {
+        for (int i = 0; i < data.numAttributes(); i++) {
+            Attribute attr = data.attribute(i);
+            if (!attr.isNumeric() && !attr.isNominal()) {
+                return false;
+            }
+            if (columnBytes(attr.isNumeric(), data.numInstances()) > MAX_COLUMN_BYTES) {
+                return false;
+            }
+            if (attr.isDate()) {
+                return false;
+            }
+        }
+        for (int row = 0; row < data.numInstances(); row++) {
+            if (data.instance(row).weight() != 1.0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer encodeHeader(File source, Instances data) throws IOException {
+        List<byte[]> strings = new ArrayList<>();
+        strings.add(utf8(data.relationName()));
+        for (int i = 0; i < data.numAttributes(); i++) {
+            Attribute attr = data.attribute(i);
+            strings.add(utf8(attr.name()));
+            for (int v = 0; attr.isNominal() && v < attr.numValues(); v++) {
+                strings.add(utf8(attr.value(v)));
+            }
+        }
+        int length = 4 + 4 + 8 + 8 + 8 + 4 + 4 + 4;
+        for (byte[] s : strings) {
+            length += 4 + s.length;
+        }
+        length += data.numAttributes() * (1 + 4);
+
+        ByteBuffer buffer = ByteBuffer.allocate(align8(length)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION);
+        buffer.putLong(source.length()).putLong(source.lastModified()).putLong(contentHash(source));
+        buffer.putInt(data.numAttributes()).putInt(data.numInstances()).putInt(data.classIndex());
+        int s = 0;
+        putBytes(buffer, strings.get(s++));
+        for (int i = 0; i < data.numAttributes(); i++) {
+            Attribute attr = data.attribute(i);
+            putBytes(buffer, strings.get(s++));
+            buffer.put(attr.isNumeric() ? TYPE_NUMERIC : TYPE_NOMINAL);
+            buffer.putInt(attr.isNominal() ? attr.numValues() : 0);
+            for (int v = 0; attr.isNominal() && v < attr.numValues(); v++) {
+                putBytes(buffer, strings.get(s++));
+            }
+        }
+        buffer.rewind();
+        return buffer;
+    }
+
+    private Instances readColumns(MappedByteBuffer mapped, FileChannel channel) throws IOException {
+        int numAttributes = mapped.getInt();
+        int numRows = mapped.getInt();
+        int classIndex = mapped.getInt();
+        String relationName = getString(mapped);
+
+        ArrayList<Attribute> attributes = new ArrayList<>(numAttributes);
+        boolean[] numeric = new boolean[numAttributes];
+        for (int i = 0; i < numAttributes; i++) {
+            String name = getString(mapped);
+            numeric[i] = mapped.get() == TYPE_NUMERIC;
+            int numLabels = mapped.getInt();
+            if (numeric[i]) {
+                attributes.add(new Attribute(name));
+            } else {
+                List<String> labels = new ArrayList<>(numLabels);
+                for (int v = 0; v < numLabels; v++) {
+                    labels.add(getString(mapped));
+                }
+                attributes.add(new Attribute(name, labels));
+            }
+        }
+
+        if (numRows < 0) {
+            throw new IOException("Corrupt dataset cache: negative row count");
+        }
+        int bitmapWords = (numRows + 63) / 64;
+        long offset = align8(mapped.position());
+        long[][] missing = new long[numAttributes][];
+        double[][] numericValues = new double[numAttributes][];
+        int[][] codes = new int[numAttributes][];
+        for (int col = 0; col < numAttributes; col++) {
+            long columnBytes = columnBytes(numeric[col], numRows);
+            if (columnBytes > MAX_COLUMN_BYTES || offset + columnBytes > channel.size()) {
+                throw new IOException("Corrupt dataset cache: column " + col + " out of bounds");
+            }
+            MappedByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, offset, columnBytes);
+            column.order(ByteOrder.LITTLE_ENDIAN);
+            missing[col] = new long[bitmapWords];
+            column.asLongBuffer().get(missing[col]);
+            column.position(bitmapWords * 8);
+            if (numeric[col]) {
+                numericValues[col] = new double[numRows];
+                column.asDoubleBuffer().get(numericValues[col]);
+            } else {
+                codes[col] = new int[numRows];
+                column.asIntBuffer().get(codes[col]);
+            }
+            offset += columnBytes;
+        }
+
+        Instance[] rows = new Instance[numRows];
+        ResourceGovernor.parallelFor(numRows, row -> {
+            double[] values = new double[numAttributes];
+            for (int col = 0; col < numAttributes; col++) {
+                if ((missing[col][row >>> 6] & (1L << (row & 63))) != 0) {
+                    values[col] = Utils.missingValue();
+                } else {
+                    values[col] = numeric[col] ? numericValues[col][row] : codes[col][row];
+                }
+            }
+            rows[row] = new DenseInstance(1.0, values);
+        });
+
+        Instances data = new Instances(relationName, attributes, numRows);
+        for (Instance row : rows) {
+            data.add(row);
+        }
+        if (classIndex >= 0) {
+            data.setClassIndex(classIndex);
+        }
+        return data;
+    }
+
+    // ===============================
+    // Helpers
+    // ===============================
+
+    private long hashBuffer(ByteBuffer buffer) {
+        long hash = 0x9E3779B97F4A7C15L;
+        while (buffer.remaining() >= 8) {
+            hash = mix(hash ^ buffer.getLong());
+        }
+        while (buffer.hasRemaining()) {
+            hash = mix(hash ^ (buffer.get() & 0xFFL));
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int align8(int value) {
+        return (value + 7) & ~7;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.data;
+
+import com.example.utils.ResourceGovernor;
+import com.example.utils.WeakIdentityCache;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/*
+Thống kê của cả dataset tính trong MỘT lượt song song, dùng chung cho mọi nơi cần
+(Analyzer, Cleaner, log class distribution...) thay vì gọi attributeStats từng cột
+- Mỗi attribute: count, missing, min/max/mean/stdDev (numeric), histogram label (nominal)
+- Class counts = histogram của class attribute
+Cache theo chính object Instances (identity, WeakIdentityCache — không hash nội dung dataset) + version stamp: số dòng/attribute, class index, dòng đầu/cuối và
+hash theo thứ tự của class value + weight từng dòng (một lượt O(số dòng), rẻ hơn nhiều so với profile).
+→ Sửa class / weight tại chỗ (setClassValue / setWeight) tự làm mới profile mà class counts phụ thuộc
+  (FastSMOTE, ClassBalancing, Cleaner, log class distribution).
+→ Sửa attribute KHÁC tại chỗ (setValue / set dòng mới) không đổi stamp: code đó phải gọi invalidate.
+ */
+public class DatasetProfile {
+    private static final int ROWS_PER_BLOCK = 8192;
+    private static final WeakIdentityCache<Instances, DatasetProfile> CACHE = new WeakIdentityCache<>();
+
+    private final long stamp;
+    private final int numRows;
+    private final int classIndex;
+    private final RunningStats[] stats;
+
+    private DatasetProfile(long stamp, int numRows, int classIndex, RunningStats[] stats) {
+        this.stamp = stamp;
+        this.numRows = numRows;
+        this.classIndex = classIndex;
+        this.stats = stats;
+    }
+
+    /*
+    Profile của dataset (tính lại nếu dataset đã đổi version)
+    @param data Dataset
+    @return DatasetProfile
+     */
+    public static DatasetProfile of(Instances data) {
+        long stamp = versionStamp(data);
+        DatasetProfile cached = CACHE.get(data);
+        if (cached != null && cached.stamp == stamp) {
+            return cached;
+        }
+        DatasetProfile profile = compute(data, stamp);
+        CACHE.put(data, profile);
+        return profile;
+    }
+
+    // Bỏ profile đã cache (sau khi sửa dữ liệu tại chỗ)
+    public static void invalidate(Instances data) {
+        CACHE.remove(data);
+    }
+
+    private static DatasetProfile compute(Instances data, long stamp) {
+        int rows = data.numInstances();
+        int numBlocks = Math.max(1, (rows + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK);
+        RunningStats[][] partial = new RunningStats[numBlocks][];
+        ResourceGovernor.parallelFor(numBlocks, b -> {
+            RunningStats[] block = emptyStats(data);
+            for (int j = b * ROWS_PER_BLOCK; j < Math.min(rows, (b + 1) * ROWS_PER_BLOCK); j++) {
+                double weight = data.instance(j).weight();
+                for (int i = 0; i < block.length; i++) {
+                    block[i].add(data.instance(j).value(i), weight);
+                }
+            }
+            partial[b] = block;
+        });
+
+        RunningStats[] result = partial[0];
+        for (int b = 1; b < numBlocks; b++) {
+            for (int i = 0; i < result.length; i++) {
+                result[i].merge(partial[b][i]);
+            }
+        }
+        return new DatasetProfile(stamp, rows, data.classIndex(), result);
+    }
+
+    private static RunningStats[] emptyStats(Instances data) {
+        RunningStats[] stats = new RunningStats[data.numAttributes()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new RunningStats(data.attribute(i));
+        }
+        return stats;
+    }
+
+    private static long versionStamp(Instances data) {
+        long stamp = data.numInstances();
+        stamp = stamp * 31 + data.numAttributes();
+        stamp = stamp * 31 + data.classIndex();
+        if (data.numInstances() > 0) {
+            stamp = stamp * 31 + System.identityHashCode(data.instance(0));
+            stamp = stamp * 31 + System.identityHashCode(data.lastInstance());
+        }
+        int classIndex = data.classIndex();
+        for (int j = 0; j < data.numInstances(); j++) {
+            Instance row = data.instance(j);
+            long content = Double.doubleToLongBits(row.weight());
+            if (classIndex >= 0) {
+                content = content * 31 + Double.doubleToLongBits(row.value(classIndex));
+            }
+            stamp = stamp * 1_000_003 + content;
+        }
+        return stamp;
+    }
+
+    public RunningStats getStats(int attIndex) {
+        return stats[attIndex];
+    }
+
+    public long getMissingCount(int attIndex) {
+        return stats[attIndex].getMissingCount();
+    }
+
+    public long getTotalMissing() {
+        long total = 0;
+        for (RunningStats stat : stats) {
+            total += stat.getMissingCount();
+        }
+        return total;
+    }
+
+    // Số dòng theo từng label của class (null nếu chưa set class hoặc class không phải nominal)
+    public long[] getClassCounts() {
+        if (classIndex < 0) {
+            return null;
+        }
+        return stats[classIndex].getNominalCounts();
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+}
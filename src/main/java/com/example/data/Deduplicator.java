@@ -0,0 +1,207 @@
+package com.example.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.RemoveDuplicates;
+
+/*
+Xoá dòng trùng lặp bằng hash, thay cho weka RemoveDuplicates
+1. Fingerprint 128-bit cho mỗi dòng (song song theo khối dòng)
+2. Chèn song song vào bảng open addressing: mỗi slot giữ index nhỏ nhất có fingerprint đó (CAS)
+3. Dòng có đại diện khác chính nó → so sánh chính xác với đại diện; chỉ khi trùng fingerprint
+   nhưng khác giá trị (collision) mới xử lý tuần tự
+4. Copy các dòng giữ lại một lần, đúng thứ tự gốc
+Ngữ nghĩa giống RemoveDuplicates: so sánh mọi attribute kể cả class, missing == missing,
+giá trị so bằng == (0.0 == -0.0), bỏ qua weight, giữ lần xuất hiện đầu tiên.
+ */
+public class Deduplicator {
+    private static final int ROWS_PER_BLOCK = 8192;
+    private static final int EMPTY = -1;
+    private static final long MISSING_BITS = 0x7FF8DEADBEEF0001L;
+
+    private int lastCollisions;
+
+    /*
+    @param data Dataset
+    @return Dataset mới không còn dòng trùng (relation name giống output của RemoveDuplicates)
+    @throws Exception Lỗi khi phải fallback về RemoveDuplicates
+     */
+    public Instances removeDuplicates(Instances data) throws Exception {
+        if (data.checkForStringAttributes()) {
+            // Giá trị string là index vào bảng string riêng của từng dataset → dùng filter gốc
+            RemoveDuplicates filter = new RemoveDuplicates();
+            filter.setInputFormat(data);
+            return Filter.useFilter(data, filter);
+        }
+
+        int rows = data.numInstances();
+        boolean[] keep = firstOccurrences(data);
+        Instances result = new Instances(data, rows);
+        result.setRelationName(filteredRelationName(data));
+        for (int j = 0; j < rows; j++) {
+            if (keep[j]) {
+                result.add(data.instance(j));
+            }
+        }
+        result.compactify();
+        return result;
+    }
+
+    /*
+    Mask các dòng giữ lại (lần xuất hiện đầu tiên), không copy dữ liệu
+    Chỉ dùng cho dataset không có string attribute
+     */
+    boolean[] firstOccurrences(Instances data) {
+        int rows = data.numInstances();
+        long[] hi = new long[rows];
+        long[] lo = new long[rows];
+        int blocks = (rows + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+        ResourceGovernor.parallelFor(blocks, b -> {
+            for (int j = b * ROWS_PER_BLOCK; j < Math.min(rows, (b + 1) * ROWS_PER_BLOCK); j++) {
+                fingerprint(data.instance(j), j, hi, lo);
+            }
+        });
+
+        int mask = tableSize(rows) - 1;
+        AtomicIntegerArray table = new AtomicIntegerArray(mask + 1);
+        for (int s = 0; s <= mask; s++) {
+            table.set(s, EMPTY);
+        }
+        int[] slotOf = new int[rows];
+        ResourceGovernor.parallelFor(rows, j -> slotOf[j] = insert(table, mask, hi, lo, j));
+
+        // Xác minh chính xác với đại diện (index nhỏ nhất cùng fingerprint)
+        boolean[] keep = new boolean[rows];
+        ConcurrentLinkedQueue<Integer> collided = new ConcurrentLinkedQueue<>();
+        ResourceGovernor.parallelFor(rows, j -> {
+            int representative = table.get(slotOf[j]);
+            if (representative == j) {
+                keep[j] = true;
+            } else if (!sameValues(data.instance(j), data.instance(representative))) {
+                collided.add(j);
+            }
+        });
+        lastCollisions = collided.size();
+        if (!collided.isEmpty()) {
+            resolveCollisions(data, collided, slotOf, keep);
+        }
+        return keep;
+    }
+
+    // Số dòng trùng fingerprint nhưng khác giá trị ở lần chạy gần nhất
+    public int getLastCollisions() {
+        return lastCollisions;
+    }
+
+    /*
+    Dòng j trùng fingerprint với đại diện nhưng khác giá trị: so với các dòng collision đã giữ
+    (cùng slot, index nhỏ hơn). Duyệt tăng dần nên vẫn giữ lần xuất hiện đầu tiên.
+     */
+    private void resolveCollisions(Instances data, ConcurrentLinkedQueue<Integer> collided, int[] slotOf, boolean[] keep) {
+        List<Integer> ordered = new ArrayList<>(collided);
+        ordered.sort(null);
+        Map<Integer, List<Integer>> keptBySlot = new HashMap<>();
+        for (int j : ordered) {
+            List<Integer> kept = keptBySlot.computeIfAbsent(slotOf[j], s -> new ArrayList<>());
+            boolean duplicate = false;
+            for (int other : kept) {
+                if (sameValues(data.instance(j), data.instance(other))) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                keep[j] = true;
+                kept.add(j);
+            }
+        }
+    }
+
+    // Chèn dòng j, trả về slot của fingerprint; slot luôn giữ index nhỏ nhất
+    private int insert(AtomicIntegerArray table, int mask, long[] hi, long[] lo, int j) {
+        int slot = (int) hi[j] & mask;
+        while (true) {
+            int current = table.get(slot);
+            if (current == EMPTY) {
+                if (table.compareAndSet(slot, EMPTY, j)) {
+                    return slot;
+                }
+                continue;
+            }
+            if (hi[current] == hi[j] && lo[current] == lo[j]) {
+                while (j < current && !table.compareAndSet(slot, current, j)) {
+                    current = table.get(slot);
+                }
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void fingerprint(Instance instance, int row, long[] hi, long[] lo) {
+        long h1 = 0x243F6A8885A308D3L;
+        long h2 = 0x13198A2E03707344L;
+        for (int i = 0; i < instance.numAttributes(); i++) {
+            long bits = valueBits(instance, i);
+            h1 = mix(h1 ^ bits);
+            h2 = mix((h2 + bits) * 0x9E3779B97F4A7C15L + i);
+        }
+        hi[row] = h1;
+        lo[row] = h2;
+    }
+
+    // Chuẩn hoá để fingerprint khớp với phép so sánh: missing riêng, -0.0 == 0.0
+    private long valueBits(Instance instance, int i) {
+        if (instance.isMissing(i)) {
+            return MISSING_BITS;
+        }
+        double value = instance.value(i);
+        return Double.doubleToLongBits(value == 0.0 ? 0.0 : value);
+    }
+
+    private boolean sameValues(Instance a, Instance b) {
+        for (int i = 0; i < a.numAttributes(); i++) {
+            boolean missingA = a.isMissing(i);
+            boolean missingB = b.isMissing(i);
+            if (missingA != missingB || (!missingA && a.value(i) != b.value(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Relation name giống output của Filter.useFilter(data, new RemoveDuplicates())
+    String filteredRelationName(Instances data) {
+        StringBuilder name = new StringBuilder(data.relationName())
+                .append('-').append(RemoveDuplicates.class.getName());
+        for (String option : new RemoveDuplicates().getOptions()) {
+            name.append(option.trim());
+        }
+        return name.toString();
+    }
+
+    private static int tableSize(int rows) {
+        int size = 16;
+        while (size < rows * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
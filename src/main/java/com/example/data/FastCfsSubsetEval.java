@@ -0,0 +1,130 @@
+package com.example.data;
+
+import java.io.File;
+import java.util.BitSet;
+
+import weka.attributeSelection.ASEvaluation;
+import weka.attributeSelection.CfsSubsetEval;
+import weka.attributeSelection.SubsetEvaluator;
+import weka.core.Capabilities;
+import weka.core.Instances;
+import weka.core.ThreadSafe;
+
+/*
+CFS subset evaluator dùng CorrelationMatrix tính sẵn (song song, cache theo fingerprint)
+Merit và locally predictive giống hệt CfsSubsetEval mặc định; evaluateSubset chỉ đọc ma trận
+nên gọi được từ nhiều thread cùng lúc (GreedyStepwise nhiều slot, ParallelBestFirst).
+Class numeric → dùng CfsSubsetEval gốc.
+ */
+public class FastCfsSubsetEval extends ASEvaluation implements SubsetEvaluator, ThreadSafe {
+    private static final long serialVersionUID = 1L;
+
+    private File cacheDirectory = CorrelationMatrix.DEFAULT_DIRECTORY;
+    private transient CorrelationMatrix matrix;
+    private CfsSubsetEval fallback;
+    private int classIndex;
+    private int numAttribs;
+
+    // null = chỉ cache trong bộ nhớ
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        return new CfsSubsetEval().getCapabilities();
+    }
+
+    @Override
+    public void buildEvaluator(Instances data) throws Exception {
+        getCapabilities().testWithFail(data);
+        classIndex = data.classIndex();
+        numAttribs = data.numAttributes();
+        if (data.classAttribute().isNumeric()) {
+            fallback = new CfsSubsetEval();
+            fallback.buildEvaluator(data);
+            return;
+        }
+        fallback = null;
+        matrix = CorrelationMatrix.forData(data, cacheDirectory);
+    }
+
+    @Override
+    public double evaluateSubset(BitSet subset) throws Exception {
+        if (fallback != null) {
+            return fallback.evaluateSubset(subset);
+        }
+        // std dev của mọi attribute = 1 với class nominal, cùng thứ tự cộng như CfsSubsetEval
+        double num = 0.0;
+        double denom = 0.0;
+        for (int i = 0; i < numAttribs; i++) {
+            if (i != classIndex && subset.get(i)) {
+                num += matrix.get(i, classIndex);
+            }
+        }
+        for (int i = 0; i < numAttribs; i++) {
+            if (i == classIndex || !subset.get(i)) {
+                continue;
+            }
+            denom += 1.0;
+            for (int j = 0; j < i; j++) {
+                if (subset.get(j)) {
+                    denom += 2.0 * matrix.get(i, j);
+                }
+            }
+        }
+        if (denom < 0.0) {
+            denom *= -1.0;
+        }
+        if (denom == 0.0) {
+            return 0.0;
+        }
+        double merit = num / Math.sqrt(denom);
+        return merit < 0.0 ? -merit : merit;
+    }
+
+    // Thêm các attribute "locally predictive" như CfsSubsetEval (threshold 0)
+    @Override
+    public int[] postProcess(int[] attributeSet) throws Exception {
+        if (fallback != null) {
+            return fallback.postProcess(attributeSet);
+        }
+        BitSet bestGroup = new BitSet(numAttribs);
+        for (int attribute : attributeSet) {
+            bestGroup.set(attribute);
+        }
+        BitSet tried = (BitSet) bestGroup.clone();
+        while (true) {
+            double best = -1.0;
+            int candidate = 0;
+            for (int i = 0; i < numAttribs; i++) {
+                if (!tried.get(i) && i != classIndex && matrix.get(i, classIndex) > best) {
+                    best = matrix.get(i, classIndex);
+                    candidate = i;
+                }
+            }
+            if (best == -1.0) {
+                break;
+            }
+            tried.set(candidate);
+            boolean redundant = false;
+            for (int i = 0; i < numAttribs; i++) {
+                if (bestGroup.get(i) && matrix.get(candidate, i) > best) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                bestGroup.set(candidate);
+            }
+        }
+        return bestGroup.stream().toArray();
+    }
+
+    @Override
+    public void clean() {
+        if (fallback != null) {
+            fallback.clean();
+        }
+    }
+}
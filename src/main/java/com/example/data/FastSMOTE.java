@@ -0,0 +1,717 @@
+package com.example.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.supervised.instance.SMOTE;
+
+/*
+SMOTE thay cho weka SMOTE filter (brute force O(minority² × attributes), một thread)
+- Khoảng cách giống weka: sqrt(Σ (Δ numeric)² + Σ VDM(nominal)) — là một metric, nên dùng được
+  VP-tree (ball tree theo khoảng cách tới vantage point) để tìm kNN chính xác
+- Neighbor giống weka: k gần nhất theo (khoảng cách, thứ tự trong minority)
+- Sinh mẫu song song theo instance; mỗi instance có RNG riêng seed từ (seed, index)
+  nên kết quả không phụ thuộc số thread (nhưng khác chuỗi random của weka SMOTE)
+- Output: mọi instance gốc theo thứ tự, rồi mẫu tổng hợp theo thứ tự instance minority
+Minority có missing value (khoảng cách NaN) → tìm kNN brute force song song, cùng ngữ nghĩa weka.
+Dataset có string attribute → dùng weka SMOTE.
+
+Minority rất lớn / nhiều chiều: applyApproximate tìm neighbor xấp xỉ bằng random-projection LSH
+(rừng cây chia theo siêu phẳng ngẫu nhiên, mỗi cây là một bảng hash, bucket = lá). Ứng viên là
+hợp các bucket chứa instance qua mọi bảng, xếp lại bằng khoảng cách chính xác. Nhiều bảng / bucket
+lớn hơn → recall cao hơn, chậm hơn. Recall@k so với kNN chính xác được đo trên một mẫu query.
+ */
+public class FastSMOTE {
+    private static final int LEAF_SIZE = 16;
+    private static final int PARALLEL_BUILD_SIZE = 4096;
+
+    private double percentage = 100.0;
+    private int nearestNeighbors = 5;
+    private int randomSeed = 1;
+    // Approximate: số bảng hash (cây random projection) và kích thước bucket tối đa
+    private int hashTables = 8;
+    private int bucketSize = 64;
+    // Số query dùng đo recall so với kNN chính xác (0 = không đo)
+    private int recallSampleSize = 1000;
+    // Recall riêng cho từng thread: một FastSMOTE có thể được các nhánh pipeline dùng đồng thời
+    private final ThreadLocal<Double> lastRecall = ThreadLocal.withInitial(() -> Double.NaN);
+
+    public void setPercentage(double percentage) {
+        this.percentage = percentage;
+    }
+
+    public void setNearestNeighbors(int nearestNeighbors) {
+        this.nearestNeighbors = nearestNeighbors;
+    }
+
+    public void setRandomSeed(int randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
+    /*
+    Núm recall / tốc độ của applyApproximate
+    @param hashTables Số bảng hash (vd 4 nhanh, 8 mặc định, 16+ recall cao)
+    @param bucketSize Số instance tối đa mỗi bucket (tự nâng lên ít nhất K + 1)
+     */
+    public void setApproximation(int hashTables, int bucketSize) {
+        this.hashTables = Math.max(1, hashTables);
+        this.bucketSize = bucketSize;
+    }
+
+    public void setRecallSampleSize(int recallSampleSize) {
+        this.recallSampleSize = recallSampleSize;
+    }
+
+    // Recall@k của lần applyApproximate gần nhất trên thread hiện tại (NaN nếu chưa đo)
+    public double getLastRecall() {
+        return lastRecall.get();
+    }
+
+    // Mô tả cấu hình ảnh hưởng tới output (key memo của PreprocessingDag)
+    public String describe(SmoteMode mode) {
+        String description = String.format("%s -P %s -K %d -S %d", mode, percentage,
+                nearestNeighbors, randomSeed);
+        return mode == SmoteMode.APPROXIMATE
+                ? description + " -tables " + hashTables + " -bucket " + bucketSize
+                : description;
+    }
+
+    /*
+    SMOTE theo mode đã chọn với cấu hình của object này, in thời gian chạy
+    @param data Dataset có class nominal
+    @param mode WEKA, FAST hoặc APPROXIMATE
+    @return Dataset đã oversample
+    @throws Exception Lỗi SMOTE
+     */
+    public Instances oversample(Instances data, SmoteMode mode) throws Exception {
+        long start = System.nanoTime();
+        Instances result;
+        if (mode == SmoteMode.FAST) {
+            result = apply(data);
+        } else if (mode == SmoteMode.APPROXIMATE) {
+            result = applyApproximate(data);
+        } else {
+            result = wekaSmote(data);
+        }
+        System.out.printf("  ℹ SMOTE (%s): %d → %d instances in %d ms%n", mode, data.numInstances(),
+                result.numInstances(), (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    /*
+    Oversample class thiểu số (class có ít instance nhất, khác 0) với kNN chính xác
+    @param data Dataset có class nominal
+    @return Dataset mới: instance gốc + mẫu tổng hợp (relation name giống output weka SMOTE)
+    @throws Exception Không đủ neighbor hoặc lỗi fallback
+     */
+    public Instances apply(Instances data) throws Exception {
+        return smote(data, false);
+    }
+
+    /*
+    Như apply nhưng neighbor tìm bằng random-projection LSH (setApproximation), in recall@k
+    @param data Dataset có class nominal
+    @return Dataset mới: instance gốc + mẫu tổng hợp
+    @throws Exception Không đủ neighbor hoặc lỗi fallback
+     */
+    public Instances applyApproximate(Instances data) throws Exception {
+        return smote(data, true);
+    }
+
+    private Instances smote(Instances data, boolean approximate) throws Exception {
+        if (data.checkForStringAttributes()) {
+            return wekaSmote(data);
+        }
+        int classIndex = data.classIndex();
+        int minorityClass = minorityClass(data);
+        long[] classCounts = DatasetProfile.of(data).getClassCounts();
+        int minorityCount = (int) classCounts[minorityClass];
+        int k = minorityCount <= nearestNeighbors ? minorityCount - 1 : nearestNeighbors;
+        if (k < 1) {
+            throw new Exception("Cannot use 0 neighbors!");
+        }
+
+        List<double[]> rows = new ArrayList<>(minorityCount);
+        for (int j = 0; j < data.numInstances(); j++) {
+            Instance instance = data.instance(j);
+            if ((int) instance.classValue() == minorityClass) {
+                rows.add(instance.toDoubleArray());
+            }
+        }
+        double[][] sample = rows.toArray(new double[0][]);
+        Metric metric = new Metric(data, valueDifferenceMatrices(data));
+
+        int[][] neighbors;
+        if (approximate) {
+            neighbors = approximateNeighbors(data, sample, metric, k);
+        } else if (hasMissing(sample, classIndex)) {
+            neighbors = bruteForceNeighbors(sample, metric, k);
+        } else {
+            neighbors = new VantagePointTree(sample, metric).allNeighbors(k);
+        }
+
+        // Instance được thêm một mẫu lẻ (phần thập phân của percentage), chọn bằng shuffle như weka
+        Random random = new Random(randomSeed);
+        int copies = (int) Math.floor(percentage / 100.0);
+        int extraCount = (int) ((percentage / 100.0 - copies) * sample.length);
+        Set<Integer> extra = new HashSet<>();
+        if (extraCount >= 1) {
+            List<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < sample.length; i++) {
+                indices.add(i);
+            }
+            Collections.shuffle(indices, random);
+            extra.addAll(indices.subList(0, extraCount));
+        }
+
+        double[][][] synthetic = new double[sample.length][][];
+        ResourceGovernor.parallelFor(sample.length, i -> {
+            Random rng = new Random(mix(randomSeed, i));
+            int count = copies + (extra.contains(i) ? 1 : 0);
+            synthetic[i] = new double[count][];
+            for (int c = 0; c < count; c++) {
+                synthetic[i][c] = interpolate(data, sample, i, neighbors[i], rng, minorityClass);
+            }
+        });
+
+        Instances result = new Instances(data, data.numInstances() + sample.length * (copies + 1));
+        result.setRelationName(filteredRelationName(data));
+        for (int j = 0; j < data.numInstances(); j++) {
+            result.add(data.instance(j));
+        }
+        for (double[][] generated : synthetic) {
+            for (double[] values : generated) {
+                result.add(new DenseInstance(1.0, values));
+            }
+        }
+        return result;
+    }
+
+    // Class có số instance nhỏ nhất (bỏ qua class rỗng), bằng nhau → class đầu tiên
+    private int minorityClass(Instances data) {
+        long[] counts = DatasetProfile.of(data).getClassCounts();
+        int minIndex = 0;
+        long min = Integer.MAX_VALUE;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0 && counts[i] < min) {
+                min = counts[i];
+                minIndex = i;
+            }
+        }
+        return minIndex;
+    }
+
+    // Numeric: nội suy với neighbor ngẫu nhiên; nominal: label xuất hiện nhiều nhất trong (instance + k neighbor)
+    private double[] interpolate(Instances data, double[][] sample, int i, int[] neighbors, Random rng,
+                                 int minorityClass) {
+        double[] instance = sample[i];
+        double[] values = new double[instance.length];
+        double[] neighbor = sample[neighbors[rng.nextInt(neighbors.length)]];
+        for (int a = 0; a < values.length; a++) {
+            if (a == data.classIndex()) {
+                continue;
+            }
+            Attribute attr = data.attribute(a);
+            if (attr.isNumeric()) {
+                double dif = neighbor[a] - instance[a];
+                double gap = rng.nextDouble();
+                values[a] = instance[a] + gap * dif;
+                continue;
+            }
+            int[] valueCounts = new int[attr.numValues()];
+            valueCounts[(int) instance[a]]++;
+            for (int n : neighbors) {
+                valueCounts[(int) sample[n][a]]++;
+            }
+            int maxIndex = 0;
+            for (int v = 1; v < valueCounts.length; v++) {
+                if (valueCounts[v] > valueCounts[maxIndex]) {
+                    maxIndex = v;
+                }
+            }
+            values[a] = maxIndex;
+        }
+        values[data.classIndex()] = minorityClass;
+        return values;
+    }
+
+    // VDM của từng nominal attribute trên toàn bộ dữ liệu (công thức weka SMOTE)
+    private double[][][] valueDifferenceMatrices(Instances data) {
+        int numClasses = data.numClasses();
+        double[][][] vdm = new double[data.numAttributes()][][];
+        ResourceGovernor.parallelFor(data.numAttributes(), a -> {
+            Attribute attr = data.attribute(a);
+            if (a == data.classIndex() || !attr.isNominal()) {
+                return;
+            }
+            int numValues = attr.numValues();
+            int[] valueCounts = new int[numValues];
+            int[][] valueCountsByClass = new int[numClasses][numValues];
+            for (int j = 0; j < data.numInstances(); j++) {
+                Instance instance = data.instance(j);
+                int value = (int) instance.value(a);
+                valueCounts[value]++;
+                valueCountsByClass[(int) instance.classValue()][value]++;
+            }
+            double[][] matrix = new double[numValues][numValues];
+            for (int v1 = 0; v1 < numValues; v1++) {
+                for (int v2 = 0; v2 < numValues; v2++) {
+                    double sum = 0.0;
+                    for (int c = 0; c < numClasses; c++) {
+                        double term1 = (double) valueCountsByClass[c][v1] / valueCounts[v1];
+                        double term2 = (double) valueCountsByClass[c][v2] / valueCounts[v2];
+                        sum += Math.abs(term1 - term2);
+                    }
+                    matrix[v1][v2] = sum;
+                }
+            }
+            vdm[a] = matrix;
+        });
+        return vdm;
+    }
+
+    private boolean hasMissing(double[][] sample, int classIndex) {
+        for (double[] row : sample) {
+            for (int a = 0; a < row.length; a++) {
+                if (a != classIndex && Double.isNaN(row[a])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Giống hệt vòng lặp weka: sort ổn định theo khoảng cách (NaN cuối), bỏ chính nó
+    private int[][] bruteForceNeighbors(double[][] sample, Metric metric, int k) {
+        int[][] neighbors = new int[sample.length][];
+        ResourceGovernor.parallelFor(sample.length, i -> neighbors[i] = exactNeighbors(sample, metric, i, k));
+        return neighbors;
+    }
+
+    private int[] exactNeighbors(double[][] sample, Metric metric, int i, int k) {
+        Neighbors best = new Neighbors(k);
+        for (int j = 0; j < sample.length; j++) {
+            if (j != i) {
+                best.offer(metric.distance(sample[i], sample[j]), j);
+            }
+        }
+        return best.toArray();
+    }
+
+    // LSH rồi đo recall@k trên tối đa recallSampleSize query ngẫu nhiên
+    private int[][] approximateNeighbors(Instances data, double[][] sample, Metric metric, int k) {
+        int buckets = Math.max(bucketSize, k + 1);
+        long start = System.nanoTime();
+        RandomProjectionForest forest = new RandomProjectionForest(embed(data, sample), hashTables, buckets,
+                randomSeed);
+        int[][] neighbors = forest.allNeighbors(sample, metric, k);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        lastRecall.set(Double.NaN);
+        int queries = Math.min(recallSampleSize, sample.length);
+        if (queries > 0) {
+            List<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < sample.length; i++) {
+                indices.add(i);
+            }
+            Collections.shuffle(indices, new Random(randomSeed));
+            int[] query = indices.subList(0, queries).stream().mapToInt(Integer::intValue).toArray();
+            long[] hits = new long[queries];
+            ResourceGovernor.parallelFor(queries, q -> {
+                // Neighbor xấp xỉ không xa hơn neighbor chính xác thứ k cũng tính là đúng (khoảng cách bằng nhau)
+                int[] exact = exactNeighbors(sample, metric, query[q], k);
+                double kthDistance = metric.distance(sample[query[q]], sample[exact[exact.length - 1]]);
+                long count = 0;
+                for (int n : neighbors[query[q]]) {
+                    if (Double.compare(metric.distance(sample[query[q]], sample[n]), kthDistance) <= 0) {
+                        count++;
+                    }
+                }
+                hits[q] = count;
+            });
+            long found = java.util.Arrays.stream(hits).sum();
+            double recall = (double) found / ((long) queries * k);
+            lastRecall.set(recall);
+            System.out.printf("  ℹ Approximate kNN (%d tables, bucket %d): %d ms, recall@%d = %.4f on %d queries%n",
+                    hashTables, buckets, elapsed, k, recall, queries);
+        } else {
+            System.out.printf("  ℹ Approximate kNN (%d tables, bucket %d): %d ms%n", hashTables, buckets, elapsed);
+        }
+        return neighbors;
+    }
+
+    /*
+    Vector cho random projection: numeric giữ nguyên (missing → 0), mỗi giá trị nominal thay bằng
+    phân phối class P(c | value) — VDM là khoảng cách L1 giữa các phân phối này
+     */
+    private double[][] embed(Instances data, double[][] sample) {
+        int numClasses = data.numClasses();
+        List<double[][]> profiles = new ArrayList<>();
+        List<Integer> columns = new ArrayList<>();
+        int dimensions = 0;
+        for (int a = 0; a < data.numAttributes(); a++) {
+            if (a == data.classIndex()) {
+                continue;
+            }
+            columns.add(a);
+            if (data.attribute(a).isNumeric()) {
+                profiles.add(null);
+                dimensions++;
+            } else {
+                profiles.add(classProfiles(data, a));
+                dimensions += numClasses;
+            }
+        }
+        double[][] vectors = new double[sample.length][dimensions];
+        ResourceGovernor.parallelFor(sample.length, i -> {
+            double[] vector = vectors[i];
+            int d = 0;
+            for (int c = 0; c < columns.size(); c++) {
+                double value = sample[i][columns.get(c)];
+                double[][] profile = profiles.get(c);
+                if (profile == null) {
+                    vector[d++] = Double.isNaN(value) ? 0.0 : value;
+                } else {
+                    double[] distribution = profile[Double.isNaN(value) ? 0 : (int) value];
+                    System.arraycopy(distribution, 0, vector, d, numClasses);
+                    d += numClasses;
+                }
+            }
+        });
+        return vectors;
+    }
+
+    // P(class | value) cho từng giá trị nominal (missing tính vào giá trị 0 như VDM)
+    private double[][] classProfiles(Instances data, int attIndex) {
+        int numValues = data.attribute(attIndex).numValues();
+        double[][] profile = new double[numValues][data.numClasses()];
+        int[] valueCounts = new int[numValues];
+        for (int j = 0; j < data.numInstances(); j++) {
+            Instance instance = data.instance(j);
+            int value = (int) instance.value(attIndex);
+            valueCounts[value]++;
+            profile[value][(int) instance.classValue()]++;
+        }
+        for (int v = 0; v < numValues; v++) {
+            for (int c = 0; c < profile[v].length && valueCounts[v] > 0; c++) {
+                profile[v][c] /= valueCounts[v];
+            }
+        }
+        return profile;
+    }
+
+    private Instances wekaSmote(Instances data) throws Exception {
+        SMOTE smote = configuredSmote();
+        smote.setInputFormat(data);
+        return Filter.useFilter(data, smote);
+    }
+
+    private SMOTE configuredSmote() {
+        SMOTE smote = new SMOTE();
+        smote.setPercentage(percentage);
+        smote.setNearestNeighbors(nearestNeighbors);
+        smote.setRandomSeed(randomSeed);
+        return smote;
+    }
+
+    // Relation name giống output của Filter.useFilter(data, smote) với cùng cấu hình
+    private String filteredRelationName(Instances data) {
+        StringBuilder name = new StringBuilder(data.relationName())
+                .append('-').append(SMOTE.class.getName());
+        for (String option : configuredSmote().getOptions()) {
+            name.append(option.trim());
+        }
+        return name.toString();
+    }
+
+    private static long mix(long seed, int index) {
+        long z = seed * 0x9E3779B97F4A7C15L + index;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // ===============================
+    // Khoảng cách + kNN
+    // ===============================
+    private static class Metric {
+        private final int[] numeric;
+        private final int[] nominal;
+        private final double[][][] vdm;
+        private final int numAttributes;
+
+        Metric(Instances data, double[][][] vdm) {
+            List<Integer> numericList = new ArrayList<>();
+            List<Integer> nominalList = new ArrayList<>();
+            for (int a = 0; a < data.numAttributes(); a++) {
+                if (a == data.classIndex()) {
+                    continue;
+                }
+                (data.attribute(a).isNumeric() ? numericList : nominalList).add(a);
+            }
+            this.numeric = numericList.stream().mapToInt(Integer::intValue).toArray();
+            this.nominal = nominalList.stream().mapToInt(Integer::intValue).toArray();
+            this.vdm = vdm;
+            this.numAttributes = data.numAttributes();
+        }
+
+        // Cộng theo đúng thứ tự attribute như weka để khoảng cách bằng nhau từng bit
+        double distance(double[] x, double[] y) {
+            double sum = 0.0;
+            int n = 0;
+            int m = 0;
+            for (int a = 0; a < numAttributes; a++) {
+                if (n < numeric.length && numeric[n] == a) {
+                    double diff = x[a] - y[a];
+                    sum += diff * diff;
+                    n++;
+                } else if (m < nominal.length && nominal[m] == a) {
+                    sum += vdm[a][(int) x[a]][(int) y[a]];
+                    m++;
+                }
+            }
+            return Math.pow(sum, 0.5);
+        }
+    }
+
+    // k neighbor tốt nhất theo (khoảng cách, index), max-heap
+    private static class Neighbors {
+        private final int k;
+        private final PriorityQueue<double[]> heap;
+
+        Neighbors(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<>(k + 1, (a, b) -> {
+                int compare = Double.compare(b[0], a[0]);
+                return compare != 0 ? compare : Double.compare(b[1], a[1]);
+            });
+        }
+
+        void offer(double distance, int index) {
+            if (heap.size() < k) {
+                heap.add(new double[]{distance, index});
+                return;
+            }
+            double[] worst = heap.peek();
+            int compare = Double.compare(distance, worst[0]);
+            if (compare < 0 || (compare == 0 && index < worst[1])) {
+                heap.poll();
+                heap.add(new double[]{distance, index});
+            }
+        }
+
+        // Khoảng cách lớn nhất hiện tại (vô cực khi chưa đủ k)
+        double radius() {
+            return heap.size() < k ? Double.POSITIVE_INFINITY : heap.peek()[0];
+        }
+
+        // Gần nhất trước
+        int[] toArray() {
+            double[][] entries = heap.toArray(new double[0][]);
+            java.util.Arrays.sort(entries, (a, b) -> {
+                int compare = Double.compare(a[0], b[0]);
+                return compare != 0 ? compare : Double.compare(a[1], b[1]);
+            });
+            int[] indices = new int[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                indices[i] = (int) entries[i][1];
+            }
+            return indices;
+        }
+    }
+
+    /*
+    Random-projection LSH: mỗi bảng là một cây; node chia theo hướng nối hai điểm ngẫu nhiên,
+    ngưỡng là median hình chiếu (bucket cân bằng), lá ≤ bucketSize là một bucket
+     */
+    private static class RandomProjectionForest {
+        // bucket[t][i] = đoạn [from, to) trong members[t] chứa instance i
+        private final int[][] members;
+        private final int[][] bucketFrom;
+        private final int[][] bucketTo;
+
+        RandomProjectionForest(double[][] vectors, int tables, int bucketSize, long seed) {
+            int n = vectors.length;
+            members = new int[tables][];
+            bucketFrom = new int[tables][n];
+            bucketTo = new int[tables][n];
+            ResourceGovernor.parallelFor(tables, t -> {
+                members[t] = IntStream.range(0, n).toArray();
+                split(vectors, t, 0, n, bucketSize, new Random(mix(seed, t)));
+            });
+        }
+
+        private void split(double[][] vectors, int t, int from, int to, int bucketSize, Random random) {
+            int[] order = members[t];
+            if (to - from <= bucketSize) {
+                for (int p = from; p < to; p++) {
+                    bucketFrom[t][order[p]] = from;
+                    bucketTo[t][order[p]] = to;
+                }
+                return;
+            }
+            double[] a = vectors[order[from + random.nextInt(to - from)]];
+            double[] b = vectors[order[from + random.nextInt(to - from)]];
+            int size = to - from;
+            double[] projections = new double[size];
+            Integer[] idx = new Integer[size];
+            for (int p = 0; p < size; p++) {
+                double[] v = vectors[order[from + p]];
+                double dot = 0.0;
+                for (int d = 0; d < v.length; d++) {
+                    dot += (b[d] - a[d]) * v[d];
+                }
+                projections[p] = dot;
+                idx[p] = p;
+            }
+            java.util.Arrays.sort(idx, (x, y) -> Double.compare(projections[x], projections[y]));
+            int[] reordered = new int[size];
+            for (int p = 0; p < size; p++) {
+                reordered[p] = order[from + idx[p]];
+            }
+            System.arraycopy(reordered, 0, order, from, size);
+            int middle = from + size / 2;
+            split(vectors, t, from, middle, bucketSize, random);
+            split(vectors, t, middle, to, bucketSize, random);
+        }
+
+        int[][] allNeighbors(double[][] sample, Metric metric, int k) {
+            int[][] neighbors = new int[sample.length][];
+            ResourceGovernor.parallelFor(sample.length, i -> {
+                Set<Integer> seen = new HashSet<>();
+                Neighbors best = new Neighbors(k);
+                for (int t = 0; t < members.length; t++) {
+                    for (int p = bucketFrom[t][i]; p < bucketTo[t][i]; p++) {
+                        int j = members[t][p];
+                        if (j != i && seen.add(j)) {
+                            best.offer(metric.distance(sample[i], sample[j]), j);
+                        }
+                    }
+                }
+                neighbors[i] = best.toArray();
+            });
+            return neighbors;
+        }
+    }
+
+    /*
+    VP-tree: mỗi node chọn một vantage point, chia phần còn lại theo median khoảng cách tới nó
+    (bên trong ≤ mu, bên ngoài ≥ mu); tìm kiếm bỏ nhánh nhờ bất đẳng thức tam giác
+     */
+    private static class VantagePointTree {
+        // Sai số làm tròn khi so bất đẳng thức tam giác → chỉ bỏ nhánh khi chắc chắn xa hơn
+        private static final double SLACK = 1e-9;
+
+        private final double[][] points;
+        private final Metric metric;
+        private final int[] order;
+        // node = đoạn [from, to) của order; order[from] là vantage point, mu lưu theo from
+        private final double[] mu;
+
+        VantagePointTree(double[][] points, Metric metric) {
+            this.points = points;
+            this.metric = metric;
+            this.order = IntStream.range(0, points.length).toArray();
+            this.mu = new double[points.length];
+            build(0, points.length);
+        }
+
+        // Node lớn: hai nhánh con build song song trong ngân sách governor (các node con tách rời nhau)
+        private void build(int from, int to) {
+            if (to - from <= LEAF_SIZE) {
+                return;
+            }
+            double[] vantage = points[order[from]];
+            int size = to - from - 1;
+            double[] distances = new double[size];
+            for (int i = 0; i < size; i++) {
+                distances[i] = metric.distance(vantage, points[order[from + 1 + i]]);
+            }
+            int median = size / 2;
+            double radius = selectAndPartition(distances, from + 1, median);
+            mu[from] = radius;
+            int split = from + 1 + median;
+            if (size >= PARALLEL_BUILD_SIZE) {
+                ResourceGovernor.parallelFor(2, side -> {
+                    if (side == 0) {
+                        build(from + 1, split);
+                    } else {
+                        build(split, to);
+                    }
+                });
+            } else {
+                build(from + 1, split);
+                build(split, to);
+            }
+        }
+
+        // Sắp lại order[offset ..] sao cho median phần tử đầu có khoảng cách ≤ radius ≤ phần còn lại
+        private double selectAndPartition(double[] distances, int offset, int median) {
+            int n = distances.length;
+            Integer[] idx = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                idx[i] = i;
+            }
+            java.util.Arrays.sort(idx, (a, b) -> Double.compare(distances[a], distances[b]));
+            int[] reordered = new int[n];
+            for (int i = 0; i < n; i++) {
+                reordered[i] = order[offset + idx[i]];
+            }
+            System.arraycopy(reordered, 0, order, offset, n);
+            return distances[idx[median]];
+        }
+
+        int[][] allNeighbors(int k) {
+            int[][] neighbors = new int[points.length][];
+            ResourceGovernor.parallelFor(points.length, i -> {
+                Neighbors best = new Neighbors(k);
+                search(0, points.length, i, best);
+                neighbors[i] = best.toArray();
+            });
+            return neighbors;
+        }
+
+        private void search(int from, int to, int query, Neighbors best) {
+            if (to - from <= LEAF_SIZE) {
+                for (int p = from; p < to; p++) {
+                    if (order[p] != query) {
+                        best.offer(metric.distance(points[query], points[order[p]]), order[p]);
+                    }
+                }
+                return;
+            }
+            int vantage = order[from];
+            double d = metric.distance(points[query], points[vantage]);
+            if (vantage != query) {
+                best.offer(d, vantage);
+            }
+            int median = (to - from - 1) / 2;
+            int split = from + 1 + median;
+            double radius = mu[from];
+            if (d < radius) {
+                search(from + 1, split, query, best);
+                if (d + best.radius() * (1 + SLACK) + SLACK >= radius) {
+                    search(split, to, query, best);
+                }
+            } else {
+                search(split, to, query, best);
+                if (d - best.radius() * (1 + SLACK) - SLACK <= radius) {
+                    search(from + 1, split, query, best);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.example.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/*
+DSL khai báo derived feature, dùng chung cho training (cả dataset) và scoring (từng dòng)
+Mỗi dòng một khai báo, '#' là comment:
+    alias bp = trestbps | bp | "Blood Pressure"        tên cột thay thế (thử lần lượt)
+    bp_category = bucket(bp, 120, 130, 140)             1 nếu x<120, 2 nếu x<130, ..., 4 nếu không
+    is_high_bp = threshold(bp, 140)                     0 nếu x<140, ngược lại 1
+    risk_score = age_risk_group*0.3 + bp_category*0.4   tổng có trọng số (trọng số tuỳ chọn)
+Tên cột có khoảng trắng đặt trong "...". Feature khai báo trước dùng được ở các dòng sau.
+Định nghĩa được parse một lần và cache theo nội dung text (đến khi clear()); khi bind với một header,
+mỗi feature thành một lambda trên mảng giá trị của dòng (FusedFeatureTransformer),
+kèm biểu thức AddExpression tương đương để header output giống hệt filter.
+ */
+public final class FeatureDsl {
+    private static final Map<String, Program> PARSED = new ConcurrentHashMap<>();
+    private static final Map<String, FusedFeatureTransformer> COMPILED = new ConcurrentHashMap<>();
+
+    private FeatureDsl() {
+    }
+
+    /*
+    Parse (có cache theo text)
+    @param text Nội dung định nghĩa
+    @return Program đã parse
+    @throws IllegalArgumentException Lỗi cú pháp (kèm số dòng)
+     */
+    public static Program parse(String text) {
+        return PARSED.computeIfAbsent(text, Program::parse);
+    }
+
+    /*
+    Compile định nghĩa cho một header cụ thể (có cache theo text + cấu trúc header)
+    @param text Nội dung định nghĩa
+    @param header Cấu trúc dataset đầu vào
+    @param warnings Nhận cảnh báo khi feature bị bỏ qua vì thiếu cột nguồn
+    @return Transformer thêm các feature theo thứ tự khai báo
+    @throws Exception Lỗi cấu hình
+     */
+    public static FusedFeatureTransformer compile(String text, Instances header, Consumer<String> warnings)
+            throws Exception {
+        String key = text + '\u0000' + headerSignature(header);
+        FusedFeatureTransformer cached = COMPILED.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        FusedFeatureTransformer transformer = parse(text).bind(header, warnings);
+        COMPILED.putIfAbsent(key, transformer);
+        return transformer;
+    }
+
+    // Xoá cache parse / compile (MiningController gọi cuối mỗi pipeline để không giữ lại qua các lần chạy)
+    public static void clear() {
+        PARSED.clear();
+        COMPILED.clear();
+    }
+
+    // Relation name + tên / kiểu / labels attribute + class index
+    private static String headerSignature(Instances header) {
+        StringBuilder sb = new StringBuilder(header.relationName()).append('|').append(header.classIndex());
+        for (int i = 0; i < header.numAttributes(); i++) {
+            Attribute attr = header.attribute(i);
+            sb.append('|').append(attr.name()).append(':').append(attr.type());
+            for (int v = 0; attr.isNominal() && v < attr.numValues(); v++) {
+                sb.append(',').append(attr.value(v));
+            }
+        }
+        return sb.toString();
+    }
+
+    // ===============================
+    // AST
+    // ===============================
+    private enum Kind { BUCKET, THRESHOLD, SUM }
+
+    // Số giữ nguyên text gốc để sinh biểu thức AddExpression giống hệt
+    private static class Number {
+        final String text;
+        final double value;
+
+        Number(String text) {
+            this.text = text;
+            this.value = Double.parseDouble(text);
+        }
+    }
+
+    private static class Term {
+        final String column;
+        final Number weight;
+        final boolean weightFirst;
+
+        Term(String column, Number weight, boolean weightFirst) {
+            this.column = column;
+            this.weight = weight;
+            this.weightFirst = weightFirst;
+        }
+    }
+
+    private static class Definition {
+        final String name;
+        final Kind kind;
+        final List<Term> terms;
+        final List<Number> thresholds;
+        final String source;
+
+        Definition(String name, Kind kind, List<Term> terms, List<Number> thresholds, String source) {
+            this.name = name;
+            this.kind = kind;
+            this.terms = terms;
+            this.thresholds = thresholds;
+            this.source = source;
+        }
+    }
+
+    /*
+    Định nghĩa đã parse (không phụ thuộc header)
+     */
+    public static class Program {
+        private final Map<String, List<String>> aliases = new LinkedHashMap<>();
+        private final List<Definition> definitions = new ArrayList<>();
+
+        private static Program parse(String text) {
+            Program program = new Program();
+            String[] lines = text.split("\r?\n");
+            for (int n = 0; n < lines.length; n++) {
+                String line = stripComment(lines[n]).trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    program.parseLine(line);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Feature definition line " + (n + 1) + ": "
+                            + e.getMessage() + " [" + line + "]", e);
+                }
+            }
+            return program;
+        }
+
+        public List<String> featureNames() {
+            List<String> names = new ArrayList<>();
+            for (Definition definition : definitions) {
+                names.add(definition.name);
+            }
+            return names;
+        }
+
+        // Dòng khai báo gốc của feature (dùng để log)
+        public String sourceOf(String featureName) {
+            for (Definition definition : definitions) {
+                if (definition.name.equals(featureName)) {
+                    return definition.source;
+                }
+            }
+            return null;
+        }
+
+        private void parseLine(String line) {
+            Lexer lexer = new Lexer(line);
+            if (lexer.peekWord("alias")) {
+                lexer.next();
+                String alias = lexer.name();
+                lexer.expect('=');
+                List<String> candidates = new ArrayList<>();
+                candidates.add(lexer.name());
+                while (lexer.accept('|')) {
+                    candidates.add(lexer.name());
+                }
+                lexer.end();
+                aliases.put(alias, candidates);
+                return;
+            }
+
+            String name = lexer.name();
+            lexer.expect('=');
+            if (lexer.peekWord("bucket") || lexer.peekWord("threshold")) {
+                Kind kind = lexer.next().equals("bucket") ? Kind.BUCKET : Kind.THRESHOLD;
+                lexer.expect('(');
+                String column = lexer.name();
+                List<Number> thresholds = new ArrayList<>();
+                while (lexer.accept(',')) {
+                    thresholds.add(lexer.number());
+                }
+                lexer.expect(')');
+                lexer.end();
+                if (thresholds.isEmpty() || (kind == Kind.THRESHOLD && thresholds.size() != 1)) {
+                    throw new IllegalArgumentException(kind == Kind.BUCKET
+                            ? "bucket needs at least one threshold" : "threshold needs exactly one value");
+                }
+                List<Term> terms = new ArrayList<>();
+                terms.add(new Term(column, null, false));
+                definitions.add(new Definition(name, kind, terms, thresholds, line));
+                return;
+            }
+
+            List<Term> terms = new ArrayList<>();
+            do {
+                if (lexer.peekNumber()) {
+                    Number weight = lexer.number();
+                    lexer.expect('*');
+                    terms.add(new Term(lexer.name(), weight, true));
+                } else {
+                    String column = lexer.name();
+                    terms.add(new Term(column, lexer.accept('*') ? lexer.number() : null, false));
+                }
+            } while (lexer.accept('+'));
+            lexer.end();
+            definitions.add(new Definition(name, Kind.SUM, terms, new ArrayList<>(), line));
+        }
+
+        /*
+        Bind với header: tìm index cột, sinh lambda + biểu thức AddExpression tương đương
+        Feature thiếu cột nguồn bị bỏ qua (các feature phụ thuộc nó cũng vậy)
+         */
+        FusedFeatureTransformer bind(Instances header, Consumer<String> warnings) throws Exception {
+            FusedFeatureTransformer.Builder builder = new FusedFeatureTransformer.Builder(header);
+            for (Definition definition : definitions) {
+                Instances format = builder.currentFormat();
+                int[] inputs = new int[definition.terms.size()];
+                String missing = null;
+                for (int t = 0; t < inputs.length; t++) {
+                    Attribute attr = resolve(format, definition.terms.get(t).column);
+                    if (attr == null) {
+                        missing = definition.terms.get(t).column;
+                        break;
+                    }
+                    inputs[t] = attr.index();
+                }
+                if (missing != null) {
+                    warnings.accept("Warning: column '" + missing + "' not found, skipping " + definition.name + "...");
+                    continue;
+                }
+                builder.add(definition.name, expression(definition, inputs), inputs, function(definition, inputs));
+            }
+            return builder.build();
+        }
+
+        private Attribute resolve(Instances format, String column) {
+            List<String> candidates = aliases.getOrDefault(column, List.of(column));
+            for (String candidate : candidates) {
+                Attribute direct = format.attribute(candidate);
+                if (direct != null) {
+                    return direct;
+                }
+            }
+            for (int i = 0; i < format.numAttributes(); i++) {
+                String normalized = normalize(format.attribute(i).name());
+                for (String candidate : candidates) {
+                    if (normalized.equals(normalize(candidate))) {
+                        return format.attribute(i);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    // ===============================
+    // Code generation
+    // ===============================
+    private static String expression(Definition definition, int[] inputs) {
+        String ref = "a" + (inputs[0] + 1);
+        switch (definition.kind) {
+            case BUCKET: {
+                StringBuilder sb = new StringBuilder();
+                List<Number> thresholds = definition.thresholds;
+                for (int i = 0; i < thresholds.size(); i++) {
+                    sb.append("ifelse(").append(ref).append('<').append(thresholds.get(i).text)
+                            .append(", ").append(i + 1).append(", ");
+                }
+                sb.append(thresholds.size() + 1);
+                sb.append(")".repeat(thresholds.size()));
+                return sb.toString();
+            }
+            case THRESHOLD:
+                return "ifelse(" + ref + "<" + definition.thresholds.get(0).text + ", 0, 1)";
+            default: {
+                StringBuilder sb = new StringBuilder("(");
+                for (int t = 0; t < inputs.length; t++) {
+                    Term term = definition.terms.get(t);
+                    if (t > 0) {
+                        sb.append(" + ");
+                    }
+                    String column = "a" + (inputs[t] + 1);
+                    if (term.weight == null) {
+                        sb.append(column);
+                    } else if (term.weightFirst) {
+                        sb.append(term.weight.text).append('*').append(column);
+                    } else {
+                        sb.append(column).append('*').append(term.weight.text);
+                    }
+                }
+                return sb.append(')').toString();
+            }
+        }
+    }
+
+    // Lambda chuyên biệt theo loại feature, chỉ đóng gói index + hằng số
+    private static FusedFeatureTransformer.RowFunction function(Definition definition, int[] inputs) {
+        int column = inputs[0];
+        switch (definition.kind) {
+            case BUCKET: {
+                double[] thresholds = definition.thresholds.stream().mapToDouble(n -> n.value).toArray();
+                return values -> {
+                    double value = values[column];
+                    for (int i = 0; i < thresholds.length; i++) {
+                        if (value < thresholds[i]) {
+                            return i + 1;
+                        }
+                    }
+                    return thresholds.length + 1;
+                };
+            }
+            case THRESHOLD: {
+                double threshold = definition.thresholds.get(0).value;
+                return values -> values[column] < threshold ? 0 : 1;
+            }
+            default: {
+                int[] columns = inputs.clone();
+                double[] weights = new double[columns.length];
+                boolean[] weighted = new boolean[columns.length];
+                boolean[] weightFirst = new boolean[columns.length];
+                for (int t = 0; t < columns.length; t++) {
+                    Term term = definition.terms.get(t);
+                    weighted[t] = term.weight != null;
+                    weights[t] = weighted[t] ? term.weight.value : 1.0;
+                    weightFirst[t] = term.weightFirst;
+                }
+                // Cộng trái sang phải, bắt đầu từ term đầu (không cộng với 0.0) như AddExpression
+                return values -> {
+                    double sum = term(values, columns, weights, weighted, weightFirst, 0);
+                    for (int t = 1; t < columns.length; t++) {
+                        sum += term(values, columns, weights, weighted, weightFirst, t);
+                    }
+                    return sum;
+                };
+            }
+        }
+    }
+
+    private static double term(double[] values, int[] columns, double[] weights, boolean[] weighted,
+                               boolean[] weightFirst, int t) {
+        if (!weighted[t]) {
+            return values[columns[t]];
+        }
+        return weightFirst[t] ? weights[t] * values[columns[t]] : values[columns[t]] * weights[t];
+    }
+
+    private static String stripComment(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '#' && !quoted) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
+    }
+
+    // ===============================
+    // Lexer cho một dòng
+    // ===============================
+    private static class Lexer {
+        private final String line;
+        private int pos;
+
+        Lexer(String line) {
+            this.line = line;
+        }
+
+        boolean peekWord(String word) {
+            skipSpaces();
+            int end = pos;
+            while (end < line.length() && isNameChar(line.charAt(end))) {
+                end++;
+            }
+            return line.substring(pos, end).equals(word) && !peekAfter(end, '=');
+        }
+
+        // "bucket = ..." là tên feature, không phải từ khoá
+        private boolean peekAfter(int from, char c) {
+            int i = from;
+            while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            return i < line.length() && line.charAt(i) == c;
+        }
+
+        String next() {
+            skipSpaces();
+            int start = pos;
+            while (pos < line.length() && isNameChar(line.charAt(pos))) {
+                pos++;
+            }
+            return line.substring(start, pos);
+        }
+
+        String name() {
+            skipSpaces();
+            if (pos < line.length() && line.charAt(pos) == '"') {
+                int end = line.indexOf('"', pos + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("unterminated quoted name");
+                }
+                String name = line.substring(pos + 1, end);
+                pos = end + 1;
+                return name;
+            }
+            String name = next();
+            if (name.isEmpty() || Character.isDigit(name.charAt(0))) {
+                throw new IllegalArgumentException("expected a column name at position " + (pos + 1));
+            }
+            return name;
+        }
+
+        boolean peekNumber() {
+            skipSpaces();
+            return pos < line.length() && (Character.isDigit(line.charAt(pos)) || line.charAt(pos) == '.'
+                    || line.charAt(pos) == '-');
+        }
+
+        Number number() {
+            skipSpaces();
+            int start = pos;
+            if (pos < line.length() && line.charAt(pos) == '-') {
+                pos++;
+            }
+            while (pos < line.length() && (Character.isDigit(line.charAt(pos)) || line.charAt(pos) == '.'
+                    || line.charAt(pos) == 'e' || line.charAt(pos) == 'E')) {
+                pos++;
+            }
+            String text = line.substring(start, pos);
+            try {
+                return new Number(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("expected a number at position " + (start + 1));
+            }
+        }
+
+        boolean accept(char c) {
+            skipSpaces();
+            if (pos < line.length() && line.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!accept(c)) {
+                throw new IllegalArgumentException("expected '" + c + "' at position " + (pos + 1));
+            }
+        }
+
+        void end() {
+            skipSpaces();
+            if (pos < line.length()) {
+                throw new IllegalArgumentException("unexpected '" + line.substring(pos) + "'");
+            }
+        }
+
+        private void skipSpaces() {
+            while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+    }
+}
@@ -1,19 +1,46 @@
 package com.example.data;
 
-import java.util.Locale;
-
 import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.AddExpression;
 
 /*
 Feature Engineering cho Heart Disease dataset
 Tạo các features mới dựa trên domain knowledge y tế
  */
 public class FeatureEngineer {
+    /*
+    Định nghĩa các feature (FeatureDsl), dùng chung cho training và scoring từng dòng
+    - age_risk_group: 1=Low(<40), 2=Medium(40-55), 3=High(56-70), 4=VeryHigh(>70)
+    - chol_category (AHA): 1=Normal(<200), 2=Borderline(200-239), 3=High(≥240)
+    - bp_category (AHA): 1=Normal(<120), 2=Elevated(120-129), 3=Stage1(130-139), 4=Stage2(≥140)
+    - risk_score: age 30% + cholesterol 30% + blood pressure 40%, ~1.0 (low) đến ~4.0 (very high)
+     */
+    public static final String DEFAULT_DEFINITIONS = String.join("\n",
+        "alias age = age | Age",
+        "alias chol = chol | cholesterol | cholesterol_level | \"Cholesterol Level\" | \"cholesterol level\"",
+        "alias bp = trestbps | bp | blood_pressure | \"Blood Pressure\" | \"blood pressure\"",
+        "age_risk_group = bucket(age, 40, 56, 71)",
+        "chol_category = bucket(chol, 200, 240)",
+        "bp_category = bucket(bp, 120, 130, 140)",
+        "risk_score = age_risk_group*0.3 + chol_category*0.3 + bp_category*0.4");
+
+    private String definitions = DEFAULT_DEFINITIONS;
+
+    /*
+    Thay bộ feature mặc định (cú pháp xem FeatureDsl)
+    @param definitions Nội dung định nghĩa
+    @throws IllegalArgumentException Lỗi cú pháp
+     */
+    public void setFeatureDefinitions(String definitions) {
+        FeatureDsl.parse(definitions);
+        this.definitions = definitions;
+    }
+
     /*
     Main method - Tạo tất cả features mới
+    Các feature được compile từ định nghĩa rồi tính trong MỘT lượt song song (FusedFeatureTransformer),
+    kết quả giống hệt chuỗi AddExpression cũ
     @param data Dataset gốc
     @return Dataset với các features mới
     @throws Exception Lỗi khi tạo features
@@ -21,162 +48,49 @@ public class FeatureEngineer {
     public Instances createFeatures(Instances data) throws Exception {
         System.out.println("\nFeature Engineering");
         int originalFeatures = data.numAttributes();
-        //Age Risk Group
-        data = createAgeRiskGroup(data);
-        //Cholesterol Category
-        data = createCholesterolCategory(data);
-        //Blood Pressure Category
-        data = createBPCategory(data);
-        //Risk Score (Composite feature)
-        data = createRiskScore(data);
+        FusedFeatureTransformer transformer = FeatureDsl.compile(definitions, data, System.err::println);
+        FeatureDsl.Program program = FeatureDsl.parse(definitions);
+        Instances output = transformer.getOutputHeader();
+        int number = 1;
+        for (int i = originalFeatures; i < output.numAttributes(); i++) {
+            String name = output.attribute(i).name();
+            System.out.println("\n" + number++ + ". Creating " + name + "...");
+            System.out.println(name + " created");
+            System.out.println("    " + program.sourceOf(name));
+        }
+
+        long start = System.nanoTime();
+        data = transformer.transform(data);
+        System.out.printf("Features computed in one pass (%.1f ms)%n", (System.nanoTime() - start) / 1_000_000.0);
         
         int newFeatures = data.numAttributes() - originalFeatures;
         System.out.println("Created " + newFeatures + " new features");
         System.out.println("Total attributes: " + originalFeatures + " → " + data.numAttributes());
         return data;
     }
-    
-    /**
-    -Tạo Age Risk Group
-    -Phân nhóm tuổi theo nguy cơ tim mạch:
-    -Low risk (<40)
-    -Medium risk (40-55)
-    -High risk (56-70)
-    -Very high risk (>70)
-     */
-    private Instances createAgeRiskGroup(Instances data) throws Exception {
-        System.out.println("\n1. Creating age_risk_group...");
-        //Tìm index của age attribute
-        Attribute ageAttr = findAttribute(data, "age", "Age");
-        if (ageAttr == null) {
-            System.err.println("Warning: 'age' attribute not found, skipping...");
-            return data;
-        }
-
-        int ageIdx = ageAttr.index();
-        //Tạo expression: ifelse nested
-        AddExpression filter = new AddExpression();
-        filter.setExpression(
-            "ifelse(a" + (ageIdx + 1) + "<40, 1, " +
-            "ifelse(a" + (ageIdx + 1) + "<56, 2, " +
-            "ifelse(a" + (ageIdx + 1) + "<71, 3, 4)))"
-        );
-        filter.setName("age_risk_group");
-        filter.setInputFormat(data);
-        data = Filter.useFilter(data, filter);
 
-        System.out.println("age_risk_group created");
-        System.out.println("1=Low(<40), 2=Medium(40-55), 3=High(56-70), 4=VeryHigh(>70)");
-        return data;
-    }
-    
     /*
-    -Tạo Cholesterol Category
-    -Phân loại theo American Heart Association (AHA):
-    -Normal (<200 mg/dL)
-    -Borderline High (200-239 mg/dL)
-    -High (≥240 mg/dL)
+    Cùng các feature như createFeatures nhưng không log (transformer được cache theo định nghĩa + header)
+    Transformer dùng lại được cho nhiều shard / từng dòng khi scoring
+    @param header Cấu trúc dataset đầu vào
+    @return Transformer (bỏ qua feature thiếu attribute nguồn)
+    @throws Exception Lỗi cấu hình feature
      */
-    private Instances createCholesterolCategory(Instances data) throws Exception {
-        System.out.println("\n2. Creating chol_category...");
-        //Tìm cholesterol attribute
-        Attribute cholAttr = findAttribute(data, 
-            "chol", "cholesterol", "cholesterol_level", "Cholesterol Level", "cholesterol level");
-        if (cholAttr == null) {
-            System.err.println("Warning: 'cholesterol' attribute not found, skipping...");
-            return data;
-        }
-        int cholIdx = cholAttr.index();
-        AddExpression filter = new AddExpression();
-        filter.setExpression(
-            "ifelse(a" + (cholIdx + 1) + "<200, 1, " +
-            "ifelse(a" + (cholIdx + 1) + "<240, 2, 3))"
-        );
-        filter.setName("chol_category");
-        filter.setInputFormat(data);
-        data = Filter.useFilter(data, filter);
-        
-        System.out.println("chol_category created");
-        System.out.println("1=Normal(<200), 2=Borderline(200-239), 3=High(≥240)");
-        
-        return data;
+    public FusedFeatureTransformer buildTransformer(Instances header) throws Exception {
+        return FeatureDsl.compile(definitions, header, message -> { });
     }
-    
-    /*
-    Tạo Blood Pressure Category
-    Phân loại theo AHA guidelines:
-    -Normal (<120 mmHg)
-    -Elevated (120-129 mmHg)
-    -Stage 1 Hypertension (130-139 mmHg)
-    -Stage 2 Hypertension (≥140 mmHg)
-     */
-    private Instances createBPCategory(Instances data) throws Exception {
-        System.out.println("\n3. Creating bp_category...");
-
-        //Tìm blood pressure attribute
-        Attribute bpAttr = findAttribute(data, 
-            "trestbps", "bp", "blood_pressure", "Blood Pressure", "blood pressure");
-        if (bpAttr == null) {
-            System.err.println("Warning: blood pressure attribute not found, skipping...");
-            return data;
-        }
-        int bpIdx = bpAttr.index();
-        AddExpression filter = new AddExpression();
-        filter.setExpression(
-            "ifelse(a" + (bpIdx + 1) + "<120, 1, " +
-            "ifelse(a" + (bpIdx + 1) + "<130, 2, " +
-            "ifelse(a" + (bpIdx + 1) + "<140, 3, 4)))"
-        );
-        filter.setName("bp_category");
-        filter.setInputFormat(data);
-        data = Filter.useFilter(data, filter);
 
-        System.out.println(" bp_category created");
-        System.out.println("  1=Normal(<120), 2=Elevated(120-129), 3=Stage1(130-139), 4=Stage2(≥140)");
-        
-        return data;
-    }
-    
     /*
-    Tạo Composite Risk Score
-    Kết hợp nhiều yếu tố nguy cơ với trọng số:
-    -Age risk: 30%
-    -Cholesterol: 30%
-    -Blood pressure: 40%
-    Score càng cao = nguy cơ càng lớn
+    Scoring một dòng: thêm các feature cho một instance mới (cùng định nghĩa lúc training)
+    @param row Instance gắn với dataset có cấu trúc đầu vào
+    @return Instance mới theo header đã có feature
+    @throws Exception Lỗi cấu hình feature
      */
-    private Instances createRiskScore(Instances data) throws Exception {
-        System.out.println("\n4. Creating composite risk_score...");
-        
-        //Tìm các features đã tạo
-        Attribute ageRiskAttr = data.attribute("age_risk_group");
-        Attribute cholCatAttr = data.attribute("chol_category");
-        Attribute bpCatAttr = data.attribute("bp_category");
-        
-        //Kiểm tra xem có đủ features không
-        if (ageRiskAttr == null || cholCatAttr == null || bpCatAttr == null) {
-            System.err.println("⚠️  Warning: Required features not found, skipping risk_score...");
-            return data;
+    public Instance transformRow(Instance row) throws Exception {
+        if (row.dataset() == null) {
+            throw new Exception("Instance has no dataset header");
         }
-    
-        int ageRiskIdx = ageRiskAttr.index();
-        int cholCatIdx = cholCatAttr.index();
-        int bpCatIdx = bpCatAttr.index();   
-        //Weighted composite score
-        AddExpression filter = new AddExpression();
-        filter.setExpression(
-            "(a" + (ageRiskIdx + 1) + "*0.3 + " +
-            "a" + (cholCatIdx + 1) + "*0.3 + " +
-            "a" + (bpCatIdx + 1) + "*0.4)"
-        );
-        filter.setName("risk_score");
-        filter.setInputFormat(data);
-        data = Filter.useFilter(data, filter);
-        System.out.println("risk_score created");
-        System.out.println("    Formula: (age_risk×0.3 + chol_cat×0.3 + bp_cat×0.4)");
-        System.out.println("    Range: ~1.0 (low risk) to ~4.0 (very high risk)");
-        
-        return data;
+        return buildTransformer(row.dataset()).transformRow(row);
     }
     
     public void printFeatureStats(Instances data) {
@@ -231,36 +145,4 @@ public class FeatureEngineer {
             e.printStackTrace();
         }
     }
-    
-    private Attribute findAttribute(Instances data, String... candidates) {
-        if (candidates == null) {
-            return null;
-        }
-        for (String candidate : candidates) {
-            if (candidate == null) {
-                continue;
-            }
-            Attribute direct = data.attribute(candidate);
-            if (direct != null) {
-                return direct;
-            }
-        }
-        for (int i = 0; i < data.numAttributes(); i++) {
-            Attribute attr = data.attribute(i);
-            if (attr == null) {
-                continue;
-            }
-            String normalized = normalize(attr.name());
-            for (String candidate : candidates) {
-                if (candidate != null && normalized.equals(normalize(candidate))) {
-                    return attr;
-                }
-            }
-        }
-        return null;
-    }
-
-    private String normalize(String name) {
-        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
-    }
-}
\ No newline at end of file
+}
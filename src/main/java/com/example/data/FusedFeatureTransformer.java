@@ -0,0 +1,169 @@
+package com.example.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.AddExpression;
+
+/*
+Thêm nhiều derived feature trong MỘT lượt qua dữ liệu, thay cho chuỗi AddExpression
+- Mỗi feature là một hàm trên mảng giá trị của dòng (đã gồm các feature thêm trước nó)
+- Header output (tên attribute, relation name) lấy từ chính chuỗi AddExpression cấu hình trên header
+- Ngữ nghĩa missing giống AddExpression: input nào missing → feature missing
+Song song theo khối dòng, mỗi dòng cấp phát đúng một mảng values.
+ */
+public class FusedFeatureTransformer {
+    private static final int ROWS_PER_BLOCK = 4096;
+
+    @FunctionalInterface
+    public interface RowFunction {
+        double apply(double[] values);
+    }
+
+    private static class Feature {
+        final int[] inputs;
+        final RowFunction function;
+
+        Feature(int[] inputs, RowFunction function) {
+            this.inputs = inputs;
+            this.function = function;
+        }
+    }
+
+    private final Instances inputHeader;
+    private final Instances outputHeader;
+    private final List<Feature> features;
+    private final List<AddExpression> filters;
+
+    private FusedFeatureTransformer(Instances inputHeader, Instances outputHeader,
+                                    List<Feature> features, List<AddExpression> filters) {
+        this.inputHeader = inputHeader;
+        this.outputHeader = outputHeader;
+        this.features = features;
+        this.filters = filters;
+    }
+
+    /*
+    Thêm các feature vào dataset
+    @param data Dataset có cùng cấu trúc với header lúc build
+    @return Dataset mới với các feature nối vào cuối, theo thứ tự đã khai báo
+    @throws Exception Lỗi khi fallback về AddExpression (dataset có string attribute)
+     */
+    public Instances transform(Instances data) throws Exception {
+        if (!data.equalHeaders(inputHeader)) {
+            throw new Exception("Dataset does not match transformer header: " + data.equalHeadersMsg(inputHeader));
+        }
+        if (data.checkForStringAttributes()) {
+            // String values cần copy qua bảng string của filter → giữ đường AddExpression gốc
+            for (AddExpression filter : filters) {
+                AddExpression copy = (AddExpression) AddExpression.makeCopy(filter);
+                copy.setInputFormat(data);
+                data = Filter.useFilter(data, copy);
+            }
+            return data;
+        }
+
+        int rows = data.numInstances();
+        Instance[] output = new Instance[rows];
+        int blocks = (rows + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+        Instances source = data;
+        ResourceGovernor.parallelFor(blocks, b -> {
+            for (int j = b * ROWS_PER_BLOCK; j < Math.min(rows, (b + 1) * ROWS_PER_BLOCK); j++) {
+                output[j] = transformRow(source.instance(j));
+            }
+        });
+
+        Instances result = new Instances(outputHeader, rows);
+        for (Instance instance : output) {
+            result.add(instance);
+        }
+        return result;
+    }
+
+    /*
+    Tính feature cho một dòng (dùng cho cả training lẫn scoring từng dòng)
+    @param instance Dòng theo header đầu vào
+    @return Instance mới theo header output
+     */
+    public Instance transformRow(Instance instance) {
+        int numInputs = instance.numAttributes();
+        double[] values = new double[outputHeader.numAttributes()];
+        for (int i = 0; i < numInputs; i++) {
+            values[i] = instance.value(i);
+        }
+        for (int f = 0; f < features.size(); f++) {
+            Feature feature = features.get(f);
+            double result = Utils.missingValue();
+            if (!anyMissing(values, feature.inputs)) {
+                result = feature.function.apply(values);
+            }
+            values[numInputs + f] = result;
+        }
+        Instance output = new DenseInstance(instance.weight(), values);
+        output.setDataset(outputHeader);
+        return output;
+    }
+
+    public Instances getOutputHeader() {
+        return new Instances(outputHeader, 0);
+    }
+
+    private boolean anyMissing(double[] values, int[] inputs) {
+        for (int input : inputs) {
+            if (Utils.isMissingValue(values[input])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+    Khai báo feature theo thứ tự; mỗi feature đi kèm AddExpression tương đương
+    (để dựng header output và làm đường fallback)
+     */
+    public static class Builder {
+        private final Instances inputHeader;
+        private Instances format;
+        private final List<Feature> features = new ArrayList<>();
+        private final List<AddExpression> filters = new ArrayList<>();
+
+        public Builder(Instances header) {
+            this.inputHeader = new Instances(header, 0);
+            this.format = new Instances(header, 0);
+        }
+
+        // Header sau các feature đã thêm (index của feature mới = numAttributes() trước khi add)
+        public Instances currentFormat() {
+            return format;
+        }
+
+        /*
+        @param name Tên attribute mới
+        @param expression Biểu thức AddExpression tương đương (a1, a2, ... 1-based)
+        @param inputs Index (0-based) các cột mà function đọc
+        @param function Hàm tính giá trị, chỉ gọi khi không input nào missing
+         */
+        public Builder add(String name, String expression, int[] inputs, RowFunction function) throws Exception {
+            AddExpression filter = new AddExpression();
+            filter.setExpression(expression);
+            filter.setName(name);
+            filter.setInputFormat(format);
+            format = filter.getOutputFormat();
+            filters.add(filter);
+            features.add(new Feature(inputs.clone(), function));
+            return this;
+        }
+
+        public FusedFeatureTransformer build() {
+            return new FusedFeatureTransformer(inputHeader, new Instances(format, 0),
+                    new ArrayList<>(features), new ArrayList<>(filters));
+        }
+    }
+}
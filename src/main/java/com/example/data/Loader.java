@@ -4,11 +4,13 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 
+import com.example.utils.DatasetWriter;
+
 import weka.core.Instances;
 import weka.core.converters.ArffLoader;
-import weka.core.converters.ArffSaver;
 import weka.core.converters.CSVLoader;
 import weka.core.converters.ConverterUtils.DataSource;
 import weka.filters.Filter;
@@ -16,6 +18,8 @@ import weka.filters.unsupervised.attribute.NumericToNominal;
 
 
 public class Loader {
+    private final DatasetCache cache = new DatasetCache();
+    private boolean useDatasetCache = true;
 
     /*
     Load dataset từ file path (CSV hoặc ARFF)
@@ -31,19 +35,24 @@ public class Loader {
         String resolved = resolvePath(filepath);
         System.out.println("File path: " + resolved);
 
-        Instances data = null;
-
-        if (resolved.toLowerCase().endsWith(".csv")) {
-            data = loadCSV(resolved);
-        } else if (resolved.toLowerCase().endsWith(".arff")) {
-            data = loadARFF(resolved);
-        } else {
-            DataSource source = new DataSource(resolved);
-            data = source.getDataSet();
-        }
+        Instances data = useDatasetCache ? loadFromCache(resolved) : null;
 
         if (data == null) {
-            throw new Exception("Failed to load dataset from: " + resolved);
+            if (resolved.toLowerCase().endsWith(".csv")) {
+                data = loadCSV(resolved);
+            } else if (resolved.toLowerCase().endsWith(".arff")) {
+                data = loadARFF(resolved);
+            } else {
+                DataSource source = new DataSource(resolved);
+                data = source.getDataSet();
+            }
+
+            if (data == null) {
+                throw new Exception("Failed to load dataset from: " + resolved);
+            }
+            if (useDatasetCache) {
+                storeInCache(resolved, data);
+            }
         }
 
         if (data.classIndex() == -1) {
@@ -59,10 +68,49 @@ public class Loader {
     }
 
     // ===============================
-    // ONLY CHANGE: đảm bảo CSVLoader đọc file đúng vị trí IntelliJ
+    // Binary columnar cache (sidecar .colcache cạnh file gốc)
+    // ===============================
+    private Instances loadFromCache(String filepath) {
+        long start = System.nanoTime();
+        Instances data = cache.load(new File(filepath));
+        if (data != null) {
+            System.out.printf("  Format: columnar cache (%s) loaded in %.1f ms%n",
+                    cache.sidecarFor(new File(filepath)).getName(),
+                    (System.nanoTime() - start) / 1_000_000.0);
+        }
+        return data;
+    }
+
+    private void storeInCache(String filepath, Instances data) {
+        try {
+            if (cache.store(new File(filepath), data)) {
+                System.out.println("  Columnar cache written: " + cache.sidecarFor(new File(filepath)).getName());
+            }
+        } catch (IOException e) {
+            System.out.println("  ℹ Could not write dataset cache: " + e.getMessage());
+        }
+    }
+
+    public void setUseDatasetCache(boolean useDatasetCache) {
+        this.useDatasetCache = useDatasetCache;
+    }
+
+    // ===============================
+    // CSV: memory-mapped parallel parser, fallback về CSVLoader
+    // khi layout không hỗ trợ (cột STRING, quote nhiều dòng, ...)
     // ===============================
     private Instances loadCSV(String filepath) throws Exception {
         System.out.println("  Format: CSV");
+        long start = System.nanoTime();
+        try {
+            Instances data = new ParallelCSVLoader().load(new File(filepath));
+            System.out.printf("  Parsed in %.1f ms (parallel mapped loader)%n",
+                    (System.nanoTime() - start) / 1_000_000.0);
+            return data;
+        } catch (IOException e) {
+            System.out.println("  ℹ Parallel CSV loader unavailable (" + e.getMessage()
+                    + "), falling back to CSVLoader");
+        }
         CSVLoader loader = new CSVLoader();
         loader.setSource(new File(filepath));
         return loader.getDataSet();
@@ -120,12 +168,13 @@ public class Loader {
         return data;
     }
 
+    private static final String[] POSSIBLE_CLASS_NAMES = {
+            "num", "target", "heart_disease", "diagnosis",
+            "disease", "condition", "class"
+    };
+
     private Instances setClassAttribute(Instances data) throws Exception {
-        String[] possibleClassNames = {
-                "num", "target", "heart_disease", "diagnosis",
-                "disease", "condition", "class"
-        };
-        for (String className : possibleClassNames) {
+        for (String className : POSSIBLE_CLASS_NAMES) {
             if (data.attribute(className) != null) {
                 int idx = data.attribute(className).index();
                 data.setClassIndex(idx);
@@ -145,6 +194,56 @@ public class Loader {
         return data;
     }
 
+    // Cùng quy tắc với setClassAttribute nhưng chỉ đọc header (dùng cho streaming)
+    private int classIndexOf(Instances header) {
+        for (String className : POSSIBLE_CLASS_NAMES) {
+            if (header.attribute(className) != null) {
+                return header.attribute(className).index();
+            }
+        }
+        return header.numAttributes() - 1;
+    }
+
+    /*
+    Load dataset lớn hơn heap theo kiểu streaming
+    Chỉ giữ reservoir sample phân tầng theo class + thống kê streaming của mọi attribute
+    @param filepath Đường dẫn file (.csv hoặc .arff)
+    @param reservoirSize Số instance tối đa giữ lại cho mỗi class
+    @return StreamingSummary, sample đã set class (nominal)
+    @throws Exception
+     */
+    public StreamingSummary loadDatasetStreaming(String filepath, int reservoirSize) throws Exception {
+        System.out.println("\n=== Streaming Dataset ===");
+        String resolved = resolvePath(filepath);
+        System.out.println("File path: " + resolved);
+        System.out.println("Reservoir size per class: " + reservoirSize);
+
+        StreamingSummary summary = new StreamingLoader(reservoirSize).load(resolved, this::classIndexOf);
+        Instances sample = summary.getSample();
+        if (sample.classAttribute().isNumeric()) {
+            sample = convertClassToNominal(sample);
+            summary = new StreamingSummary(sample, sample, summary.getTotalRows(), summary.getMissingClassRows(),
+                    statsOf(summary, sample.numAttributes()), summary.getClassCounts());
+        }
+
+        System.out.println("✓ Streamed successfully");
+        System.out.println("  Rows streamed: " + summary.getTotalRows());
+        if (summary.getMissingClassRows() > 0) {
+            System.out.println("  ℹ Rows without class (not sampled): " + summary.getMissingClassRows());
+        }
+        System.out.println("  Sample size: " + summary.getSample().numInstances());
+        System.out.println("  Class: " + summary.getSample().classAttribute().name());
+        return summary;
+    }
+
+    private RunningStats[] statsOf(StreamingSummary summary, int numAttributes) {
+        RunningStats[] stats = new RunningStats[numAttributes];
+        for (int i = 0; i < numAttributes; i++) {
+            stats[i] = summary.getAttributeStats(i);
+        }
+        return stats;
+    }
+
     private Instances convertClassToNominal(Instances data) throws Exception {
         System.out.println("  ℹ Converting class from numeric to nominal...");
         NumericToNominal filter = new NumericToNominal();
@@ -165,21 +264,18 @@ public class Loader {
             parentDir.mkdirs();
             System.out.println("  Created directory: " + parentDir.getPath());
         }
-        ArffSaver saver = new ArffSaver();
-        saver.setInstances(data);
-        saver.setFile(file);
-        saver.writeBatch();
+        DatasetWriter.WriteReport report = new DatasetWriter().write(data, file, DatasetWriter.Format.ARFF);
         System.out.println("  Instances: " + data.numInstances());
         System.out.println("  Attributes: " + data.numAttributes());
+        System.out.println("  Written: " + report);
     }
 
     public void saveCSV(Instances data, String filepath) throws Exception {
         System.out.println("\nSaving CSV");
         System.out.println("Path: " + filepath);
-        weka.core.converters.CSVSaver saver = new weka.core.converters.CSVSaver();
-        saver.setInstances(data);
-        saver.setFile(new File(filepath));
-        saver.writeBatch();
+        DatasetWriter.WriteReport report = new DatasetWriter()
+                .write(data, new File(filepath), DatasetWriter.Format.CSV);
+        System.out.println("  Written: " + report);
     }
 
     public Instances loadCSVDataset(String csvPath, String arffPath) throws Exception {
@@ -0,0 +1,220 @@
+package com.example.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.attributeSelection.ASEvaluation;
+import weka.attributeSelection.BestFirst;
+import weka.attributeSelection.SubsetEvaluator;
+import weka.attributeSelection.UnsupervisedSubsetEvaluator;
+import weka.core.Instances;
+import weka.core.ThreadSafe;
+
+/*
+BestFirst với các subset con của mỗi node được đánh giá đồng thời
+Mỗi lần mở rộng node: sinh mọi subset con (thêm / bớt một attribute), đánh giá song song những
+subset chưa có trong cache, rồi duyệt tuần tự đúng như BestFirst gốc → cùng kết quả, cùng thứ tự.
+Chỉ đánh giá đồng thời với evaluator đánh dấu ThreadSafe (vd FastCfsSubsetEval), còn lại chạy tuần tự.
+ */
+public class ParallelBestFirst extends BestFirst {
+    private static final long serialVersionUID = 1L;
+
+    // Subset ít hơn ngưỡng này thì đánh giá tuần tự (chi phí chia việc lớn hơn lợi ích)
+    private static final int PARALLEL_MIN_CANDIDATES = 16;
+
+    @Override
+    public int[] search(ASEvaluation ASEval, Instances data) throws Exception {
+        m_totalEvals = 0;
+        if (!(ASEval instanceof SubsetEvaluator)) {
+            throw new Exception(ASEval.getClass().getName() + " is not a Subset evaluator!");
+        }
+        if (ASEval instanceof UnsupervisedSubsetEvaluator) {
+            m_hasClass = false;
+        } else {
+            m_hasClass = true;
+            m_classIndex = data.classIndex();
+        }
+        SubsetEvaluator evaluator = (SubsetEvaluator) ASEval;
+        boolean concurrent = ASEval instanceof ThreadSafe;
+        m_numAttribs = data.numAttributes();
+
+        int bestSize = 0;
+        int searchDirection = m_searchDirection;
+        Map<String, Double> lookup = new HashMap<>(m_cacheSize * m_numAttribs);
+        int insertCount = 0;
+        LinkedList2 bfList = new LinkedList2(m_maxStale);
+        int stale = 0;
+        BitSet bestGroup = new BitSet(m_numAttribs);
+
+        m_startRange.setUpper(m_numAttribs - 1);
+        if (!getStartSet().equals("")) {
+            m_starting = m_startRange.getSelection();
+        }
+        if (m_starting != null) {
+            for (int start : m_starting) {
+                if (start != m_classIndex) {
+                    bestGroup.set(start);
+                }
+            }
+            bestSize = m_starting.length;
+            m_totalEvals++;
+        } else if (m_searchDirection == SELECTION_BACKWARD) {
+            setStartSet("1-last");
+            m_starting = new int[m_numAttribs];
+            int j = 0;
+            for (int i = 0; i < m_numAttribs; i++) {
+                if (i != m_classIndex) {
+                    bestGroup.set(i);
+                    m_starting[j++] = i;
+                }
+            }
+            bestSize = m_numAttribs - 1;
+            m_totalEvals++;
+        }
+
+        double bestMerit = evaluator.evaluateSubset(bestGroup);
+        bfList.addToList(new Object[]{bestGroup.clone()}, bestMerit);
+        lookup.put(bestGroup.toString(), bestMerit);
+
+        while (stale < m_maxStale) {
+            boolean added = false;
+            int done;
+            if (m_searchDirection == SELECTION_BIDIRECTIONAL) {
+                done = 2;
+                searchDirection = SELECTION_FORWARD;
+            } else {
+                done = 1;
+            }
+            if (bfList.size() == 0) {
+                break;
+            }
+            BitSet tempGroup = (BitSet) ((BitSet) bfList.getLinkAt(0).getData()[0]).clone();
+            bfList.removeLinkAt(0);
+            int size = tempGroup.cardinality();
+
+            do {
+                Map<String, Double> merits = evaluateChildren(evaluator, tempGroup, searchDirection, lookup, concurrent);
+                for (int i = 0; i < m_numAttribs; i++) {
+                    if (!isCandidate(tempGroup, i, searchDirection)) {
+                        continue;
+                    }
+                    if (searchDirection == SELECTION_FORWARD) {
+                        tempGroup.set(i);
+                        size++;
+                    } else {
+                        tempGroup.clear(i);
+                        size--;
+                    }
+                    BitSet child = (BitSet) tempGroup.clone();
+                    String key = child.toString();
+                    double merit;
+                    if (!lookup.containsKey(key)) {
+                        // Lookup có thể vừa bị reset (giống BestFirst) → subset chưa được đánh giá trước
+                        Double evaluated = merits.get(key);
+                        merit = evaluated != null ? evaluated : evaluator.evaluateSubset(child);
+                        m_totalEvals++;
+                        if (insertCount > m_cacheSize * m_numAttribs) {
+                            lookup = new HashMap<>(m_cacheSize * m_numAttribs);
+                            insertCount = 0;
+                        }
+                        lookup.put(key, merit);
+                        insertCount++;
+                    } else {
+                        merit = lookup.get(key);
+                    }
+                    bfList.addToList(new Object[]{child.clone()}, merit);
+
+                    boolean improved;
+                    if (searchDirection == SELECTION_FORWARD) {
+                        improved = merit - bestMerit > 1.0E-5;
+                    } else if (merit == bestMerit) {
+                        improved = size < bestSize;
+                    } else {
+                        improved = merit > bestMerit;
+                    }
+                    if (improved) {
+                        added = true;
+                        stale = 0;
+                        bestMerit = merit;
+                        bestSize = size;
+                        bestGroup = (BitSet) tempGroup.clone();
+                    }
+
+                    if (searchDirection == SELECTION_FORWARD) {
+                        tempGroup.clear(i);
+                        size--;
+                    } else {
+                        tempGroup.set(i);
+                        size++;
+                    }
+                }
+                if (done == 2) {
+                    searchDirection = SELECTION_BACKWARD;
+                }
+            } while (--done > 0);
+
+            if (!added) {
+                stale++;
+            }
+        }
+        m_bestMerit = bestMerit;
+        return attributeList(bestGroup);
+    }
+
+    private boolean isCandidate(BitSet group, int i, int searchDirection) {
+        if (i == m_classIndex) {
+            return false;
+        }
+        return searchDirection == SELECTION_FORWARD ? !group.get(i) : group.get(i);
+    }
+
+    // Merit của mọi subset con chưa có trong lookup (song song nếu evaluator cho phép)
+    private Map<String, Double> evaluateChildren(SubsetEvaluator evaluator, BitSet group, int searchDirection,
+                                                 Map<String, Double> lookup, boolean concurrent) throws Exception {
+        List<BitSet> children = new ArrayList<>();
+        for (int i = 0; i < m_numAttribs; i++) {
+            if (!isCandidate(group, i, searchDirection)) {
+                continue;
+            }
+            BitSet child = (BitSet) group.clone();
+            if (searchDirection == SELECTION_FORWARD) {
+                child.set(i);
+            } else {
+                child.clear(i);
+            }
+            if (!lookup.containsKey(child.toString())) {
+                children.add(child);
+            }
+        }
+
+        double[] merits = new double[children.size()];
+        if (concurrent && children.size() >= PARALLEL_MIN_CANDIDATES) {
+            Exception[] failure = new Exception[1];
+            ResourceGovernor.parallelFor(children.size(), c -> {
+                try {
+                    merits[c] = evaluator.evaluateSubset(children.get(c));
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        } else {
+            for (int c = 0; c < children.size(); c++) {
+                merits[c] = evaluator.evaluateSubset(children.get(c));
+            }
+        }
+
+        Map<String, Double> result = new HashMap<>();
+        for (int c = 0; c < children.size(); c++) {
+            result.put(children.get(c).toString(), merits[c]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,684 @@
+package com.example.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/*
+CSV loader đọc file bằng memory-mapping và parse song song
+- Chia file thành các chunk tại ranh giới dòng
+- Mỗi chunk parse thẳng vào cột primitive (double[] / int[] codes)
+- Kiểu numeric / nominal suy ra từ mẫu các dòng đầu
+Header tạo ra giống weka CSVLoader: relation = tên file, nominal values theo thứ tự
+xuất hiện đầu tiên, ô rỗng hoặc "?" là missing.
+Các layout CSVLoader xử lý khác (cột STRING, số dòng lệch, quote nhiều dòng)
+sẽ ném IOException để Loader fallback về CSVLoader.
+ */
+public class ParallelCSVLoader {
+    private static final int SAMPLE_ROWS = 1000;
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    private static final long MAX_CHUNK_BYTES = 256L << 20;
+    private static final int PROBE_BYTES = 8192;
+    // loadHeader: số label phân biệt tối đa mỗi cột nominal / chưa rõ kiểu trong một chunk và toàn file
+    private static final int MAX_HEADER_LABELS = 10_000;
+
+    private enum ColumnType { NUMERIC, NOMINAL, UNDETERMINED }
+
+    /*
+    Load CSV file thành Instances
+    @param file File CSV (dòng đầu là header)
+    @return Instances chưa set class index
+    @throws IOException Lỗi đọc file hoặc layout không hỗ trợ
+     */
+    public Instances load(File file) throws IOException {
+        return read(file, true);
+    }
+
+    /*
+    Chỉ quét file để dựng header đầy đủ (kiểu + toàn bộ nominal labels), không giữ dữ liệu
+    Dùng cho streaming ingestion nên số label bị giới hạn (MAX_HEADER_LABELS): cột chưa rõ kiểu toàn số
+    được chốt là numeric và thôi ghi label, cột text vượt giới hạn → IOException
+    @param file File CSV
+    @return Instances rỗng với header giống load()
+    @throws IOException Lỗi đọc file, layout không hỗ trợ hoặc cột có quá nhiều label
+     */
+    public Instances loadHeader(File file) throws IOException {
+        return read(file, false);
+    }
+
+    /*
+    Parse một dòng CSV theo header đã có
+    @param line Bytes của dòng (không gồm '\n')
+    @param header Header từ loadHeader()
+    @return Instance (chưa gắn dataset) hoặc null nếu dòng rỗng
+     */
+    Instance parseRow(ByteBuffer line, Instances header) throws IOException {
+        int numAttributes = header.numAttributes();
+        int end = trimLineEnd(line, 0, line.limit());
+        if (end == 0) {
+            return null;
+        }
+        double[] values = new double[numAttributes];
+        int[] field = new int[2];
+        int col = 0;
+        int p = 0;
+        while (p <= end) {
+            if (col >= numAttributes) {
+                throw new IOException("wrong number of values. Read more than "
+                        + numAttributes + ", expected " + numAttributes);
+            }
+            p = nextField(line, p, end, field);
+            Attribute attr = header.attribute(col);
+            if (isMissing(line, field[0], field[1])) {
+                values[col] = Utils.missingValue();
+            } else if (attr.isNumeric()) {
+                values[col] = parseNumber(line, field[0], field[1]);
+            } else {
+                String label = decode(line, field[0], field[1]);
+                int index = attr.indexOfValue(label);
+                if (index < 0) {
+                    throw new IOException("Read unknown nominal value " + label
+                            + " for attribute " + attr.name());
+                }
+                values[col] = index;
+            }
+            col++;
+        }
+        if (col != numAttributes) {
+            throw new IOException("wrong number of values. Read " + col + ", expected " + numAttributes);
+        }
+        return new DenseInstance(1.0, values);
+    }
+
+    private Instances read(File file, boolean storeValues) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                throw new IOException("No data in the file!");
+            }
+            long dataStart = nextLineStart(channel, 0, size);
+            List<String> names = splitHeader(readRange(channel, 0, dataStart));
+            if (names.isEmpty()) {
+                throw new IOException("Empty header row in " + file.getName());
+            }
+            if (dataStart >= size) {
+                throw new IOException("No data rows in " + file.getName() + "; CSVLoader types all columns as STRING");
+            }
+
+            long[] bounds = chunkBounds(channel, dataStart, size);
+            ColumnType[] types = inferTypes(channel, dataStart, Math.min(size, bounds[1]), names.size());
+
+            int numChunks = bounds.length - 1;
+            Chunk[] chunks = new Chunk[numChunks];
+            try {
+                ResourceGovernor.parallelFor(numChunks, c -> {
+                    try {
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                bounds[c], bounds[c + 1] - bounds[c]);
+                        chunks[c] = parseChunk(buffer, types, storeValues);
+                    } catch (IOException e) {
+                        throw new ChunkException(e);
+                    }
+                });
+            } catch (ChunkException e) {
+                throw (IOException) e.getCause();
+            }
+
+            String relationName = file.getName().replaceAll("\\.[cC][sS][vV]$", "");
+            return assemble(relationName, names, types, chunks, storeValues);
+        }
+    }
+
+    // ===============================
+    // Header + type inference
+    // ===============================
+
+    private List<String> splitHeader(ByteBuffer line) {
+        List<String> names = new ArrayList<>();
+        int[] field = new int[2];
+        int pos = 0;
+        int end = trimLineEnd(line, 0, line.limit());
+        while (pos <= end && end > 0) {
+            pos = nextField(line, pos, end, field);
+            if (field[1] > field[0]) {
+                names.add(decode(line, field[0], field[1]));
+            }
+        }
+        return names;
+    }
+
+    private ColumnType[] inferTypes(FileChannel channel, long from, long to, int numAttributes)
+            throws IOException {
+        ColumnType[] types = new ColumnType[numAttributes];
+        Arrays.fill(types, ColumnType.UNDETERMINED);
+        ByteBuffer bytes = readRange(channel, from, Math.min(to, from + MAX_CHUNK_BYTES));
+        int[] field = new int[2];
+        int pos = 0;
+        int rows = 0;
+        while (pos < bytes.limit() && rows < SAMPLE_ROWS) {
+            int lineEnd = indexOf(bytes, (byte) '\n', pos, bytes.limit());
+            int end = trimLineEnd(bytes, pos, lineEnd);
+            int col = 0;
+            int p = pos;
+            while (end > pos && p <= end && col < numAttributes) {
+                p = nextField(bytes, p, end, field);
+                if (types[col] == ColumnType.UNDETERMINED && !isMissing(bytes, field[0], field[1])) {
+                    types[col] = isNumber(bytes, field[0], field[1]) ? ColumnType.NUMERIC : ColumnType.NOMINAL;
+                }
+                col++;
+            }
+            if (end > pos) {
+                rows++;
+            }
+            pos = lineEnd + 1;
+        }
+        return types;
+    }
+
+    private long[] chunkBounds(FileChannel channel, long dataStart, long size) throws IOException {
+        long dataBytes = size - dataStart;
+        // Chunk theo ngân sách của governor đang chạy loader (ngoài governor: số core)
+        ResourceGovernor governor = ResourceGovernor.current();
+        int parallelism = governor == null ? Runtime.getRuntime().availableProcessors() : governor.getBudget();
+        long target = Math.max(MIN_CHUNK_BYTES, dataBytes / (parallelism * 4L) + 1);
+        target = Math.min(target, MAX_CHUNK_BYTES);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(dataStart);
+        long pos = dataStart;
+        while (size - pos > target) {
+            long next = nextLineStart(channel, pos + target, size);
+            if (next - pos > Integer.MAX_VALUE) {
+                throw new IOException("Line too long to map near offset " + pos);
+            }
+            bounds.add(next);
+            pos = next;
+        }
+        if (pos < size) {
+            bounds.add(size);
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_BYTES);
+        long pos = from;
+        while (pos < size) {
+            probe.clear();
+            int read = channel.read(probe, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    private ByteBuffer readRange(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (to - from));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // ===============================
+    // Chunk parsing
+    // ===============================
+
+    private Chunk parseChunk(MappedByteBuffer bytes, ColumnType[] types, boolean storeValues) throws IOException {
+        int length = bytes.limit();
+
+        int numAttributes = types.length;
+        Chunk chunk = new Chunk(numAttributes, storeValues ? Math.max(16, length / 64) : 1);
+        for (int i = 0; i < numAttributes; i++) {
+            if (types[i] == ColumnType.NUMERIC) {
+                chunk.numeric[i] = new double[chunk.capacity];
+            } else {
+                chunk.codes[i] = new int[chunk.capacity];
+                chunk.dictionaries[i] = new ByteDictionary();
+            }
+        }
+
+        int[] field = new int[2];
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = indexOf(bytes, (byte) '\n', pos, length);
+            int end = trimLineEnd(bytes, pos, lineEnd);
+            if (end > pos) {
+                int row = 0;
+                if (storeValues) {
+                    chunk.ensureCapacity();
+                    row = chunk.rows;
+                }
+                int col = 0;
+                int p = pos;
+                while (p <= end) {
+                    if (col >= numAttributes) {
+                        throw new IOException("wrong number of values. Read more than "
+                                + numAttributes + ", expected " + numAttributes);
+                    }
+                    p = nextField(bytes, p, end, field);
+                    boolean missing = isMissing(bytes, field[0], field[1]);
+                    if (types[col] == ColumnType.NUMERIC) {
+                        chunk.numeric[col][row] = missing
+                                ? Utils.missingValue()
+                                : parseNumber(bytes, field[0], field[1]);
+                    } else if (missing) {
+                        chunk.codes[col][row] = -1;
+                    } else if (chunk.numericOnly[col]) {
+                        if (!isNumber(bytes, field[0], field[1])) {
+                            throw new IOException("Column " + (col + 1)
+                                    + " mixes numbers and text; CSVLoader types it as STRING");
+                        }
+                    } else {
+                        chunk.codes[col][row] = chunk.dictionaries[col].codeOf(bytes, field[0], field[1]);
+                        if (!storeValues && chunk.dictionaries[col].values().size() > MAX_HEADER_LABELS) {
+                            capLabels(chunk, col, types[col]);
+                        }
+                    }
+                    col++;
+                }
+                if (col != numAttributes) {
+                    throw new IOException("wrong number of values. Read " + col
+                            + ", expected " + numAttributes);
+                }
+                chunk.rows++;
+            }
+            pos = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    /*
+    Dictionary của cột vượt MAX_HEADER_LABELS (chỉ khi loadHeader): cột chưa rõ kiểu mà mọi label là số
+    thì chốt numeric, chỉ giữ label đầu để assemble nhận ra cột số; còn lại là nominal quá lớn
+     */
+    private void capLabels(Chunk chunk, int col, ColumnType type) throws IOException {
+        List<String> labels = chunk.dictionaries[col].values();
+        if (type == ColumnType.UNDETERMINED && labels.stream().allMatch(this::isNumber)) {
+            byte[] key = labels.get(0).getBytes(StandardCharsets.UTF_8);
+            ByteDictionary first = new ByteDictionary();
+            first.codeOf(ByteBuffer.wrap(key), 0, key.length);
+            chunk.dictionaries[col] = first;
+            chunk.numericOnly[col] = true;
+            return;
+        }
+        throw new IOException("Column " + (col + 1) + " has more than " + MAX_HEADER_LABELS
+                + " distinct values; too many nominal labels for streaming ingestion");
+    }
+
+    /*
+    Đọc field bắt đầu tại pos, ghi [start, end) vào out
+    @return vị trí bắt đầu field kế tiếp (end + 1 nếu hết dòng)
+     */
+    private int nextField(ByteBuffer bytes, int pos, int end, int[] out) {
+        int p = pos;
+        while (p < end && (bytes.get(p) & 0xFF) < 32) {
+            p++;
+        }
+        if (p < end && (bytes.get(p) == '"' || bytes.get(p) == '\'')) {
+            byte quote = bytes.get(p);
+            int close = indexOf(bytes, quote, p + 1, end);
+            out[0] = p + 1;
+            out[1] = Math.min(close, end);
+            int comma = indexOf(bytes, (byte) ',', Math.min(close + 1, end), end);
+            return comma + 1;
+        }
+        int comma = indexOf(bytes, (byte) ',', p, end);
+        int stop = comma;
+        while (stop > p && (bytes.get(stop - 1) & 0xFF) < 32) {
+            stop--;
+        }
+        out[0] = p;
+        out[1] = stop;
+        return comma + 1;
+    }
+
+    private int trimLineEnd(ByteBuffer bytes, int from, int to) {
+        int end = to;
+        while (end > from && (bytes.get(end - 1) & 0xFF) < 32) {
+            end--;
+        }
+        return end;
+    }
+
+    private int indexOf(ByteBuffer bytes, byte target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes.get(i) == target) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private boolean isMissing(ByteBuffer bytes, int start, int end) {
+        if (end - start == 1 && bytes.get(start) == '?') {
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            if (bytes.get(i) != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isNumber(ByteBuffer bytes, int start, int end) {
+        try {
+            parseNumber(bytes, start, end);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /*
+    Parse số thực trực tiếp từ bytes
+    Fast path chính xác tuyệt đối khi mantissa < 2^53 và |exponent| <= 22,
+    ngoài ra dùng Double.parseDouble giống CSVLoader
+     */
+    private double parseNumber(ByteBuffer bytes, int start, int end) throws IOException {
+        int p = start;
+        boolean negative = false;
+        if (p < end && (bytes.get(p) == '-' || bytes.get(p) == '+')) {
+            negative = bytes.get(p) == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDot = false;
+        boolean simple = p < end;
+        for (; p < end; p++) {
+            byte b = bytes.get(p);
+            if (b >= '0' && b <= '9') {
+                if (mantissa == 0 && b == '0') {
+                    if (seenDot) {
+                        scale++;
+                    }
+                    continue;
+                }
+                if (++digits > 15) {
+                    simple = false;
+                    break;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenDot) {
+                    scale++;
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+        if (simple && scale <= 22 && !(seenDot && end - start == 1 + (negative ? 1 : 0))) {
+            double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+        String text = decode(bytes, start, end);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Was expecting a number but read " + text + " instead.");
+        }
+    }
+
+    private String decode(ByteBuffer bytes, int start, int end) {
+        byte[] raw = new byte[end - start];
+        bytes.get(start, raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // ===============================
+    // Assembly
+    // ===============================
+
+    private Instances assemble(String relationName, List<String> names, ColumnType[] types, Chunk[] chunks,
+                               boolean storeValues) throws IOException {
+        int numAttributes = names.size();
+        int[] offsets = new int[chunks.length + 1];
+        for (int c = 0; c < chunks.length; c++) {
+            offsets[c + 1] = offsets[c] + chunks[c].rows;
+        }
+        int numRows = offsets[chunks.length];
+
+        ArrayList<Attribute> attributes = new ArrayList<>(numAttributes);
+        // remap[col][chunk][localCode] -> global value (index hoặc số với cột UNDETERMINED)
+        double[][][] remap = new double[numAttributes][][];
+        for (int col = 0; col < numAttributes; col++) {
+            if (types[col] == ColumnType.NUMERIC) {
+                attributes.add(new Attribute(names.get(col)));
+                continue;
+            }
+            Map<String, Integer> global = new LinkedHashMap<>();
+            remap[col] = new double[chunks.length][];
+            boolean numericOnly = false;
+            for (int c = 0; c < chunks.length; c++) {
+                numericOnly |= chunks[c].numericOnly[col];
+                List<String> local = chunks[c].dictionaries[col].values();
+                double[] mapping = new double[local.size()];
+                for (int k = 0; k < local.size(); k++) {
+                    Integer index = global.putIfAbsent(local.get(k), global.size());
+                    mapping[k] = index == null ? global.size() - 1 : index;
+                }
+                remap[col][c] = mapping;
+            }
+            if (global.isEmpty()) {
+                throw new IOException("Column " + names.get(col) + " has no values; CSVLoader types it as STRING");
+            }
+            List<String> labels = new ArrayList<>(global.keySet());
+            if (numericOnly && !isNumber(labels.get(0))) {
+                throw new IOException("Column " + names.get(col) + " has more than " + MAX_HEADER_LABELS
+                        + " distinct values; too many nominal labels for streaming ingestion");
+            }
+            if (types[col] == ColumnType.UNDETERMINED && isNumber(labels.get(0))) {
+                double[] numbers = new double[labels.size()];
+                for (int k = 0; k < labels.size(); k++) {
+                    if (!isNumber(labels.get(k))) {
+                        throw new IOException("Column " + names.get(col) + " mixes numbers and text; CSVLoader types it as STRING");
+                    }
+                    numbers[k] = Double.parseDouble(labels.get(k));
+                }
+                for (double[] mapping : remap[col]) {
+                    for (int k = 0; k < mapping.length; k++) {
+                        mapping[k] = numbers[(int) mapping[k]];
+                    }
+                }
+                attributes.add(new Attribute(names.get(col)));
+            } else if (!storeValues && labels.size() > MAX_HEADER_LABELS) {
+                throw new IOException("Column " + names.get(col) + " has more than " + MAX_HEADER_LABELS
+                        + " distinct values; too many nominal labels for streaming ingestion");
+            } else {
+                attributes.add(new Attribute(names.get(col), labels));
+            }
+        }
+
+        if (!storeValues) {
+            return new Instances(relationName, attributes, 0);
+        }
+
+        Instance[] rows = new Instance[numRows];
+        ResourceGovernor.parallelFor(chunks.length, c -> {
+            Chunk chunk = chunks[c];
+            for (int r = 0; r < chunk.rows; r++) {
+                double[] values = new double[numAttributes];
+                for (int col = 0; col < numAttributes; col++) {
+                    if (chunk.numeric[col] != null) {
+                        values[col] = chunk.numeric[col][r];
+                    } else {
+                        int code = chunk.codes[col][r];
+                        values[col] = code < 0 ? Utils.missingValue() : remap[col][c][code];
+                    }
+                }
+                rows[offsets[c] + r] = new DenseInstance(1.0, values);
+            }
+        });
+
+        Instances data = new Instances(relationName, attributes, numRows);
+        for (Instance row : rows) {
+            data.add(row);
+        }
+        return data;
+    }
+
+    private boolean isNumber(String text) {
+        try {
+            Double.parseDouble(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // ===============================
+    // Helper structures
+    // ===============================
+
+    private static class Chunk {
+        final double[][] numeric;
+        final int[][] codes;
+        final ByteDictionary[] dictionaries;
+        // Cột chưa rõ kiểu đã chốt numeric vì vượt MAX_HEADER_LABELS (chỉ khi loadHeader)
+        final boolean[] numericOnly;
+        int capacity;
+        int rows;
+
+        Chunk(int numAttributes, int capacity) {
+            this.numeric = new double[numAttributes][];
+            this.codes = new int[numAttributes][];
+            this.dictionaries = new ByteDictionary[numAttributes];
+            this.numericOnly = new boolean[numAttributes];
+            this.capacity = capacity;
+        }
+
+        void ensureCapacity() {
+            if (rows < capacity) {
+                return;
+            }
+            capacity = capacity + (capacity >> 1) + 1;
+            for (int i = 0; i < numeric.length; i++) {
+                if (numeric[i] != null) {
+                    numeric[i] = Arrays.copyOf(numeric[i], capacity);
+                } else {
+                    codes[i] = Arrays.copyOf(codes[i], capacity);
+                }
+            }
+        }
+    }
+
+    /*
+    Dictionary open-addressing tra cứu trực tiếp trên bytes,
+    chỉ tạo String khi gặp giá trị mới
+     */
+    private static class ByteDictionary {
+        private byte[][] keys = new byte[16][];
+        private int[] ids = new int[16];
+        private final List<String> values = new ArrayList<>();
+
+        int codeOf(ByteBuffer bytes, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes.get(i);
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (matches(keys[slot], bytes, start, end)) {
+                    return ids[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            int id = values.size();
+            byte[] key = new byte[end - start];
+            bytes.get(start, key);
+            keys[slot] = key;
+            ids[slot] = id;
+            values.add(new String(key, StandardCharsets.UTF_8));
+            if (values.size() * 2 > keys.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        List<String> values() {
+            return values;
+        }
+
+        private boolean matches(byte[] key, ByteBuffer bytes, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != bytes.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            byte[][] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new byte[oldKeys.length * 2][];
+            ids = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                byte[] key = oldKeys[i];
+                if (key == null) {
+                    continue;
+                }
+                int hash = 1;
+                for (byte b : key) {
+                    hash = 31 * hash + b;
+                }
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(IOException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.IntStream;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.attributeSelection.GainRatioAttributeEval;
+import weka.core.ContingencyTables;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.supervised.attribute.Discretize;
+import weka.filters.unsupervised.attribute.Remove;
+
+/*
+Chọn feature bằng xếp hạng từng attribute (InfoGain / GainRatio), rẻ hơn CFS khi dataset rộng
+- Discretize MỘT lần (giống InfoGainAttributeEval / GainRatioAttributeEval)
+- Mỗi attribute là một task trong ResourceGovernor: bảng đếm InfoGain (cùng thứ tự cộng dồn và cách
+  chia missing như InfoGainAttributeEval.buildEvaluator, vốn đếm mọi attribute trong một vòng tuần tự)
+  + GainRatioAttributeEval.evaluateAttribute (vốn đã là một lượt riêng cho từng attribute)
+- Giữ top-k attribute, hoặc mọi attribute có điểm >= threshold khi không đặt k
+Điểm giống hệt gọi trực tiếp hai evaluator của weka trên dữ liệu gốc.
+ */
+public class RankingFeatureSelector {
+    public enum Measure { INFO_GAIN, GAIN_RATIO }
+
+    private Measure measure = Measure.INFO_GAIN;
+    private int topK = -1;
+    // "Consider removing features with score < 0.01"
+    private double threshold = 0.01;
+    private ResourceGovernor governor = new ResourceGovernor();
+
+    /*
+    Kết quả xếp hạng: điểm của cả hai measure (theo index attribute, NaN ở class)
+    và thứ tự attribute theo measure đang dùng
+     */
+    public static class Ranking {
+        private final double[] infoGain;
+        private final double[] gainRatio;
+        private final int[] order;
+
+        Ranking(double[] infoGain, double[] gainRatio, int[] order) {
+            this.infoGain = infoGain;
+            this.gainRatio = gainRatio;
+            this.order = order;
+        }
+
+        public double getInfoGain(int attIndex) {
+            return infoGain[attIndex];
+        }
+
+        public double getGainRatio(int attIndex) {
+            return gainRatio[attIndex];
+        }
+
+        // Index attribute (không gồm class), điểm giảm dần
+        public int[] getOrder() {
+            return order.clone();
+        }
+    }
+
+    public void setMeasure(Measure measure) {
+        this.measure = measure;
+    }
+
+    // k <= 0: dùng threshold
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    // Ngân sách CPU chung của pipeline (mặc định: governor riêng bằng số core)
+    public void setResourceGovernor(ResourceGovernor governor) {
+        this.governor = governor;
+    }
+
+    public Measure getMeasure() {
+        return measure;
+    }
+
+    // Cấu hình dạng chữ (key memo của PreprocessingDag)
+    public String describe() {
+        return topK > 0 ? measure + " top " + topK : measure + " >= " + threshold;
+    }
+
+    /*
+    Tính InfoGain và GainRatio cho mọi attribute
+    @param data Dataset có class nominal
+    @return Ranking
+    @throws Exception Lỗi discretize / evaluator
+     */
+    public Ranking rank(Instances data) throws Exception {
+        Discretize discretize = new Discretize();
+        discretize.setUseBetterEncoding(true);
+        discretize.setInputFormat(data);
+        Instances discretized = Filter.useFilter(data, discretize);
+
+        // GainRatio tự discretize lại nhưng dữ liệu đã toàn nominal → chỉ còn copy
+        GainRatioAttributeEval gainRatioEval = new GainRatioAttributeEval();
+        gainRatioEval.buildEvaluator(discretized);
+        double[] classTotals = classTotals(discretized);
+
+        int numAttributes = data.numAttributes();
+        int classIndex = data.classIndex();
+        double[] infoGain = new double[numAttributes];
+        double[] gainRatio = new double[numAttributes];
+        infoGain[classIndex] = Double.NaN;
+        gainRatio[classIndex] = Double.NaN;
+        List<Callable<Void>> tasks = new ArrayList<>(numAttributes);
+        for (int i = 0; i < numAttributes; i++) {
+            if (i == classIndex) {
+                continue;
+            }
+            int attIndex = i;
+            tasks.add(() -> {
+                double[][] counts = infoGainCounts(discretized, attIndex, classTotals);
+                infoGain[attIndex] = ContingencyTables.entropyOverColumns(counts)
+                        - ContingencyTables.entropyConditionedOnRows(counts);
+                gainRatio[attIndex] = gainRatioEval.evaluateAttribute(attIndex);
+                return null;
+            });
+        }
+        governor.invokeAll(tasks);
+
+        double[] scores = measure == Measure.INFO_GAIN ? infoGain : gainRatio;
+        int[] order = IntStream.range(0, numAttributes).filter(i -> i != classIndex).boxed()
+                .sorted((a, b) -> {
+                    int compare = Double.compare(scores[b], scores[a]);
+                    return compare != 0 ? compare : Integer.compare(a, b);
+                })
+                .mapToInt(Integer::intValue).toArray();
+        return new Ranking(infoGain, gainRatio, order);
+    }
+
+    // Tổng weight theo class (ô cuối = dòng thiếu class), như dòng khởi tạo của InfoGainAttributeEval
+    private static double[] classTotals(Instances data) {
+        double[] totals = new double[data.numClasses() + 1];
+        for (int j = 0; j < data.numInstances(); j++) {
+            Instance inst = data.instance(j);
+            totals[inst.classIsMissing() ? data.numClasses() : (int) inst.classValue()] += inst.weight();
+        }
+        return totals;
+    }
+
+    /*
+    Bảng đếm (value × class, hàng / cột cuối = missing) của một attribute, theo đúng trình tự của
+    InfoGainAttributeEval.buildEvaluator: hàng 0 bắt đầu bằng tổng class rồi trừ dần, missing được chia
+    lại theo tỉ lệ (missing merge)
+     */
+    private static double[][] infoGainCounts(Instances data, int attIndex, double[] classTotals) {
+        int numValues = data.attribute(attIndex).numValues();
+        int numClasses = data.numClasses();
+        double[][] counts = new double[numValues + 1][];
+        for (int v = 0; v <= numValues; v++) {
+            counts[v] = new double[numClasses + 1];
+        }
+        counts[0] = classTotals.clone();
+        for (int j = 0; j < data.numInstances(); j++) {
+            Instance inst = data.instance(j);
+            // Sparse: giá trị 0 không lưu thì để nguyên trong hàng 0 như weka
+            int pos = inst instanceof SparseInstance ? ((SparseInstance) inst).locateIndex(attIndex) : attIndex;
+            if (pos < 0 || inst.index(pos) != attIndex) {
+                continue;
+            }
+            boolean valueMissing = inst.isMissingSparse(pos);
+            int row = valueMissing ? numValues : (int) inst.valueSparse(pos);
+            int column = inst.classIsMissing() ? numClasses : (int) inst.classValue();
+            counts[row][column] += inst.weight();
+            counts[0][column] -= inst.weight();
+        }
+
+        double[] rowSums = new double[numValues];
+        double[] columnSums = new double[numClasses];
+        double sum = 0.0;
+        for (int i = 0; i < numValues; i++) {
+            for (int j = 0; j < numClasses; j++) {
+                rowSums[i] += counts[i][j];
+                columnSums[j] += counts[i][j];
+            }
+            sum += rowSums[i];
+        }
+        if (!Utils.gr(sum, 0.0)) {
+            return counts;
+        }
+        double[][] additions = new double[numValues][numClasses];
+        for (int i = 0; i < numValues; i++) {
+            for (int j = 0; j < numClasses; j++) {
+                additions[i][j] = rowSums[i] / sum * counts[numValues][j];
+            }
+        }
+        for (int j = 0; j < numClasses; j++) {
+            for (int i = 0; i < numValues; i++) {
+                additions[i][j] += columnSums[j] / sum * counts[i][numClasses];
+            }
+        }
+        for (int j = 0; j < numClasses; j++) {
+            for (int i = 0; i < numValues; i++) {
+                additions[i][j] += counts[i][j] / sum * counts[numValues][numClasses];
+            }
+        }
+        double[][] merged = new double[numValues][numClasses];
+        for (int i = 0; i < numValues; i++) {
+            for (int j = 0; j < numClasses; j++) {
+                merged[i][j] = counts[i][j] + additions[i][j];
+            }
+        }
+        return merged;
+    }
+
+    /*
+    Attribute được giữ (không gồm class), theo thứ tự index gốc
+    Luôn giữ ít nhất attribute có điểm cao nhất
+     */
+    public int[] selectedAttributes(Ranking ranking) {
+        int[] order = ranking.order;
+        double[] scores = measure == Measure.INFO_GAIN ? ranking.infoGain : ranking.gainRatio;
+        int count;
+        if (topK > 0) {
+            count = Math.min(topK, order.length);
+        } else {
+            count = 0;
+            while (count < order.length && scores[order[count]] >= threshold) {
+                count++;
+            }
+        }
+        int[] selected = Arrays.copyOf(order, Math.max(count, Math.min(1, order.length)));
+        Arrays.sort(selected);
+        return selected;
+    }
+
+    /*
+    Xếp hạng rồi bỏ các attribute không được chọn (class giữ nguyên)
+    @param data Dataset
+    @param ranking Kết quả rank(data)
+    @return Dataset chỉ còn attribute được chọn + class
+    @throws Exception Lỗi filter
+     */
+    public Instances reduce(Instances data, Ranking ranking) throws Exception {
+        int[] selected = selectedAttributes(ranking);
+        int[] keep = Arrays.copyOf(selected, selected.length + 1);
+        keep[selected.length] = data.classIndex();
+        Arrays.sort(keep);
+        Remove remove = new Remove();
+        remove.setAttributeIndicesArray(keep);
+        remove.setInvertSelection(true);
+        remove.setInputFormat(data);
+        return Filter.useFilter(data, remove);
+    }
+
+    // Bảng xếp hạng: cả hai measure cạnh nhau, đánh dấu attribute được giữ
+    public void printRanking(Instances data, Ranking ranking) {
+        int[] selected = selectedAttributes(ranking);
+        System.out.println(String.format("  %-4s %-25s %10s %10s", "Rank", "Attribute", "InfoGain", "GainRatio"));
+        System.out.println("  " + "-".repeat(53));
+        int[] order = ranking.order;
+        for (int r = 0; r < order.length; r++) {
+            int attIndex = order[r];
+            String name = data.attribute(attIndex).name();
+            System.out.printf("  %-4d %-25s %10.4f %10.4f%s%n", r + 1,
+                    name.length() <= 25 ? name : name.substring(0, 22) + "...",
+                    ranking.infoGain[attIndex], ranking.gainRatio[attIndex],
+                    Arrays.binarySearch(selected, attIndex) >= 0 ? "  ✓" : "");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import weka.core.Attribute;
+import weka.core.Utils;
+
+/*
+Thống kê cộng dồn cho một attribute, cập nhật từng giá trị một (streaming)
+- Numeric: count, min, max, mean, stdDev (weighted Welford giống weka Stats)
+- Nominal: số lần xuất hiện mỗi label
+Có thể merge hai RunningStats (Chan et al.) để tính song song theo shard.
+ */
+public class RunningStats {
+    private final boolean nominal;
+    private final long[] nominalCounts;
+    private long missingCount;
+    private long valueCount;
+    private double weightSum;
+    private double mean = Double.NaN;
+    private double m2;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public RunningStats(Attribute attribute) {
+        this.nominal = attribute.isNominal();
+        this.nominalCounts = nominal ? new long[attribute.numValues()] : null;
+    }
+
+    public void add(double value, double weight) {
+        if (Utils.isMissingValue(value)) {
+            missingCount++;
+            return;
+        }
+        valueCount++;
+        if (nominal) {
+            nominalCounts[(int) value]++;
+            return;
+        }
+        if (weight <= 0.0) {
+            return;
+        }
+        weightSum += weight;
+        if (Double.isNaN(mean)) {
+            mean = value;
+            min = value;
+            max = value;
+            return;
+        }
+        double delta = weight * (value - mean);
+        mean += delta / weightSum;
+        m2 += delta * (value - mean);
+        if (value < min) {
+            min = value;
+        } else if (value > max) {
+            max = value;
+        }
+    }
+
+    public void merge(RunningStats other) {
+        missingCount += other.missingCount;
+        valueCount += other.valueCount;
+        if (nominal) {
+            for (int i = 0; i < nominalCounts.length; i++) {
+                nominalCounts[i] += other.nominalCounts[i];
+            }
+            return;
+        }
+        if (other.weightSum == 0.0) {
+            return;
+        }
+        if (weightSum == 0.0) {
+            weightSum = other.weightSum;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        double total = weightSum + other.weightSum;
+        double delta = other.mean - mean;
+        mean += delta * other.weightSum / total;
+        m2 += other.m2 + delta * delta * weightSum * other.weightSum / total;
+        weightSum = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(missingCount);
+        out.writeLong(valueCount);
+        out.writeDouble(weightSum);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(nominal ? nominalCounts.length : -1);
+        for (int i = 0; nominal && i < nominalCounts.length; i++) {
+            out.writeLong(nominalCounts[i]);
+        }
+    }
+
+    /*
+    Đọc thống kê đã ghi bằng writeTo
+    @param attribute Attribute tương ứng (số label phải khớp)
+     */
+    public static RunningStats readFrom(DataInput in, Attribute attribute) throws IOException {
+        RunningStats stats = new RunningStats(attribute);
+        stats.missingCount = in.readLong();
+        stats.valueCount = in.readLong();
+        stats.weightSum = in.readDouble();
+        stats.mean = in.readDouble();
+        stats.m2 = in.readDouble();
+        stats.min = in.readDouble();
+        stats.max = in.readDouble();
+        int numLabels = in.readInt();
+        if (numLabels != (stats.nominal ? stats.nominalCounts.length : -1)) {
+            throw new IOException("Stored statistics do not match attribute " + attribute.name());
+        }
+        for (int i = 0; i < numLabels; i++) {
+            stats.nominalCounts[i] = in.readLong();
+        }
+        return stats;
+    }
+
+    public boolean isNominal() {
+        return nominal;
+    }
+
+    public long[] getNominalCounts() {
+        return nominalCounts == null ? null : nominalCounts.clone();
+    }
+
+    public long getMissingCount() {
+        return missingCount;
+    }
+
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getStdDev() {
+        if (weightSum <= 1.0) {
+            return Double.NaN;
+        }
+        return Math.sqrt(Math.max(0.0, m2 / (weightSum - 1.0)));
+    }
+}
@@ -0,0 +1,371 @@
+package com.example.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import com.example.utils.QuickSelect;
+import com.example.utils.ResourceGovernor;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/*
+Preprocessing theo kiểu map-reduce trên các shard dòng
+Mỗi round gồm 2 pha:
+  1. Thống kê: mỗi shard tính thống kê cục bộ song song → merge thành thống kê toàn cục
+  2. Áp dụng: biến đổi từng shard song song bằng thống kê toàn cục
+Các round: impute missing (median / mode) → dedupe → IQR outliers → feature engineering.
+Dữ liệu chỉ copy 2 lần (bản làm việc + output), các round giữa dùng mask dòng.
+Kết quả giống hệt Cleaner.cleanData → removeOutliers → FeatureEngineer.createFeatures
+(IQR ở chế độ mặc định) và không phụ thuộc số shard.
+ */
+public class ShardedPreprocessor {
+    private final int numShards;
+    private final FeatureEngineer engineer = new FeatureEngineer();
+    private final Deduplicator deduplicator = new Deduplicator();
+
+    public ShardedPreprocessor() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /*
+    @param numShards Số shard dòng (chỉ ảnh hưởng tốc độ, không ảnh hưởng kết quả)
+     */
+    public ShardedPreprocessor(int numShards) {
+        this.numShards = Math.max(1, numShards);
+    }
+
+    /*
+    Chạy toàn bộ preprocessing trên dataset
+    @param data Dataset gốc (không bị thay đổi)
+    @return Dataset đã impute, dedupe, lọc outlier và thêm features
+    @throws Exception Lỗi khi tạo features
+     */
+    public Instances process(Instances data) throws Exception {
+        System.out.println("\nSharded Preprocessing");
+        if (data.checkForStringAttributes()) {
+            throw new Exception("Sharded preprocessing does not support string attributes");
+        }
+        long start = System.nanoTime();
+        Instances work = new Instances(data);
+        int[] bounds = shardBounds(work.numInstances());
+        System.out.println("  Shards: " + (bounds.length - 1) + " over " + work.numInstances() + " rows");
+
+        // Round 1: impute missing values
+        long round = System.nanoTime();
+        ImputeStats imputeStats = mergeImputeStats(work, bounds);
+        long missing = imputeStats.missing;
+        if (missing > 0) {
+            double[] fillValues = imputeStats.fillValues(work);
+            forEachShard(bounds, (from, to) -> impute(work, from, to, fillValues));
+        }
+        logRound("Imputed " + missing + " missing values", round);
+
+        // Round 2: dedupe (fingerprint song song, giữ lần xuất hiện đầu tiên)
+        round = System.nanoTime();
+        boolean[] keep = deduplicator.firstOccurrences(work);
+        int duplicates = countRemoved(keep, 0, keep.length);
+        logRound("Removed " + duplicates + " duplicates", round);
+
+        // Round 3: IQR outliers, biên tính trên các dòng còn lại sau dedupe
+        round = System.nanoTime();
+        double[][] iqrBounds = mergeIqrBounds(work, keep, bounds);
+        forEachShard(bounds, (from, to) -> markOutliers(work, keep, from, to, iqrBounds));
+        int outliers = countRemoved(keep, 0, keep.length) - duplicates;
+        logRound("Removed " + outliers + " outliers", round);
+
+        // Round 4: features trên từng shard rồi nối theo thứ tự shard
+        round = System.nanoTime();
+        Instances header = new Instances(work, 0);
+        header.setRelationName(deduplicator.filteredRelationName(work));
+        FusedFeatureTransformer transformer = engineer.buildTransformer(header);
+        Instances[] parts = new Instances[bounds.length - 1];
+        forEachShardIndexed(bounds, s -> parts[s] = applyFeatures(work, keep, bounds[s], bounds[s + 1], transformer));
+        Instances result = concatenate(parts);
+        logRound("Added " + (result.numAttributes() - data.numAttributes()) + " features", round);
+
+        printClassCounts(result);
+        System.out.printf("  Sharded preprocessing: %d → %d instances in %.1f ms%n",
+                data.numInstances(), result.numInstances(), (System.nanoTime() - start) / 1_000_000.0);
+        return result;
+    }
+
+    // ===============================
+    // Round 1: median (numeric) / mode (nominal)
+    // ===============================
+    private static class ImputeStats {
+        final double[][] numericValues;
+        final int[] numericCounts;
+        final long[][] nominalCounts;
+        long missing;
+
+        ImputeStats(Instances data) {
+            numericValues = new double[data.numAttributes()][];
+            numericCounts = new int[data.numAttributes()];
+            nominalCounts = new long[data.numAttributes()][];
+            for (int i = 0; i < data.numAttributes(); i++) {
+                if (data.attribute(i).isNumeric()) {
+                    numericValues[i] = new double[16];
+                } else if (data.attribute(i).isNominal()) {
+                    nominalCounts[i] = new long[data.attribute(i).numValues()];
+                }
+            }
+        }
+
+        void add(Instance instance) {
+            for (int i = 0; i < numericValues.length; i++) {
+                double value = instance.value(i);
+                if (Utils.isMissingValue(value)) {
+                    missing++;
+                } else if (numericValues[i] != null) {
+                    if (numericCounts[i] == numericValues[i].length) {
+                        numericValues[i] = Arrays.copyOf(numericValues[i], numericCounts[i] * 2);
+                    }
+                    numericValues[i][numericCounts[i]++] = value;
+                } else if (nominalCounts[i] != null) {
+                    nominalCounts[i][(int) value]++;
+                }
+            }
+        }
+
+        // Merge theo thứ tự shard: nối giá trị numeric, cộng dồn số đếm nominal
+        void merge(ImputeStats other) {
+            missing += other.missing;
+            for (int i = 0; i < numericValues.length; i++) {
+                if (numericValues[i] != null) {
+                    int total = numericCounts[i] + other.numericCounts[i];
+                    if (total > numericValues[i].length) {
+                        numericValues[i] = Arrays.copyOf(numericValues[i], Math.max(total, numericValues[i].length * 2));
+                    }
+                    System.arraycopy(other.numericValues[i], 0, numericValues[i], numericCounts[i],
+                            other.numericCounts[i]);
+                    numericCounts[i] = total;
+                } else if (nominalCounts[i] != null) {
+                    for (int v = 0; v < nominalCounts[i].length; v++) {
+                        nominalCounts[i][v] += other.nominalCounts[i][v];
+                    }
+                }
+            }
+        }
+
+        // Cùng quy tắc với Cleaner: median (0.0 nếu không có giá trị), mode (hoà → label đầu)
+        double[] fillValues(Instances data) {
+            double[] fill = new double[numericValues.length];
+            ResourceGovernor.parallelFor(fill.length, i -> {
+                if (numericValues[i] != null) {
+                    fill[i] = numericCounts[i] == 0 ? 0.0 : QuickSelect.median(numericValues[i], numericCounts[i]);
+                } else if (nominalCounts[i] != null) {
+                    int mode = 0;
+                    for (int v = 1; v < nominalCounts[i].length; v++) {
+                        if (nominalCounts[i][v] > nominalCounts[i][mode]) {
+                            mode = v;
+                        }
+                    }
+                    fill[i] = mode;
+                } else {
+                    fill[i] = Double.NaN;
+                }
+            });
+            for (int i = 0; i < fill.length; i++) {
+                Attribute attr = data.attribute(i);
+                if (attr.isNumeric()) {
+                    System.out.println("  " + attr.name() + ": replaced with median = " + fill[i]);
+                } else if (attr.isNominal()) {
+                    System.out.println("  " + attr.name() + ": replaced with mode = " + attr.value((int) fill[i]));
+                }
+            }
+            return fill;
+        }
+    }
+
+    private ImputeStats mergeImputeStats(Instances work, int[] bounds) {
+        ImputeStats[] local = new ImputeStats[bounds.length - 1];
+        ResourceGovernor.parallelFor(local.length, s -> {
+            ImputeStats stats = new ImputeStats(work);
+            for (int j = bounds[s]; j < bounds[s + 1]; j++) {
+                stats.add(work.instance(j));
+            }
+            local[s] = stats;
+        });
+        ImputeStats merged = new ImputeStats(work);
+        for (ImputeStats stats : local) {
+            merged.merge(stats);
+        }
+        return merged;
+    }
+
+    private void impute(Instances work, int from, int to, double[] fillValues) {
+        for (int j = from; j < to; j++) {
+            Instance instance = work.instance(j);
+            double[] values = null;
+            for (int i = 0; i < fillValues.length; i++) {
+                if (!Double.isNaN(fillValues[i]) && instance.isMissing(i)) {
+                    if (values == null) {
+                        values = instance.toDoubleArray();
+                    }
+                    values[i] = fillValues[i];
+                }
+            }
+            if (values != null) {
+                Instance imputed = instance instanceof DenseInstance
+                        ? instance.copy(values)
+                        : new DenseInstance(instance.weight(), values);
+                work.set(j, imputed);
+            }
+        }
+    }
+
+    // ===============================
+    // Round 3: IQR, Q1 = values[n/4], Q3 = values[3n/4] (NaN đứng cuối), mọi attribute numeric trừ attribute cuối
+    // ===============================
+    private double[][] mergeIqrBounds(Instances work, boolean[] keep, int[] bounds) {
+        int[] numeric = IntStream.range(0, work.numAttributes() - 1)
+                .filter(i -> work.attribute(i).isNumeric())
+                .toArray();
+        int[] offsets = new int[bounds.length];
+        for (int s = 0; s < bounds.length - 1; s++) {
+            offsets[s + 1] = offsets[s] + (bounds[s + 1] - bounds[s]) - countRemoved(keep, bounds[s], bounds[s + 1]);
+        }
+        int n = offsets[offsets.length - 1];
+
+        // Mỗi shard ghi cột của mình vào đúng đoạn [offsets[s], offsets[s+1]) → merge không cần copy
+        double[][] columns = new double[numeric.length][n];
+        forEachShardIndexed(bounds, s -> {
+            int row = offsets[s];
+            for (int j = bounds[s]; j < bounds[s + 1]; j++) {
+                if (!keep[j]) {
+                    continue;
+                }
+                Instance instance = work.instance(j);
+                for (int a = 0; a < numeric.length; a++) {
+                    columns[a][row] = instance.value(numeric[a]);
+                }
+                row++;
+            }
+        });
+
+        double[][] result = new double[work.numAttributes()][];
+        ResourceGovernor.parallelFor(numeric.length, a -> {
+            if (n > 0) {
+                double q1 = QuickSelect.select(columns[a], n, n / 4);
+                double q3 = QuickSelect.select(columns[a], n, 3 * n / 4);
+                double iqr = q3 - q1;
+                result[numeric[a]] = new double[]{q1 - 1.5 * iqr, q3 + 1.5 * iqr};
+            }
+        });
+        return result;
+    }
+
+    private void markOutliers(Instances work, boolean[] keep, int from, int to, double[][] iqrBounds) {
+        for (int j = from; j < to; j++) {
+            if (!keep[j]) {
+                continue;
+            }
+            Instance instance = work.instance(j);
+            for (int i = 0; i < iqrBounds.length; i++) {
+                if (iqrBounds[i] == null) {
+                    continue;
+                }
+                double value = instance.value(i);
+                if (value < iqrBounds[i][0] || value > iqrBounds[i][1]) {
+                    keep[j] = false;
+                    break;
+                }
+            }
+        }
+    }
+
+    // ===============================
+    // Round 4: features (FusedFeatureTransformer dùng chung, tính từng dòng)
+    // ===============================
+    private Instances applyFeatures(Instances work, boolean[] keep, int from, int to,
+                                    FusedFeatureTransformer transformer) {
+        Instances shard = transformer.getOutputHeader();
+        for (int j = from; j < to; j++) {
+            if (keep[j]) {
+                shard.add(transformer.transformRow(work.instance(j)));
+            }
+        }
+        return shard;
+    }
+
+    private Instances concatenate(Instances[] parts) {
+        int total = 0;
+        for (Instances part : parts) {
+            total += part.numInstances();
+        }
+        Instances result = new Instances(parts[0], total);
+        for (Instances part : parts) {
+            for (int j = 0; j < part.numInstances(); j++) {
+                result.add(part.instance(j));
+            }
+        }
+        return result;
+    }
+
+    private void printClassCounts(Instances data) {
+        if (data.classIndex() < 0 || !data.classAttribute().isNominal()) {
+            return;
+        }
+        int[] bounds = shardBounds(data.numInstances());
+        long[][] local = new long[bounds.length - 1][data.classAttribute().numValues()];
+        forEachShardIndexed(bounds, s -> {
+            for (int j = bounds[s]; j < bounds[s + 1]; j++) {
+                double value = data.instance(j).classValue();
+                if (!Utils.isMissingValue(value)) {
+                    local[s][(int) value]++;
+                }
+            }
+        });
+        long[] counts = new long[data.classAttribute().numValues()];
+        for (long[] shardCounts : local) {
+            for (int v = 0; v < counts.length; v++) {
+                counts[v] += shardCounts[v];
+            }
+        }
+        System.out.println("  Class counts: " + Arrays.toString(counts));
+    }
+
+    // ===============================
+    // Shard helpers
+    // ===============================
+    @FunctionalInterface
+    private interface ShardTask {
+        void run(int from, int to);
+    }
+
+    private int[] shardBounds(int rows) {
+        int shards = Math.max(1, Math.min(numShards, rows));
+        int[] bounds = new int[shards + 1];
+        for (int s = 0; s <= shards; s++) {
+            bounds[s] = (int) ((long) rows * s / shards);
+        }
+        return bounds;
+    }
+
+    private void forEachShard(int[] bounds, ShardTask task) {
+        ResourceGovernor.parallelFor(bounds.length - 1, s -> task.run(bounds[s], bounds[s + 1]));
+    }
+
+    private void forEachShardIndexed(int[] bounds, IntConsumer task) {
+        ResourceGovernor.parallelFor(bounds.length - 1, task);
+    }
+
+    private int countRemoved(boolean[] keep, int from, int to) {
+        int removed = 0;
+        for (int j = from; j < to; j++) {
+            if (!keep[j]) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void logRound(String message, long start) {
+        System.out.printf("  %s (%.1f ms)%n", message, (System.nanoTime() - start) / 1_000_000.0);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.data;
+
+/*
+Cách oversample class thiểu số
+- WEKA: weka SMOTE filter (brute force, một thread) — mặc định, giữ nguyên chuỗi random của weka
+- FAST: FastSMOTE (VP-tree + song song), cùng neighbor, cùng số mẫu, khác chuỗi random
+- APPROXIMATE: FastSMOTE với neighbor xấp xỉ (random-projection LSH), cho minority rất lớn;
+  núm recall / tốc độ là FastSMOTE.setApproximation, recall@k được in sau mỗi lần chạy
+ */
+public enum SmoteMode {
+    WEKA,
+    FAST,
+    APPROXIMATE
+}
@@ -0,0 +1,236 @@
+package com.example.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ArffLoader;
+
+/*
+Out-of-core ingestion cho dataset lớn hơn heap
+- ARFF: đọc từng instance qua ArffLoader.getNextInstance (header khai báo sẵn kiểu)
+- CSV: pass 1 quét header (ParallelCSVLoader.loadHeader), pass 2 đọc từng dòng.
+  CSVLoader incremental chỉ suy nominal labels từ 100 dòng đầu nên không dùng được.
+Giữ reservoir sample cố định cho MỖI class và cập nhật thống kê streaming cho mọi attribute.
+Dòng thiếu class chỉ được đếm riêng (vẫn vào thống kê attribute), không vào reservoir hay phân bố class.
+Bộ nhớ chỉ phụ thuộc reservoirSize × số class (và số nominal label, giới hạn ở loadHeader),
+không phụ thuộc số dòng.
+ */
+public class StreamingLoader {
+    private final int reservoirSize;
+    private final long seed;
+
+    /*
+    @param reservoirSize Số instance tối đa giữ lại cho mỗi class
+     */
+    public StreamingLoader(int reservoirSize) {
+        this(reservoirSize, 1L);
+    }
+
+    public StreamingLoader(int reservoirSize, long seed) {
+        if (reservoirSize <= 0) {
+            throw new IllegalArgumentException("Reservoir size must be positive: " + reservoirSize);
+        }
+        this.reservoirSize = reservoirSize;
+        this.seed = seed;
+    }
+
+    /*
+    Stream toàn bộ file một lần
+    @param filepath File .arff hoặc .csv
+    @param classIndex Hàm chọn class index từ header
+    @return StreamingSummary (sample + thống kê toàn bộ)
+    @throws Exception Lỗi đọc file
+     */
+    public StreamingSummary load(String filepath, ToIntFunction<Instances> classIndex) throws Exception {
+        Accumulator accumulator;
+        if (filepath.toLowerCase().endsWith(".csv")) {
+            File file = new File(filepath);
+            ParallelCSVLoader csv = new ParallelCSVLoader();
+            Instances structure = csv.loadHeader(file);
+            structure.setClassIndex(classIndex.applyAsInt(structure));
+            accumulator = new Accumulator(structure);
+            streamCSV(file, csv, accumulator);
+        } else {
+            ArffLoader arff = new ArffLoader();
+            arff.setFile(new File(filepath));
+            Instances structure = arff.getStructure();
+            structure.setClassIndex(classIndex.applyAsInt(structure));
+            accumulator = new Accumulator(structure);
+            Instance instance;
+            while ((instance = arff.getNextInstance(structure)) != null) {
+                accumulator.add(instance);
+            }
+            arff.reset();
+        }
+        return accumulator.finish();
+    }
+
+    private void streamCSV(File file, ParallelCSVLoader csv, Accumulator accumulator) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] block = new byte[1 << 16];
+            byte[] line = new byte[1024];
+            int length = 0;
+            boolean header = true;
+            int read;
+            while ((read = in.read(block)) != -1) {
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (block[i] != '\n') {
+                        continue;
+                    }
+                    line = append(line, length, block, start, i);
+                    length += i - start;
+                    if (!header) {
+                        emitRow(csv, ByteBuffer.wrap(line, 0, length), accumulator);
+                    }
+                    header = false;
+                    length = 0;
+                    start = i + 1;
+                }
+                line = append(line, length, block, start, read);
+                length += read - start;
+            }
+            if (length > 0 && !header) {
+                emitRow(csv, ByteBuffer.wrap(line, 0, length), accumulator);
+            }
+        }
+    }
+
+    private byte[] append(byte[] line, int length, byte[] block, int from, int to) {
+        int needed = length + (to - from);
+        if (needed > line.length) {
+            line = Arrays.copyOf(line, Math.max(needed, line.length * 2));
+        }
+        System.arraycopy(block, from, line, length, to - from);
+        return line;
+    }
+
+    private void emitRow(ParallelCSVLoader csv, ByteBuffer line, Accumulator accumulator) throws IOException {
+        Instance instance = csv.parseRow(line, accumulator.structure);
+        if (instance != null) {
+            instance.setDataset(accumulator.structure);
+            accumulator.add(instance);
+        }
+    }
+
+    // Cập nhật thống kê + reservoir cho từng instance theo thứ tự stream
+    private class Accumulator {
+        final Instances structure;
+        final RunningStats[] stats;
+        final Map<Long, Reservoir> strata = new LinkedHashMap<>();
+        final Random random = new Random(seed);
+        long rows;
+        long missingClass;
+
+        Accumulator(Instances structure) {
+            this.structure = structure;
+            this.stats = new RunningStats[structure.numAttributes()];
+            for (int i = 0; i < stats.length; i++) {
+                stats[i] = new RunningStats(structure.attribute(i));
+            }
+        }
+
+        void add(Instance instance) {
+            for (int i = 0; i < stats.length; i++) {
+                stats[i].add(instance.value(i), instance.weight());
+            }
+            double classValue = instance.value(structure.classIndex());
+            if (Utils.isMissingValue(classValue)) {
+                missingClass++;
+            } else {
+                long key = Double.doubleToLongBits(classValue);
+                strata.computeIfAbsent(key, k -> new Reservoir(reservoirSize)).offer(instance, rows, random);
+            }
+            rows++;
+        }
+
+        StreamingSummary finish() {
+            return new StreamingSummary(structure, buildSample(structure, strata), rows, missingClass, stats,
+                    countClasses(structure, strata));
+        }
+    }
+
+    private Instances buildSample(Instances structure, Map<Long, Reservoir> strata) {
+        List<Slot> slots = new ArrayList<>();
+        for (Reservoir reservoir : strata.values()) {
+            for (int i = 0; i < reservoir.filled; i++) {
+                slots.add(new Slot(reservoir.arrival[i], reservoir.items[i]));
+            }
+        }
+        slots.sort(Comparator.comparingLong(slot -> slot.arrival));
+        Instances sample = new Instances(structure, slots.size());
+        for (Slot slot : slots) {
+            sample.add(slot.instance);
+        }
+        return sample;
+    }
+
+    private Map<String, Long> countClasses(Instances structure, Map<Long, Reservoir> strata) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (structure.classAttribute().isNominal()) {
+            for (int v = 0; v < structure.classAttribute().numValues(); v++) {
+                counts.put(structure.classAttribute().value(v), 0L);
+            }
+        }
+        for (Map.Entry<Long, Reservoir> entry : strata.entrySet()) {
+            double value = Double.longBitsToDouble(entry.getKey());
+            String label = structure.classAttribute().isNominal()
+                    ? structure.classAttribute().value((int) value)
+                    : Utils.doubleToString(value, 6);
+            counts.put(label, entry.getValue().seen);
+        }
+        return counts;
+    }
+
+    // Reservoir sampling (Algorithm R) cho một class
+    private static class Reservoir {
+        final Instance[] items;
+        final long[] arrival;
+        int filled;
+        long seen;
+
+        Reservoir(int size) {
+            this.items = new Instance[size];
+            this.arrival = new long[size];
+        }
+
+        void offer(Instance instance, long position, Random random) {
+            seen++;
+            if (filled < items.length) {
+                items[filled] = instance;
+                arrival[filled] = position;
+                filled++;
+                return;
+            }
+            long slot = (long) (random.nextDouble() * seen);
+            if (slot < items.length) {
+                items[(int) slot] = instance;
+                arrival[(int) slot] = position;
+            }
+        }
+    }
+
+    private static class Slot {
+        final long arrival;
+        final Instance instance;
+
+        Slot(long arrival, Instance instance) {
+            this.arrival = arrival;
+            this.instance = instance;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import weka.core.Instances;
+
+/*
+Kết quả của StreamingLoader
+- header: cấu trúc dataset (class index đã set)
+- sample: reservoir sample phân tầng theo class, giữ thứ tự xuất hiện gốc
+- attributeStats / classCounts: thống kê trên TOÀN BỘ stream, không chỉ sample
+- missingClassRows: số dòng thiếu class (có trong totalRows và attributeStats, không có trong
+  classCounts / sample)
+ */
+public class StreamingSummary {
+    private final Instances header;
+    private final Instances sample;
+    private final long totalRows;
+    private final long missingClassRows;
+    private final RunningStats[] attributeStats;
+    private final Map<String, Long> classCounts;
+
+    public StreamingSummary(Instances header, Instances sample, long totalRows, long missingClassRows,
+                            RunningStats[] attributeStats, Map<String, Long> classCounts) {
+        this.header = header;
+        this.sample = sample;
+        this.totalRows = totalRows;
+        this.missingClassRows = missingClassRows;
+        this.attributeStats = attributeStats;
+        this.classCounts = new LinkedHashMap<>(classCounts);
+    }
+
+    public Instances getHeader() {
+        return new Instances(header, 0);
+    }
+
+    public Instances getSample() {
+        return sample;
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public long getMissingClassRows() {
+        return missingClassRows;
+    }
+
+    public RunningStats getAttributeStats(int index) {
+        return attributeStats[index];
+    }
+
+    public Map<String, Long> getClassCounts() {
+        return new LinkedHashMap<>(classCounts);
+    }
+}
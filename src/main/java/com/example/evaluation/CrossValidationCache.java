@@ -0,0 +1,57 @@
+package com.example.evaluation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.utils.DatasetFingerprint;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+/*
+Kết quả cross-validation đã tính, key = (cấu hình classifier, fingerprint dữ liệu, số fold, seed)
+Tuning của J48 / RF lưu CV của ô grid tốt nhất; ModelEvaluator dùng lại khi model cuối cùng có cùng
+cấu hình trên cùng dữ liệu với cùng cách chia fold → không cross-validate lại.
+Chỉ giữ ô tốt nhất, clear() sau pipeline.
+ */
+public class CrossValidationCache {
+    private final Map<String, StreamingMetrics> entries = new ConcurrentHashMap<>();
+
+    /*
+    Lưu CV của một cấu hình
+    @param classifier Classifier (chỉ dùng cấu hình, đã train hay chưa đều được)
+    @param data Dataset đã cross-validate
+    @param numFolds Số fold
+    @param seed Seed của Random chia fold
+    @param eval Kết quả CV
+     */
+    public void put(Classifier classifier, Instances data, int numFolds, long seed, StreamingMetrics eval) {
+        entries.put(key(classifier, data, numFolds, seed), eval);
+    }
+
+    // CV đã lưu hoặc null
+    public StreamingMetrics get(Classifier classifier, Instances data, int numFolds, long seed) {
+        return entries.get(key(classifier, data, numFolds, seed));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /*
+    Cấu hình classifier dạng command line, bỏ -num-slots (governor đổi số slot khi build, không ảnh hưởng model)
+    @param classifier Classifier
+    @return Chuỗi mô tả cấu hình
+     */
+    public static String describe(Classifier classifier) {
+        String options = classifier instanceof OptionHandler
+                ? Utils.joinOptions(((OptionHandler) classifier).getOptions()) : "";
+        return (classifier.getClass().getName() + " " + options).replaceAll("-num-slots \\d+ ?", "").trim();
+    }
+
+    private static String key(Classifier classifier, Instances data, int numFolds, long seed) {
+        return String.format("%s|%016x|%d|%d", describe(classifier), DatasetFingerprint.of(data), numFolds, seed);
+    }
+}
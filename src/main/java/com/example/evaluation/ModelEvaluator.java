@@ -8,11 +8,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import com.example.data.DatasetProfile;
+import com.example.utils.ResourceGovernor;
+
+import weka.core.Attribute;
 import weka.core.Utils;
 import weka.gui.visualize.*;
 import javax.swing.*;
 import weka.classifiers.Classifier;
-import weka.classifiers.Evaluation;
 import weka.classifiers.evaluation.ThresholdCurve;
 import weka.core.Instances;
 
@@ -20,52 +23,227 @@ import weka.core.Instances;
 public class ModelEvaluator {
     //Store evaluation results for comparison
     private List<EvaluationResult> results = new ArrayList<>();
+    private ResourceGovernor governor = new ResourceGovernor();
+    private CrossValidationCache cvCache = new CrossValidationCache();
+    private static final int EVAL_FOLDS = 10;
+    private static final long EVAL_SEED = 1;
+    private static final String[] DISEASE_VALUES = {"yes", "1", "true", "disease", "present", "positive"};
+    // > 0: compareRepeated chạy repeats × 10-fold
+    private int repeats = 0;
+    private List<String> repeatedVerdict;
+    // Chỉ giữ metric đã gộp (confusion + histogram điểm), không giữ predictions hay dataset
     private static class EvaluationResult {
         String modelName;
-        Evaluation evaluation;
+        StreamingMetrics evaluation;
         double runtime;
-        Instances data;
-        EvaluationResult(String modelName, Evaluation eval, double runtime, Instances data) {
+        EvaluationResult(String modelName, StreamingMetrics eval, double runtime) {
             this.modelName = modelName;
             this.evaluation = eval;
             this.runtime = runtime;
-            this.data = data;
         }
     }
 
+    /**
+     Dùng chung ngân sách CPU với pipeline (mặc định: ngân sách riêng = số core)
+     @param governor Governor của pipeline
+     */
+    public void setResourceGovernor(ResourceGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     Dùng lại CV đã tính lúc tuning (J48Classifier / RandomForestClassifier lưu CV của cấu hình tốt nhất)
+     @param cvCache Cache của pipeline
+     */
+    public void setCrossValidationCache(CrossValidationCache cvCache) {
+        this.cvCache = cvCache;
+    }
+
     /**
      Evaluate model - Compatible với J48Classifier và RandomForestClassifier
-     @param classifier Classifier đã được train (J48, RandomForest, etc.)
+     Train classifier trên data rồi đánh giá (dùng evaluateTrainedModel nếu model đã được train sẵn)
+     @param classifier Classifier (J48, RandomForest, etc.)
      @param data Dataset để evaluate
      @param reportPath Path để save report
      @throws Exception
      */
     public void evaluateModel(Classifier classifier, Instances data, String reportPath)
             throws Exception {
-        String modelName = classifier.getClass().getSimpleName();
-        System.out.println("\n" + "=".repeat(60));
-        System.out.println("EVALUATING: " + modelName);
-        System.out.println("=".repeat(60));
+        printEvaluationHeader(classifier);
         //Measure training time
         long startTime = System.nanoTime();
-        //Build classifier
-        classifier.buildClassifier(data);
-        //10-fold cross-validation
-        Evaluation eval = new Evaluation(data);
-        eval.crossValidateModel(classifier, data, 10, new Random(1));
-        showROCCurve(classifier.getClass().getSimpleName(), eval);
-        long endTime = System.nanoTime();
-        double runtime = (endTime - startTime) / 1_000_000_000.0;
+        //Build classifier (RandomForest dùng số slot còn trống của governor)
+        governor.buildClassifier(classifier, data);
+        double trainSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        evaluate(classifier, data, trainSeconds, reportPath);
+    }
+
+    /**
+     Evaluate model đã train trên đúng data (không build lại)
+     CV 10-fold lấy từ cache khi cấu hình model + fingerprint data trùng ô tốt nhất của tuning,
+     runtime tách train / CV / scoring
+     @param classifier Classifier đã train (getClassifier() của J48Classifier / RandomForestClassifier)
+     @param data Dataset model đã train (getTrainingData())
+     @param trainSeconds Thời gian build model (getTrainSeconds())
+     @param reportPath Path để save report
+     @throws Exception
+     */
+    public void evaluateTrainedModel(Classifier classifier, Instances data, double trainSeconds, String reportPath)
+            throws Exception {
+        printEvaluationHeader(classifier);
+        evaluate(classifier, data, trainSeconds, reportPath);
+    }
+
+    private void printEvaluationHeader(Classifier classifier) {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("EVALUATING: " + classifier.getClass().getSimpleName());
+        System.out.println("=".repeat(60));
+    }
+
+    private void evaluate(Classifier classifier, Instances data, double trainSeconds, String reportPath)
+            throws Exception {
+        String modelName = classifier.getClass().getSimpleName();
+        //10-fold cross-validation: dùng lại CV của tuning nếu trùng, không thì chạy các fold song song
+        long cvStart = System.nanoTime();
+        StreamingMetrics eval = cvCache.get(classifier, data, EVAL_FOLDS, EVAL_SEED);
+        boolean cached = eval != null;
+        if (cached) {
+            System.out.println("  ℹ Cross-validation reused from tuning (same config, data and folds)");
+        } else {
+            eval = ParallelCrossValidation.run(governor, classifier, data, EVAL_FOLDS, new Random(EVAL_SEED));
+        }
+        double cvSeconds = (System.nanoTime() - cvStart) / 1_000_000_000.0;
+        //Scoring: model đã train dự đoán toàn bộ data một lượt
+        long scoringStart = System.nanoTime();
+        for (int j = 0; j < data.numInstances(); j++) {
+            classifier.distributionForInstance(data.instance(j));
+        }
+        double scoringSeconds = (System.nanoTime() - scoringStart) / 1_000_000_000.0;
+        showROCCurve(modelName, eval);
+        double runtime = trainSeconds + cvSeconds + scoringSeconds;
+        String timing = String.format("train %.2f s + CV %.2f s%s + scoring %.2f s",
+                trainSeconds, cvSeconds, cached ? " (cached)" : "", scoringSeconds);
         //Print results to console
-        printEvaluationResults(modelName, eval, runtime);
+        printEvaluationResults(modelName, eval, runtime, timing);
         //Save to report file
-        saveEvaluationReport(modelName, eval, runtime, reportPath);
+        saveEvaluationReport(modelName, eval, runtime, timing, reportPath);
         //Store for comparison
-        results.add(new EvaluationResult(modelName, eval, runtime, data));
+        results.add(new EvaluationResult(modelName, eval, runtime));
         System.out.println("\n" + modelName + " evaluation completed!");
     }
 
-    private void printEvaluationResults(String modelName, Evaluation eval, double runtime) {
+    /**
+     Bật repeated k-fold cho compareRepeated (vd 10 → 10×10-fold)
+     @param repeats Số lần lặp CV 10-fold (0 = tắt, mặc định)
+     */
+    public void setRepeatedCrossValidation(int repeats) {
+        this.repeats = repeats;
+    }
+
+    public int getRepeatedCrossValidation() {
+        return repeats;
+    }
+
+    /**
+     Index class "có bệnh" theo tên giá trị (Yes / 1 / true / ...), không khớp tên nào thì lấy class ít instance nhất
+     @param data Dataset đã set class
+     @return Index giá trị class dùng cho recall / AUC class bệnh
+     */
+    public static int diseaseClass(Instances data) {
+        Attribute classAttribute = data.classAttribute();
+        for (String value : DISEASE_VALUES) {
+            for (int v = 0; v < classAttribute.numValues(); v++) {
+                if (classAttribute.value(v).trim().equalsIgnoreCase(value)) {
+                    return v;
+                }
+            }
+        }
+        long[] counts = DatasetProfile.of(data).getClassCounts();
+        int minority = 0;
+        for (int c = 1; c < counts.length; c++) {
+            if (counts[c] > 0 && (counts[minority] == 0 || counts[c] < counts[minority])) {
+                minority = c;
+            }
+        }
+        return minority;
+    }
+
+    /**
+     So sánh hai model bằng repeated 10-fold CV (cùng fold cho cả hai) + corrected resampled t-test
+     In mean ± std, khoảng tin cậy 95% và p-value từng metric; compareModels in lại kết luận bên cạnh winner
+     @param nameA Tên model A
+     @param classifierA Model A (đã train hay chưa đều được, mỗi fold dùng bản copy)
+     @param dataA Dataset của model A
+     @param nameB Tên model B
+     @param classifierB Model B
+     @param dataB Dataset của model B (cần cùng số dòng / class với dataA để ghép cặp fold)
+     @param reportPath Path để save report
+     @throws Exception
+     */
+    public void compareRepeated(String nameA, Classifier classifierA, Instances dataA,
+                                String nameB, Classifier classifierB, Instances dataB,
+                                String reportPath) throws Exception {
+        if (repeats <= 0) {
+            return;
+        }
+        System.out.println("\n" + "=".repeat(60));
+        System.out.printf("REPEATED CROSS-VALIDATION: %s vs %s (%dx%d-fold)%n", nameA, nameB, repeats, EVAL_FOLDS);
+        System.out.println("=".repeat(60));
+        long start = System.nanoTime();
+        // Class bệnh tìm theo tên giá trị trên dataset của từng model (thứ tự label có thể khác nhau)
+        RepeatedCrossValidation.Result a = RepeatedCrossValidation.run(governor, nameA, classifierA, dataA,
+                EVAL_FOLDS, repeats, diseaseClass(dataA));
+        RepeatedCrossValidation.Result b = RepeatedCrossValidation.run(governor, nameB, classifierB, dataB,
+                EVAL_FOLDS, repeats, diseaseClass(dataB));
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        int folds = EVAL_FOLDS * repeats;
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-18s %-24s %-24s %9s %8s %8s %7s", "Metric",
+                nameA + " (mean±sd)", nameB + " (mean±sd)", "Diff", "t", "p", "Pairs"));
+        lines.add("-".repeat(104));
+        repeatedVerdict = new ArrayList<>();
+        for (int m = 0; m < RepeatedCrossValidation.METRICS.length; m++) {
+            double[] test = RepeatedCrossValidation.pairedTTest(a, b, m);
+            int pairs = (int) test[3];
+            lines.add(String.format("%-18s %-24s %-24s %+9.4f %8.3f %8.4f %7s", RepeatedCrossValidation.METRICS[m],
+                    String.format("%.4f±%.4f", a.mean(m), a.stdDev(m)),
+                    String.format("%.4f±%.4f", b.mean(m), b.stdDev(m)), test[0], test[1], test[2],
+                    pairs + "/" + folds));
+            String better = test[0] > 0 ? nameA : nameB;
+            String usable = pairs < folds ? ", " + pairs + "/" + folds + " fold pairs defined" : "";
+            repeatedVerdict.add(String.format("-%-17s %s", RepeatedCrossValidation.METRICS[m] + ":",
+                    !RepeatedCrossValidation.sameFolds(a, b) ? "not comparable (different folds)"
+                            : Double.isNaN(test[2]) ? "not comparable (" + pairs + " usable fold pairs)"
+                            : test[2] < 0.05 ? better + " significantly better (p=" + String.format("%.4f", test[2]) + usable + ")"
+                            : "no significant difference (p=" + String.format("%.4f", test[2]) + usable + ")"));
+        }
+        lines.add("");
+        lines.add("95% confidence intervals (corrected variance):");
+        for (RepeatedCrossValidation.Result result : new RepeatedCrossValidation.Result[]{a, b}) {
+            for (int m = 0; m < RepeatedCrossValidation.METRICS.length; m++) {
+                lines.add(String.format("  %-12s %-18s %.4f ± %.4f (%d/%d folds)", result.getModelName(),
+                        RepeatedCrossValidation.METRICS[m], result.mean(m), result.confidence95(m),
+                        result.usableFolds(m), folds));
+            }
+        }
+        lines.add(String.format("Corrected resampled t-test on fold pairs where both metrics are defined, df = pairs - 1; %.1f s",
+                seconds));
+
+        System.out.println();
+        lines.forEach(System.out::println);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(reportPath, true))) {
+            writer.write("\n\n" + "=".repeat(70) + "\n");
+            writer.write(String.format("REPEATED CROSS-VALIDATION: %s vs %s (%dx%d-fold)%n", nameA, nameB,
+                    repeats, EVAL_FOLDS));
+            writer.write("=".repeat(70) + "\n\n");
+            for (String line : lines) {
+                writer.write(line + "\n");
+            }
+        }
+    }
+
+    private void printEvaluationResults(String modelName, StreamingMetrics eval, double runtime, String timing) {
         System.out.println("\nPerformance Metrics:");
         System.out.printf("-Accuracy:           %.2f%%\n", eval.pctCorrect());
         System.out.printf("-Precision (Weighted): %.3f\n", eval.weightedPrecision());
@@ -83,7 +261,7 @@ public class ModelEvaluator {
             System.out.println("Class-specific metrics not available");
         }
 
-        System.out.printf("\nRuntime:    %.2f seconds\n", runtime);
+        System.out.printf("\nRuntime:    %.2f seconds (%s)\n", runtime, timing);
 
         System.out.println("\n--- Confusion Matrix ---");
         try {
@@ -98,8 +276,8 @@ public class ModelEvaluator {
         System.out.printf("-Root mean squared error: %.4f\n", eval.rootMeanSquaredError());
     }
 
-    private void saveEvaluationReport(String modelName, Evaluation eval,
-                                      double runtime, String reportPath) throws IOException {
+    private void saveEvaluationReport(String modelName, StreamingMetrics eval,
+                                      double runtime, String timing, String reportPath) throws IOException {
         // Create output directory if not exists
         File reportFile = new File(reportPath);
         File parentDir = reportFile.getParentFile();
@@ -118,7 +296,7 @@ public class ModelEvaluator {
             writer.write(String.format("-Precision (Weighted): %.3f\n", eval.weightedPrecision()));
             writer.write(String.format("-Recall (Weighted):    %.3f\n", eval.weightedRecall()));
             writer.write(String.format("-F1-Score (Weighted):  %.3f\n", eval.weightedFMeasure()));
-            writer.write(String.format("-Runtime:             %.2f seconds\n\n", runtime));
+            writer.write(String.format("-Runtime:             %.2f seconds (%s)\n\n", runtime, timing));
             //Disease class metrics
             try {
                 writer.write("Disease Class Metrics (Class 1):\n");
@@ -231,6 +409,11 @@ public class ModelEvaluator {
         // Overall winner (most wins)
         String overallWinner = determineOverallWinner(bestAccuracy, bestRecall, bestF1, bestAUC);
         System.out.println("\nOverall Winner: " + overallWinner);
+        // Điểm đơn lẻ ở trên có thể chỉ là nhiễu của một lần chia fold → in kết luận của repeated CV nếu có
+        if (repeatedVerdict != null) {
+            System.out.println("\nStatistical check (repeated CV, corrected t-test):");
+            repeatedVerdict.forEach(System.out::println);
+        }
     }
 
     /**
@@ -513,13 +696,12 @@ public class ModelEvaluator {
         System.out.println("Random Forest comparison report saved to: " + reportPath);
     }
 
-    public void showROCCurve(String modelName, Evaluation eval) throws Exception {
-        ThresholdCurve tc = new ThresholdCurve();
-        Instances curve = tc.getCurve(eval.predictions(), 1); // class 1
+    public void showROCCurve(String modelName, StreamingMetrics eval) throws Exception {
+        Instances curve = eval.rocCurve(1); // class 1, từ histogram điểm
 
         ThresholdVisualizePanel vmc = new ThresholdVisualizePanel();
         vmc.setROCString("(Area Under ROC = " +
-                Utils.doubleToString(tc.getROCArea(curve), 4) + ")");
+                Utils.doubleToString(ThresholdCurve.getROCArea(curve), 4) + ")");
         vmc.setName(modelName + " ROC Curve");
 
         PlotData2D tempd = new PlotData2D(curve);
@@ -550,6 +732,7 @@ public class ModelEvaluator {
      */
     public void clearResults() {
         results.clear();
+        repeatedVerdict = null;
     }
 
     /**
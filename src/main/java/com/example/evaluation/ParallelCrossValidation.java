@@ -0,0 +1,102 @@
+package com.example.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import com.example.utils.ResourceGovernor;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+/*
+k-fold cross-validation với các fold chạy song song trong ResourceGovernor
+Fold được chia giống hệt Evaluation.crossValidateModel (randomize + stratify, trainCV dùng chung random
+theo đúng thứ tự fold) nên số liệu trùng với bản tuần tự; mỗi fold đánh giá vào StreamingMetrics riêng
+(confusion + histogram điểm, không giữ prediction) rồi gộp lại.
+ */
+public final class ParallelCrossValidation {
+    private ParallelCrossValidation() {
+    }
+
+    /*
+    @param governor Ngân sách slot (fold lấy slot còn trống, cây RF trong fold lấy phần còn lại)
+    @param classifier Classifier mẫu (không bị train, mỗi fold dùng bản copy)
+    @param data Dataset
+    @param numFolds Số fold
+    @param random Random dùng để chia fold (bị tiêu thụ như crossValidateModel)
+    @return Metric đã gộp mọi fold (không giữ prediction)
+    @throws Exception Lỗi train / đánh giá của fold đầu tiên bị lỗi
+     */
+    public static StreamingMetrics run(ResourceGovernor governor, Classifier classifier, Instances data,
+                                       int numFolds, Random random) throws Exception {
+        Folds folds = new Folds(data, numFolds, random);
+        StreamingMetrics[] perFold = new StreamingMetrics[numFolds];
+        List<Callable<Void>> tasks = new ArrayList<>(numFolds);
+        for (int i = 0; i < numFolds; i++) {
+            tasks.add(() -> {
+                Fold fold = folds.next();
+                Classifier copy = AbstractClassifier.makeCopy(classifier);
+                governor.buildClassifier(copy, fold.train);
+                perFold[fold.index] = StreamingMetrics.evaluate(copy, fold.test);
+                return null;
+            });
+        }
+        governor.invokeAll(tasks);
+
+        StreamingMetrics total = new StreamingMetrics(data);
+        for (StreamingMetrics metrics : perFold) {
+            total.merge(metrics);
+        }
+        return total;
+    }
+
+    /*
+    Sinh train/test của từng fold theo thứ tự như crossValidateModel (randomize + stratify, trainCV tiêu thụ
+    random) — chỉ giữ fold đang chạy, bản shuffle được tạo ở fold đầu và bỏ sau fold cuối
+     */
+    static final class Folds {
+        private final Instances data;
+        private final int numFolds;
+        private final Random random;
+        private Instances shuffled;
+        private int next;
+
+        Folds(Instances data, int numFolds, Random random) {
+            this.data = data;
+            this.numFolds = numFolds;
+            this.random = random;
+        }
+
+        synchronized Fold next() {
+            if (next == 0) {
+                shuffled = new Instances(data);
+                shuffled.randomize(random);
+                if (shuffled.classAttribute().isNominal()) {
+                    shuffled.stratify(numFolds);
+                }
+            }
+            int fold = next++;
+            Fold result = new Fold(fold, shuffled.trainCV(numFolds, fold, random),
+                    shuffled.testCV(numFolds, fold));
+            if (next == numFolds) {
+                shuffled = null;
+            }
+            return result;
+        }
+    }
+
+    static final class Fold {
+        final int index;
+        final Instances train;
+        final Instances test;
+
+        Fold(int index, Instances train, Instances test) {
+            this.index = index;
+            this.train = train;
+            this.test = test;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import com.example.evaluation.ParallelCrossValidation.Fold;
+import com.example.evaluation.ParallelCrossValidation.Folds;
+import com.example.utils.ResourceGovernor;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.Statistics;
+
+/*
+Repeated k-fold cross-validation (vd 10×10) với corrected resampled t-test (Nadeau & Bengio)
+- Repeat r chia fold bằng Random(r + 1) → repeat đầu trùng CV 10-fold Random(1) của ModelEvaluator
+- Mọi fold của mọi repeat là task độc lập trong ResourceGovernor; mỗi fold xong in metric ngay
+- Chỉ giữ 4 số mỗi fold (accuracy, weighted F1, recall / AUC class bệnh), không giữ predictions
+- Hai model chạy trên cùng số dòng / cùng class theo cùng thứ tự → cùng fold → so sánh từng cặp được
+Phương sai được hiệu chỉnh (1/(k·r) + n_test/n_train) vì các fold chồng dữ liệu train,
+t-test thường với k·r mẫu sẽ báo "khác biệt" quá dễ.
+Fold có metric không xác định (NaN, vd F1 khi model không đoán class nào, AUC khi fold thiếu class) bị bỏ qua
+như missing value của weka: mean / phương sai / t-test chỉ dùng fold (cặp fold) còn lại, k·r thay bằng số đó.
+ */
+public final class RepeatedCrossValidation {
+    public static final String[] METRICS = {"Accuracy", "Weighted F1", "Recall (disease)", "AUC (disease)"};
+
+    private RepeatedCrossValidation() {
+    }
+
+    // Metric từng fold của một model: values[metric][repeat * numFolds + fold]
+    public static final class Result {
+        private final String modelName;
+        private final int numFolds;
+        private final int repeats;
+        private final double testTrainRatio;
+        private final double[][] values;
+        private final double[] classValues;
+
+        private Result(String modelName, int numFolds, int repeats, double testTrainRatio, double[] classValues) {
+            this.modelName = modelName;
+            this.numFolds = numFolds;
+            this.repeats = repeats;
+            this.testTrainRatio = testTrainRatio;
+            this.values = new double[METRICS.length][numFolds * repeats];
+            this.classValues = classValues;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        public double mean(int metric) {
+            return RepeatedCrossValidation.mean(defined(values[metric]));
+        }
+
+        public double stdDev(int metric) {
+            return Math.sqrt(variance(defined(values[metric])));
+        }
+
+        // Số fold có metric xác định (fold NaN bị bỏ qua)
+        public int usableFolds(int metric) {
+            return defined(values[metric]).length;
+        }
+
+        // Nửa độ rộng khoảng tin cậy 95% của mean (phương sai đã hiệu chỉnh)
+        public double confidence95(int metric) {
+            double[] usable = defined(values[metric]);
+            int df = usable.length - 1;
+            return df < 1 ? Double.NaN
+                    : tCritical(df) * Math.sqrt(correction(usable.length) * variance(usable));
+        }
+
+        private double correction(int samples) {
+            return 1.0 / samples + testTrainRatio;
+        }
+    }
+
+    // Hai kết quả ghép cặp được: cùng số fold / repeat, cùng class theo cùng thứ tự dòng
+    public static boolean sameFolds(Result a, Result b) {
+        return a.numFolds == b.numFolds && a.repeats == b.repeats && Arrays.equals(a.classValues, b.classValues);
+    }
+
+    /*
+    Corrected resampled t-test của một metric giữa hai kết quả, trên các cặp fold mà cả hai metric xác định
+    @return {mean(a - b), t, p hai phía, số cặp dùng được}; ba số đầu NaN nếu không cùng fold
+    (khác số dòng / class) hoặc còn ít hơn 2 cặp
+     */
+    public static double[] pairedTTest(Result a, Result b, int metric) {
+        if (!sameFolds(a, b)) {
+            return new double[]{Double.NaN, Double.NaN, Double.NaN, 0};
+        }
+        double[] diff = new double[a.values[metric].length];
+        int n = 0;
+        for (int j = 0; j < diff.length; j++) {
+            double d = a.values[metric][j] - b.values[metric][j];
+            if (!Double.isNaN(d)) {
+                diff[n++] = d;
+            }
+        }
+        if (n < 2) {
+            return new double[]{n == 0 ? Double.NaN : diff[0], Double.NaN, Double.NaN, n};
+        }
+        diff = Arrays.copyOf(diff, n);
+        double meanDiff = mean(diff);
+        double var = variance(diff);
+        if (var == 0) {
+            return new double[]{meanDiff, meanDiff == 0 ? 0 : Double.POSITIVE_INFINITY, meanDiff == 0 ? 1 : 0, n};
+        }
+        double t = meanDiff / Math.sqrt(a.correction(n) * var);
+        return new double[]{meanDiff, t, twoSidedP(t, n - 1), n};
+    }
+
+    /*
+    Chạy repeated k-fold cho một model
+    @param governor Ngân sách slot (fold và repeat song song, cây RF lấy slot còn lại)
+    @param modelName Tên in trong log
+    @param classifier Classifier mẫu (mỗi fold dùng bản copy)
+    @param data Dataset
+    @param numFolds Số fold
+    @param repeats Số lần lặp (seed 1..repeats)
+    @param diseaseClass Index class bệnh (recall / AUC)
+    @return Metric từng fold
+    @throws Exception Lỗi train / đánh giá của một fold
+     */
+    public static Result run(ResourceGovernor governor, String modelName, Classifier classifier, Instances data,
+                             int numFolds, int repeats, int diseaseClass) throws Exception {
+        double[] classValues = data.attributeToDoubleArray(data.classIndex());
+        int testSize = data.numInstances() / numFolds;
+        Result result = new Result(modelName, numFolds, repeats,
+                (double) testSize / Math.max(1, data.numInstances() - testSize), classValues);
+
+        List<Folds> splits = new ArrayList<>(repeats);
+        for (int r = 0; r < repeats; r++) {
+            splits.add(new Folds(data, numFolds, new Random(r + 1)));
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(numFolds * repeats);
+        for (int r = 0; r < repeats; r++) {
+            int repeat = r;
+            for (int i = 0; i < numFolds; i++) {
+                tasks.add(() -> {
+                    Fold fold = splits.get(repeat).next();
+                    Classifier copy = AbstractClassifier.makeCopy(classifier);
+                    governor.buildClassifier(copy, fold.train);
+                    StreamingMetrics eval = StreamingMetrics.evaluate(copy, fold.test);
+
+                    int cell = repeat * numFolds + fold.index;
+                    double[] metrics = {eval.pctCorrect(), eval.weightedFMeasure(), eval.recall(diseaseClass),
+                            eval.areaUnderROC(diseaseClass)};
+                    for (int m = 0; m < metrics.length; m++) {
+                        result.values[m][cell] = metrics[m];
+                    }
+                    System.out.printf(Locale.ROOT, "  ℹ %s repeat %d fold %d: Acc=%.2f%% F1=%.3f Recall=%.3f AUC=%.3f%n",
+                            modelName, repeat + 1, fold.index + 1, metrics[0], metrics[1], metrics[2], metrics[3]);
+                    return null;
+                });
+            }
+        }
+        governor.invokeAll(tasks);
+        return result;
+    }
+
+    // Các giá trị khác NaN, giữ thứ tự
+    private static double[] defined(double[] values) {
+        return Arrays.stream(values).filter(value -> !Double.isNaN(value)).toArray();
+    }
+
+    private static double mean(double[] values) {
+        if (values.length == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    // Phương sai mẫu (n - 1), gọi với giá trị đã lọc NaN (defined)
+    private static double variance(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return sum / (values.length - 1);
+    }
+
+    // P(|T| > |t|) với T ~ Student t(df)
+    private static double twoSidedP(double t, int df) {
+        return Statistics.incompleteBeta(df / 2.0, 0.5, df / (df + t * t));
+    }
+
+    // t sao cho P(|T| > t) = 0.05 (chia đôi khoảng)
+    private static double tCritical(int df) {
+        double low = 0;
+        double high = 100;
+        for (int iteration = 0; iteration < 100; iteration++) {
+            double mid = (low + high) / 2;
+            if (twoSidedP(mid, df) > 0.05) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2;
+    }
+}
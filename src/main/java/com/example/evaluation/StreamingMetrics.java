@@ -0,0 +1,340 @@
+package com.example.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.evaluation.NominalPrediction;
+import weka.classifiers.evaluation.Prediction;
+import weka.classifiers.evaluation.ThresholdCurve;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/*
+Metric phân loại cập nhật từng prediction, bộ nhớ không phụ thuộc số dòng
+- Confusion matrix + tổng lỗi (MAE / RMSE) → accuracy, precision / recall / F1, kappa giống công thức weka Evaluation
+- Mỗi class một histogram điểm cố định (resolution + 1 mức, vd 0.000 .. 1.000) tách theo dòng thuộc / không thuộc
+  class → ROC và AUC tính qua weka ThresholdCurve trên ≤ 2 × (resolution + 1) prediction có weight
+AUC là AUC trên điểm đã làm tròn theo resolution (điểm trùng mức coi như hoà); điểm vốn là bội số của
+1 / resolution thì kết quả trùng weka. Hai StreamingMetrics (vd hai fold) merge được.
+ */
+public class StreamingMetrics {
+    public static final int DEFAULT_RESOLUTION = 1000;
+
+    private final Attribute classAttribute;
+    private final int numClasses;
+    private final int resolution;
+    private final double[][] confusion;
+    // scores[c][0 = dòng không thuộc c, 1 = dòng thuộc c][mức điểm của class c]
+    private final double[][][] scores;
+    private double withClass;
+    private double unclassified;
+    private double sumAbsErr;
+    private double sumSqrErr;
+    // AUC đã tính từng class (NaN = chưa tính), xoá khi có dữ liệu mới
+    private final double[] auc;
+
+    public StreamingMetrics(Instances header) {
+        this(header, DEFAULT_RESOLUTION);
+    }
+
+    /*
+    @param header Dataset (chỉ dùng class attribute, phải là nominal)
+    @param resolution Số khoảng điểm của histogram
+     */
+    public StreamingMetrics(Instances header, int resolution) {
+        this.classAttribute = header.classAttribute();
+        this.numClasses = header.numClasses();
+        this.resolution = resolution;
+        this.confusion = new double[numClasses][numClasses];
+        this.scores = new double[numClasses][2][resolution + 1];
+        this.auc = new double[numClasses];
+        Arrays.fill(auc, Double.NaN);
+    }
+
+    /*
+    Đánh giá model đã train trên một tập dữ liệu, từng dòng một
+    @param classifier Model đã train
+    @param test Dữ liệu đánh giá
+    @return Metric của tập test
+     */
+    public static StreamingMetrics evaluate(Classifier classifier, Instances test) throws Exception {
+        StreamingMetrics metrics = new StreamingMetrics(test);
+        for (int j = 0; j < test.numInstances(); j++) {
+            Instance instance = test.instance(j);
+            metrics.add(instance, classifier.distributionForInstance(instance));
+        }
+        return metrics;
+    }
+
+    /*
+    Cập nhật với một prediction (dòng thiếu class bị bỏ qua như weka)
+    @param instance Dòng có class thật và weight
+    @param distribution Phân phối xác suất model dự đoán
+     */
+    public void add(Instance instance, double[] distribution) {
+        if (instance.classIsMissing()) {
+            return;
+        }
+        int actual = (int) instance.classValue();
+        double weight = instance.weight();
+        for (int c = 0; c < numClasses; c++) {
+            scores[c][c == actual ? 1 : 0][level(distribution[c])] += weight;
+        }
+        Arrays.fill(auc, Double.NaN);
+
+        withClass += weight;
+        int predicted = -1;
+        double best = 0;
+        for (int c = 0; c < numClasses; c++) {
+            if (distribution[c] > best) {
+                predicted = c;
+                best = distribution[c];
+            }
+        }
+        if (predicted < 0) {
+            unclassified += weight;
+            return;
+        }
+        confusion[actual][predicted] += weight;
+        double absErr = 0;
+        double sqrErr = 0;
+        for (int c = 0; c < numClasses; c++) {
+            double diff = distribution[c] - (c == actual ? 1 : 0);
+            absErr += Math.abs(diff);
+            sqrErr += diff * diff;
+        }
+        sumAbsErr += weight * absErr / numClasses;
+        sumSqrErr += weight * sqrErr / numClasses;
+    }
+
+    // Cộng dồn metric của phần dữ liệu khác (cùng class attribute, cùng resolution)
+    public void merge(StreamingMetrics other) {
+        for (int i = 0; i < numClasses; i++) {
+            for (int j = 0; j < numClasses; j++) {
+                confusion[i][j] += other.confusion[i][j];
+            }
+            for (int side = 0; side < 2; side++) {
+                for (int k = 0; k <= resolution; k++) {
+                    scores[i][side][k] += other.scores[i][side][k];
+                }
+            }
+        }
+        withClass += other.withClass;
+        unclassified += other.unclassified;
+        sumAbsErr += other.sumAbsErr;
+        sumSqrErr += other.sumSqrErr;
+        Arrays.fill(auc, Double.NaN);
+    }
+
+    // ===============================
+    // Metric (cùng công thức với weka Evaluation)
+    // ===============================
+
+    public double pctCorrect() {
+        double correct = 0;
+        for (int c = 0; c < numClasses; c++) {
+            correct += confusion[c][c];
+        }
+        return 100.0 * correct / withClass;
+    }
+
+    public double precision(int classIndex) {
+        return confusion[classIndex][classIndex] / predictedCount(classIndex);
+    }
+
+    public double recall(int classIndex) {
+        return confusion[classIndex][classIndex] / actualCount(classIndex);
+    }
+
+    public double falsePositiveRate(int classIndex) {
+        double falsePositives = predictedCount(classIndex) - confusion[classIndex][classIndex];
+        double negatives = numClassified() - actualCount(classIndex);
+        return falsePositives / negatives;
+    }
+
+    public double fMeasure(int classIndex) {
+        return fMeasure(precision(classIndex), recall(classIndex));
+    }
+
+    public double weightedPrecision() {
+        return weighted(this::precision);
+    }
+
+    public double weightedRecall() {
+        return weighted(this::recall);
+    }
+
+    public double weightedFMeasure() {
+        return weighted(this::fMeasure);
+    }
+
+    public double weightedAreaUnderROC() {
+        return weighted(this::areaUnderROC);
+    }
+
+    public double kappa() {
+        double[] rows = new double[numClasses];
+        double[] columns = new double[numClasses];
+        double total = 0;
+        for (int i = 0; i < numClasses; i++) {
+            for (int j = 0; j < numClasses; j++) {
+                rows[i] += confusion[i][j];
+                columns[j] += confusion[i][j];
+                total += confusion[i][j];
+            }
+        }
+        double correct = 0;
+        double chance = 0;
+        for (int i = 0; i < numClasses; i++) {
+            chance += rows[i] * columns[i];
+            correct += confusion[i][i];
+        }
+        chance /= total * total;
+        correct /= total;
+        return chance < 1 ? (correct - chance) / (1 - chance) : 1;
+    }
+
+    public double meanAbsoluteError() {
+        return sumAbsErr / numClassified();
+    }
+
+    public double rootMeanSquaredError() {
+        return Math.sqrt(sumSqrErr / numClassified());
+    }
+
+    public double numClassified() {
+        return withClass - unclassified;
+    }
+
+    public double[][] confusionMatrix() {
+        double[][] copy = new double[numClasses][];
+        for (int i = 0; i < numClasses; i++) {
+            copy[i] = confusion[i].clone();
+        }
+        return copy;
+    }
+
+    // AUC của class theo histogram điểm (weka ThresholdCurve trên các mức điểm)
+    public double areaUnderROC(int classIndex) {
+        if (Double.isNaN(auc[classIndex])) {
+            Instances curve = rocCurve(classIndex);
+            auc[classIndex] = curve == null ? Utils.missingValue() : ThresholdCurve.getROCArea(curve);
+        }
+        return auc[classIndex];
+    }
+
+    /*
+    ROC curve theo định dạng của weka ThresholdCurve (vẽ bằng ThresholdVisualizePanel được)
+    @param classIndex Class dương
+    @return Curve hoặc null nếu chưa có prediction
+     */
+    public Instances rocCurve(int classIndex) {
+        if (numClasses < 2) {
+            return null;
+        }
+        int negativeClass = classIndex == 0 ? 1 : 0;
+        ArrayList<Prediction> predictions = new ArrayList<>();
+        for (int k = 0; k <= resolution; k++) {
+            double[] distribution = new double[numClasses];
+            distribution[classIndex] = (double) k / resolution;
+            distribution[negativeClass] = 1 - distribution[classIndex];
+            if (scores[classIndex][1][k] > 0) {
+                predictions.add(new NominalPrediction(classIndex, distribution, scores[classIndex][1][k]));
+            }
+            if (scores[classIndex][0][k] > 0) {
+                predictions.add(new NominalPrediction(negativeClass, distribution, scores[classIndex][0][k]));
+            }
+        }
+        return new ThresholdCurve().getCurve(predictions, classIndex);
+    }
+
+    // ===============================
+    // Text giống bố cục weka
+    // ===============================
+
+    public String toMatrixString() {
+        int width = 1;
+        for (double[] row : confusion) {
+            for (double value : row) {
+                width = Math.max(width, format(value).length());
+            }
+        }
+        StringBuilder text = new StringBuilder("=== Confusion Matrix ===\n\n");
+        for (int j = 0; j < numClasses; j++) {
+            text.append(' ').append(Utils.padLeft(String.valueOf((char) ('a' + j % 26)), width));
+        }
+        text.append("   <-- classified as\n");
+        for (int i = 0; i < numClasses; i++) {
+            for (int j = 0; j < numClasses; j++) {
+                text.append(' ').append(Utils.padLeft(format(confusion[i][j]), width));
+            }
+            text.append(" | ").append(Utils.padLeft(String.valueOf((char) ('a' + i % 26)), width)).append(" = ").append(classAttribute.value(i))
+                    .append('\n');
+        }
+        return text.toString();
+    }
+
+    public String toClassDetailsString() {
+        StringBuilder text = new StringBuilder("=== Detailed Accuracy By Class ===\n\n");
+        text.append("                 TP Rate  FP Rate  Precision  Recall   F-Measure  ROC Area  Class\n");
+        for (int c = 0; c < numClasses; c++) {
+            text.append(String.format("                 %-9s%-9s%-11s%-9s%-11s%-10s%s%n",
+                    Utils.doubleToString(recall(c), 3), Utils.doubleToString(falsePositiveRate(c), 3),
+                    Utils.doubleToString(precision(c), 3), Utils.doubleToString(recall(c), 3),
+                    Utils.doubleToString(fMeasure(c), 3), Utils.doubleToString(areaUnderROC(c), 3),
+                    classAttribute.value(c)));
+        }
+        text.append(String.format("Weighted Avg.    %-9s%-9s%-11s%-9s%-11s%-10s%n",
+                Utils.doubleToString(weightedRecall(), 3), Utils.doubleToString(weighted(this::falsePositiveRate), 3),
+                Utils.doubleToString(weightedPrecision(), 3), Utils.doubleToString(weightedRecall(), 3),
+                Utils.doubleToString(weightedFMeasure(), 3), Utils.doubleToString(weightedAreaUnderROC(), 3)));
+        return text.toString();
+    }
+
+    private int level(double score) {
+        return (int) Math.round(Math.min(1, Math.max(0, score)) * resolution);
+    }
+
+    private double actualCount(int classIndex) {
+        double total = 0;
+        for (int j = 0; j < numClasses; j++) {
+            total += confusion[classIndex][j];
+        }
+        return total;
+    }
+
+    private double predictedCount(int classIndex) {
+        double total = 0;
+        for (int i = 0; i < numClasses; i++) {
+            total += confusion[i][classIndex];
+        }
+        return total;
+    }
+
+    // Trung bình theo số dòng thật mỗi class (class không có dòng bị bỏ qua)
+    private double weighted(IntToDoubleFunction metric) {
+        double total = 0;
+        for (int c = 0; c < numClasses; c++) {
+            double count = actualCount(c);
+            if (count > 0) {
+                total += metric.applyAsDouble(c) * count;
+            }
+        }
+        return total / numClassified();
+    }
+
+    private static double fMeasure(double precision, double recall) {
+        if (precision == 0 && recall == 0) {
+            return 0;
+        }
+        return 2 * precision * recall / (precision + recall);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : Utils.doubleToString(value, 2);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.utils.ConsoleCapture.Captured;
+
+/*
+Ghi artifact (CSV / ARFF export) bất đồng bộ trên I/O thread riêng
+- submit(): đưa việc ghi file vào hàng đợi, trả về ngay để training / tuning chạy tiếp
+- awaitAll(): chờ mọi file đang ghi, in log của từng lần ghi trên thread gọi (theo tên file, cùng tên thì theo
+  thứ tự submit → không phụ thuộc nhánh nào submit trước), lỗi được gom lại và báo kèm tên file
+- close(): không nhận việc mới và chờ hàng đợi ghi hết (kể cả khi pipeline ném lỗi), để thread daemon
+  không bị dừng giữa chừng khi main kết thúc
+Caller phải truyền snapshot dữ liệu (new Instances(data)) nếu còn sửa dataset sau khi submit.
+ */
+public class ArtifactSink implements AutoCloseable {
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final List<Pending> pending = new ArrayList<>();
+
+    @FunctionalInterface
+    public interface Task {
+        void write() throws Exception;
+    }
+
+    public ArtifactSink() {
+        this(1);
+    }
+
+    /*
+    @param ioThreads Số thread ghi file (1 là đủ cho một ổ đĩa)
+     */
+    public ArtifactSink(int ioThreads) {
+        int id = POOL_ID.incrementAndGet();
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, ioThreads), runnable -> {
+            Thread thread = new Thread(runnable, "artifact-io-" + id + "-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+    Đưa một artifact vào hàng đợi ghi
+    @param fileName Tên file (dùng trong thông báo lỗi)
+    @param task Công việc ghi file
+     */
+    public void submit(String fileName, Task task) {
+        // Log của task gom lại trên I/O thread, awaitAll in ra; lỗi trả về như giá trị để log vẫn còn
+        Future<Captured<Exception>> future = executor.submit(() -> ConsoleCapture.capture(() -> {
+            try {
+                task.write();
+                return null;
+            } catch (Exception e) {
+                return e;
+            }
+        }));
+        synchronized (pending) {
+            pending.add(new Pending(fileName, future));
+        }
+    }
+
+    /*
+    Chờ tất cả artifact đã submit ghi xong
+    @throws Exception Một hoặc nhiều file ghi lỗi (message liệt kê tên file, cause gốc ở suppressed)
+     */
+    public void awaitAll() throws Exception {
+        List<Pending> snapshot;
+        synchronized (pending) {
+            snapshot = new ArrayList<>(pending);
+            pending.clear();
+        }
+        if (snapshot.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<String> failedFiles = new ArrayList<>();
+        List<Throwable> causes = new ArrayList<>();
+        snapshot.sort(Comparator.comparing(artifact -> artifact.fileName));
+        for (Pending artifact : snapshot) {
+            try {
+                Exception error = artifact.future.get().replay();
+                if (error != null) {
+                    failedFiles.add(artifact.fileName + " (" + error.getMessage() + ")");
+                    causes.add(error);
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                failedFiles.add(artifact.fileName + " (" + cause.getMessage() + ")");
+                causes.add(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+
+        if (!failedFiles.isEmpty()) {
+            Exception failure = new Exception("Failed to write " + failedFiles.size()
+                    + " artifact(s): " + String.join(", ", failedFiles));
+            causes.forEach(failure::addSuppressed);
+            throw failure;
+        }
+        System.out.printf("  ✓ %d artifact(s) written (waited %.1f ms at end of pipeline)%n",
+                snapshot.size(), (System.nanoTime() - start) / 1_000_000.0);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Pending {
+        final String fileName;
+        final Future<Captured<Exception>> future;
+
+        Pending(String fileName, Future<Captured<Exception>> future) {
+            this.fileName = fileName;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+
+/*
+Gom System.out của từng task chạy song song để in lại theo thứ tự cố định
+- install(): thay System.out bằng stream định tuyến theo thread (một lần)
+- capture(): chạy task, mọi dòng task in (trên thread của nó) vào buffer riêng; lồng được (capture bên trong
+  một capture khác gom riêng phần của nó, xong thì thread lại in vào buffer ngoài)
+- Captured.replay(): in lại buffer qua System.out (vào buffer ngoài nếu thread đang capture, không thì ra console)
+Thread không capture (main...) vẫn in thẳng như cũ. Output của thread con do task tạo ra (worker của
+ResourceGovernor, pool của weka) không bị gom — các bước đó không in gì; thread I/O của ArtifactSink tự capture.
+ */
+public final class ConsoleCapture {
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFER = new ThreadLocal<>();
+    private static PrintStream console;
+
+    private ConsoleCapture() {
+    }
+
+    // Kết quả task + phần output đã gom
+    public static final class Captured<T> {
+        private final T value;
+        private final byte[] output;
+
+        private Captured(T value, byte[] output) {
+            this.value = value;
+            this.output = output;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        // In output của task (gọi từ thread in báo cáo, hoặc từ task đang capture để đưa vào buffer của nó)
+        public T replay() {
+            System.out.write(output, 0, output.length);
+            System.out.flush();
+            return value;
+        }
+    }
+
+    public static synchronized void install() {
+        if (console != null) {
+            return;
+        }
+        console = System.out;
+        String encoding = System.getProperty("sun.stdout.encoding");
+        Charset charset = encoding != null ? Charset.forName(encoding) : Charset.defaultCharset();
+        try {
+            System.setOut(new PrintStream(new Router(), true, charset.name()));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+    Chạy task trên thread hiện tại, gom output của nó
+    @param task Công việc
+    @return Kết quả + output (chưa in)
+    @throws Exception Lỗi của task (output đã gom được in ra trước khi ném)
+     */
+    public static <T> Captured<T> capture(Callable<T> task) throws Exception {
+        install();
+        ByteArrayOutputStream outer = BUFFER.get();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        BUFFER.set(buffer);
+        T value;
+        try {
+            value = task.call();
+            System.out.flush();
+        } catch (Exception e) {
+            System.out.flush();
+            restore(outer);
+            new Captured<>(null, buffer.toByteArray()).replay();
+            throw e;
+        } finally {
+            restore(outer);
+        }
+        return new Captured<>(value, buffer.toByteArray());
+    }
+
+    private static void restore(ByteArrayOutputStream outer) {
+        if (outer != null) {
+            BUFFER.set(outer);
+        } else {
+            BUFFER.remove();
+        }
+    }
+
+    private static final class Router extends OutputStream {
+        @Override
+        public void write(int b) {
+            ByteArrayOutputStream buffer = BUFFER.get();
+            if (buffer != null) {
+                buffer.write(b);
+            } else {
+                console.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ByteArrayOutputStream buffer = BUFFER.get();
+            if (buffer != null) {
+                buffer.write(bytes, offset, length);
+            } else {
+                console.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (BUFFER.get() == null) {
+                console.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.utils;
+
+import java.nio.charset.StandardCharsets;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/*
+Fingerprint 64-bit cho nội dung một Instances (cấu trúc + mọi giá trị + weight)
+Dùng làm key cho các kết quả tính toán lưu lại (sketch, cache...):
+cùng dữ liệu → cùng fingerprint, dù là object khác hay lần chạy khác.
+Hash từng khối dòng song song, ghép các khối theo thứ tự nên kết quả không phụ thuộc số thread.
+ */
+public final class DatasetFingerprint {
+    private static final int ROWS_PER_BLOCK = 8192;
+
+    private DatasetFingerprint() {
+    }
+
+    public static long of(Instances data) {
+        long hash = mix(structureHash(data));
+        int rows = data.numInstances();
+        int blocks = (rows + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+        long[] partial = new long[blocks];
+        ResourceGovernor.parallelFor(blocks, b -> {
+            long h = b;
+            for (int j = b * ROWS_PER_BLOCK; j < Math.min(rows, (b + 1) * ROWS_PER_BLOCK); j++) {
+                Instance instance = data.instance(j);
+                for (int i = 0; i < instance.numAttributes(); i++) {
+                    // doubleToLongBits gom mọi NaN (missing) về một giá trị
+                    h = mix(h ^ Double.doubleToLongBits(instance.value(i)));
+                }
+                h = mix(h ^ Double.doubleToLongBits(instance.weight()));
+            }
+            partial[b] = h;
+        });
+        hash = mix(hash ^ rows);
+        for (long h : partial) {
+            hash = mix(hash ^ h);
+        }
+        return hash;
+    }
+
+    // Dạng hex 16 ký tự, dùng làm tên file
+    public static String hex(Instances data) {
+        return String.format("%016x", of(data));
+    }
+
+    // Tên / kiểu / labels của attribute và class index
+    private static long structureHash(Instances data) {
+        long h = mix(data.classIndex());
+        for (int i = 0; i < data.numAttributes(); i++) {
+            Attribute attr = data.attribute(i);
+            h = mix(h ^ stringHash(attr.name()));
+            h = mix(h ^ attr.type());
+            for (int v = 0; attr.isNominal() && v < attr.numValues(); v++) {
+                h = mix(h ^ stringHash(attr.value(v)));
+            }
+        }
+        return h;
+    }
+
+    private static long stringHash(String value) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h = mix(h ^ (b & 0xFFL));
+        }
+        return h;
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import weka.core.AbstractInstance;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+/*
+Ghi dataset ra CSV / ARFF, format song song theo từng khối dòng
+- Mỗi khối dòng được format thành byte[] trên một thread riêng
+- Các khối ghi theo đúng thứ tự qua FileChannel
+- File kết thúc bằng ".gz": mỗi khối nén thành một gzip member độc lập (nén song song),
+  các member nối tiếp nhau vẫn là file gzip hợp lệ (GZIPInputStream / gunzip đọc được)
+Output (chưa nén) giống hệt CSVSaver / ArffSaver. Ghi vào file tạm cùng thư mục rồi move atomic → file đích
+không bao giờ bị cắt dở (kể cả khi process dừng giữa chừng).
+ */
+public class DatasetWriter {
+    public enum Format { CSV, ARFF }
+
+    private static final int ROWS_PER_BLOCK = 4096;
+    private static final int MAX_DECIMAL_PLACES = AbstractInstance.s_numericAfterDecimalPoint;
+    private static final String NEWLINE = System.lineSeparator();
+
+    /*
+    Ghi dataset ra file
+    @param data Dataset cần ghi
+    @param file File đích (thêm ".gz" để nén gzip)
+    @param format CSV hoặc ARFF
+    @return Thống kê ghi file (bytes, thời gian, MB/s)
+    @throws IOException Lỗi ghi file
+     */
+    public WriteReport write(Instances data, File file, Format format) throws IOException {
+        long start = System.nanoTime();
+        boolean gzip = file.getName().toLowerCase(Locale.ROOT).endsWith(".gz");
+        int numBlocks = (data.numInstances() + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+        ResourceGovernor governor = ResourceGovernor.current();
+        int parallelism = governor == null ? Runtime.getRuntime().availableProcessors() : governor.getBudget();
+        int window = Math.max(1, parallelism * 2);
+        long rawBytes = 0;
+        long writtenBytes = 0;
+
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            byte[] header = header(data, format).getBytes(StandardCharsets.UTF_8);
+            rawBytes += header.length;
+            writtenBytes += writeFully(channel, gzip ? compress(header) : header);
+
+            // Giới hạn số khối giữ trong bộ nhớ cùng lúc
+            for (int first = 0; first < numBlocks; first += window) {
+                int from = first;
+                int count = Math.min(window, numBlocks - first);
+                byte[][] raw = new byte[count][];
+                byte[][] encoded = new byte[count][];
+                try {
+                    ResourceGovernor.parallelFor(count, b -> {
+                        raw[b] = formatBlock(data, (from + b) * ROWS_PER_BLOCK, format);
+                        encoded[b] = gzip ? compressUnchecked(raw[b]) : raw[b];
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                for (int b = 0; b < count; b++) {
+                    rawBytes += raw[b].length;
+                    writtenBytes += writeFully(channel, encoded[b]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return new WriteReport(file, rawBytes, writtenBytes, System.nanoTime() - start);
+    }
+
+    private String header(Instances data, Format format) {
+        if (format == Format.ARFF) {
+            return new Instances(data, 0).toString();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < data.numAttributes(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(Utils.quote(data.attribute(i).name()));
+        }
+        return sb.append(NEWLINE).toString();
+    }
+
+    private byte[] formatBlock(Instances data, int firstRow, Format format) {
+        int lastRow = Math.min(data.numInstances(), firstRow + ROWS_PER_BLOCK);
+        StringBuilder sb = new StringBuilder((lastRow - firstRow) * data.numAttributes() * 8);
+        for (int row = firstRow; row < lastRow; row++) {
+            Instance instance = data.instance(row);
+            if (format == Format.ARFF) {
+                sb.append(instance.toStringMaxDecimalDigits(MAX_DECIMAL_PLACES));
+            } else {
+                appendCSVRow(sb, instance);
+            }
+            sb.append(NEWLINE);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Giống CSVSaver.instanceToString
+    private void appendCSVRow(StringBuilder sb, Instance instance) {
+        Instance outInst = instance;
+        if (instance instanceof SparseInstance) {
+            outInst = new DenseInstance(instance.weight(), instance.toDoubleArray());
+            outInst.setDataset(instance.dataset());
+        }
+        for (int i = 0; i < outInst.numAttributes(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String field = outInst.isMissing(i) ? "?" : outInst.toString(i, MAX_DECIMAL_PLACES);
+            if (field.indexOf(',') > -1 && !field.startsWith("'") && !field.endsWith("'")) {
+                field = "'" + field + "'";
+            }
+            sb.append(field);
+        }
+    }
+
+    private byte[] compress(byte[] raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 3));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16)) {
+            gzip.write(raw);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] compressUnchecked(byte[] raw) {
+        try {
+            return compress(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long writeFully(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return bytes.length;
+    }
+
+    /*
+    Thống kê một lần ghi: bytes dữ liệu, bytes trên đĩa, thời gian, throughput
+     */
+    public static class WriteReport {
+        private final File file;
+        private final long rawBytes;
+        private final long writtenBytes;
+        private final long nanos;
+
+        WriteReport(File file, long rawBytes, long writtenBytes, long nanos) {
+            this.file = file;
+            this.rawBytes = rawBytes;
+            this.writtenBytes = writtenBytes;
+            this.nanos = nanos;
+        }
+
+        public long getRawBytes() {
+            return rawBytes;
+        }
+
+        public long getWrittenBytes() {
+            return writtenBytes;
+        }
+
+        public double getSeconds() {
+            return nanos / 1_000_000_000.0;
+        }
+
+        // Throughput tính trên dữ liệu đã format (trước khi nén)
+        public double getMegabytesPerSecond() {
+            double seconds = Math.max(getSeconds(), 1e-9);
+            return rawBytes / (1024.0 * 1024.0) / seconds;
+        }
+
+        @Override
+        public String toString() {
+            String size = String.format(Locale.ROOT, "%.2f MB", rawBytes / (1024.0 * 1024.0));
+            if (writtenBytes != rawBytes) {
+                size += String.format(Locale.ROOT, " (%.2f MB on disk)", writtenBytes / (1024.0 * 1024.0));
+            }
+            return String.format(Locale.ROOT, "%s: %s in %.1f ms (%.1f MB/s)",
+                    file.getName(), size, nanos / 1_000_000.0, getMegabytesPerSecond());
+        }
+    }
+}
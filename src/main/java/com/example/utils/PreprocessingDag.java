@@ -0,0 +1,95 @@
+package com.example.utils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.utils.ConsoleCapture.Captured;
+
+import weka.core.Instances;
+
+/*
+Preprocessing dạng DAG các stage có tên, memo theo (tên stage, tham số, fingerprint input)
+- Node = kết quả một stage trên một input; input của stage sau là output của stage trước nên
+  các chuỗi stage giống nhau (cùng dữ liệu, cùng tham số) chỉ tính một lần, dù gọi từ model nào
+- Fingerprint của output được ghi nhớ theo chính object đó (identity, không theo nội dung) → nối stage không
+  phải hash lại dữ liệu; output là chỉ đọc nên fingerprint đã nhớ luôn đúng
+- Tên stage xác định hàm chạy: hai hàm khác nhau phải dùng tên khác nhau dù cùng tham số
+- Hai thread cùng xin một node: một thread tính, thread kia chờ kết quả
+- Log của stage được giữ cùng node và in lại y hệt mỗi lần node được dùng lại → output của caller không phụ
+  thuộc nhánh nào tính node trước
+Output được chia sẻ: CHỈ ĐỌC. Caller cần sửa thì copy trước (new Instances(output)).
+ */
+public class PreprocessingDag {
+    @FunctionalInterface
+    public interface Stage {
+        Instances apply(Instances input) throws Exception;
+    }
+
+    private final Map<String, CompletableFuture<Captured<Instances>>> nodes = new ConcurrentHashMap<>();
+    private final WeakIdentityCache<Instances, Long> fingerprints = new WeakIdentityCache<>();
+    private final AtomicInteger computed = new AtomicInteger();
+    private final AtomicInteger reused = new AtomicInteger();
+
+    /*
+    Chạy một stage (hoặc lấy kết quả đã có)
+    @param name Tên stage, duy nhất cho mỗi hàm (vd "smote", "cleaner-smote", "discretize")
+    @param params Mô tả đầy đủ tham số ảnh hưởng tới output
+    @param input Dataset đầu vào (không bị sửa)
+    @param stage Công việc của stage
+    @return Output dùng chung, chỉ đọc
+    @throws Exception Lỗi của stage
+     */
+    public Instances run(String name, String params, Instances input, Stage stage) throws Exception {
+        String key = String.format("%s[%s]@%016x", name, params, fingerprint(input));
+        CompletableFuture<Captured<Instances>> created = new CompletableFuture<>();
+        CompletableFuture<Captured<Instances>> existing = nodes.putIfAbsent(key, created);
+        if (existing != null) {
+            reused.incrementAndGet();
+            return await(existing).replay();
+        }
+        try {
+            Captured<Instances> output = ConsoleCapture.capture(() -> stage.apply(input));
+            fingerprints.put(output.getValue(), DatasetFingerprint.of(output.getValue()));
+            computed.incrementAndGet();
+            created.complete(output);
+            return output.replay();
+        } catch (Exception | Error e) {
+            // Không giữ node lỗi: lần sau tính lại
+            nodes.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Output của stage (đúng object đó) đã biết fingerprint; object khác thì hash lại
+    private long fingerprint(Instances data) {
+        Long known = fingerprints.get(data);
+        return known != null ? known : DatasetFingerprint.of(data);
+    }
+
+    private Captured<Instances> await(CompletableFuture<Captured<Instances>> node) throws Exception {
+        try {
+            return node.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new Exception(cause);
+        }
+    }
+
+    // Số stage đã tính / dùng lại
+    public void printSummary() {
+        System.out.printf("%nPreprocessing DAG: %d stages computed, %d reused%n", computed.get(), reused.get());
+    }
+
+    // Bỏ mọi kết quả đã giữ (giải phóng bộ nhớ sau pipeline)
+    public void clear() {
+        nodes.clear();
+        fingerprints.clear();
+    }
+}
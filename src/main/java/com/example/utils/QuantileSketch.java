@@ -0,0 +1,264 @@
+package com.example.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+KLL quantile sketch (Karnin, Lang, Liberty 2016)
+- Cập nhật từng giá trị một (streaming), bộ nhớ O(k) không phụ thuộc số dòng
+- merge() được: mỗi thread build sketch riêng rồi gộp lại
+- Sai số rank ~ epsilon * n (forError chọn k tương ứng)
+- Khi chưa phải nén lần nào (n nhỏ) kết quả trùng với giá trị chính xác
+Random có seed cố định → cùng input, cùng thứ tự merge cho cùng kết quả.
+ */
+public class QuantileSketch {
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_LEVEL_CAPACITY = 2;
+    private static final int MIN_K = 8;
+
+    private final int k;
+    private final Random random;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    private int numLevels;
+    private int retained;
+    private int capacity;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public QuantileSketch(int k, long seed) {
+        this.k = Math.max(MIN_K, k);
+        this.random = new Random(seed);
+        addLevel();
+    }
+
+    /*
+    Tạo sketch theo sai số rank mong muốn
+    @param epsilon Sai số rank chuẩn hoá (vd 0.01 = ±1% số dòng)
+    @param seed Seed cho bước nén ngẫu nhiên
+     */
+    public static QuantileSketch forError(double epsilon, long seed) {
+        return new QuantileSketch(kForError(epsilon), seed);
+    }
+
+    // Công thức xấp xỉ sai số của KLL: eps ≈ 2.296 / k^0.9723
+    public static int kForError(double epsilon) {
+        if (epsilon <= 0.0 || epsilon >= 1.0) {
+            throw new IllegalArgumentException("Error bound must be in (0, 1): " + epsilon);
+        }
+        return Math.max(MIN_K, (int) Math.ceil(Math.pow(2.296 / epsilon, 1.0 / 0.9723)));
+    }
+
+    // Bỏ qua NaN (missing) - caller tự đếm missing nếu cần
+    public void update(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (count == 0) {
+            min = value;
+            max = value;
+        } else if (value < min) {
+            min = value;
+        } else if (value > max) {
+            max = value;
+        }
+        count++;
+        append(0, value);
+        if (retained > capacity) {
+            compress();
+        }
+    }
+
+    /*
+    Gộp sketch khác vào sketch này (other không bị thay đổi)
+     */
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        count += other.count;
+        for (int h = 0; h < other.numLevels; h++) {
+            double[] items = other.levels[h];
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, items[i]);
+            }
+        }
+        compress();
+    }
+
+    /*
+    Giá trị ở vị trí rank (0-based) nếu sort toàn bộ giá trị đã thấy
+    @param rank 0 .. getCount()-1
+     */
+    public double valueAtRank(long rank) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (rank <= 0) {
+            return min;
+        }
+        if (rank >= count - 1) {
+            return max;
+        }
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+        for (int h = 0; h < numLevels; h++) {
+            double[] items = levels[h];
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = items[i];
+                weights[n] = 1L << h;
+                n++;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        long cumulative = 0;
+        for (Integer index : order) {
+            cumulative += weights[index];
+            if (cumulative > rank) {
+                return values[index];
+            }
+        }
+        return max;
+    }
+
+    /*
+    @param fraction 0.0 .. 1.0 (0.5 = median)
+     */
+    public double quantile(double fraction) {
+        return valueAtRank((long) Math.floor(fraction * count));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(k);
+        out.writeLong(count);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(numLevels);
+        for (int h = 0; h < numLevels; h++) {
+            int size = sizes[h];
+            out.writeInt(size);
+            double[] items = levels[h];
+            for (int i = 0; i < size; i++) {
+                out.writeDouble(items[i]);
+            }
+        }
+    }
+
+    /*
+    Đọc sketch đã ghi bằng writeTo
+    @param seed Seed cho các lần nén tiếp theo (nếu còn update / merge)
+     */
+    public static QuantileSketch readFrom(DataInput in, long seed) throws IOException {
+        QuantileSketch sketch = new QuantileSketch(in.readInt(), seed);
+        sketch.count = in.readLong();
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        int numLevels = in.readInt();
+        for (int h = 0; h < numLevels; h++) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                sketch.append(h, in.readDouble());
+            }
+        }
+        return sketch;
+    }
+
+    // ===============================
+    // Nén: level h đầy → sort, giữ một nửa (offset ngẫu nhiên), đẩy lên level h+1 với trọng số gấp đôi
+    // ===============================
+    private void compress() {
+        while (retained > capacity) {
+            for (int h = 0; h < numLevels; h++) {
+                if (sizes[h] >= levelCapacity(h)) {
+                    compact(h);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int h) {
+        if (h + 1 == numLevels) {
+            addLevel();
+        }
+        double[] items = levels[h];
+        int size = sizes[h];
+        Arrays.sort(items, 0, size);
+        // Số lẻ phần tử: giữ lại phần tử lớn nhất ở level h
+        int paired = size - (size % 2);
+        int offset = random.nextBoolean() ? 1 : 0;
+        for (int i = offset; i < paired; i += 2) {
+            append(h + 1, items[i]);
+        }
+        int kept = size - paired;
+        if (kept == 1) {
+            items[0] = items[size - 1];
+        }
+        sizes[h] = kept;
+        retained -= size - kept;
+    }
+
+    private void append(int h, double value) {
+        while (numLevels <= h) {
+            addLevel();
+        }
+        double[] items = levels[h];
+        int size = sizes[h];
+        if (size == items.length) {
+            items = Arrays.copyOf(items, Math.max(MIN_LEVEL_CAPACITY, items.length * 2));
+            levels[h] = items;
+        }
+        items[size] = value;
+        sizes[h] = size + 1;
+        retained++;
+    }
+
+    private void addLevel() {
+        levels = Arrays.copyOf(levels, numLevels + 1);
+        sizes = Arrays.copyOf(sizes, numLevels + 1);
+        levels[numLevels] = new double[Math.max(MIN_LEVEL_CAPACITY, numLevels == 0 ? k : k / 2)];
+        numLevels++;
+        // Capacity của các level thay đổi khi thêm level mới
+        capacity = 0;
+        for (int h = 0; h < numLevels; h++) {
+            capacity += levelCapacity(h);
+        }
+    }
+
+    private int levelCapacity(int h) {
+        int depth = numLevels - 1 - h;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.utils;
+
+import java.util.Arrays;
+
+/*
+Chọn phần tử thứ k (0-based) của mảng double trong O(n), không cần sort toàn bộ
+Thứ tự giống Arrays.sort(double[]) / Collections.sort(List<Double>): -0.0 < 0.0, NaN đứng cuối
+→ kết quả trùng khớp tuyệt đối với cách "sort rồi lấy values[k]".
+Mảng đầu vào bị hoán vị tại chỗ.
+ */
+public final class QuickSelect {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private QuickSelect() {
+    }
+
+    /*
+    @param values Mảng dữ liệu (bị sắp xếp lại một phần)
+    @param length Chỉ xét values[0, length)
+    @param k Vị trí cần lấy sau khi sort
+    @return Giá trị sẽ nằm ở vị trí k nếu sort values[0, length)
+     */
+    public static double select(double[] values, int length, int k) {
+        if (k < 0 || k >= length) {
+            throw new IllegalArgumentException("k out of range: " + k + " (length " + length + ")");
+        }
+        int left = 0;
+        int right = length - 1;
+        // Phòng trường hợp pivot xấu liên tục: quá số vòng thì sort đoạn còn lại
+        int budget = 2 * (64 - Long.numberOfLeadingZeros(length));
+        while (right - left > INSERTION_SORT_THRESHOLD) {
+            if (budget-- == 0) {
+                Arrays.sort(values, left, right + 1);
+                return values[k];
+            }
+            int pivotIndex = medianOfThree(values, left, left + (right - left) / 2, right);
+            double pivot = values[pivotIndex];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (Double.compare(values[i], pivot) < 0) {
+                    i++;
+                }
+                while (Double.compare(values[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        insertionSort(values, left, right);
+        return values[k];
+    }
+
+    /*
+    Median giống cách tính cũ (sort rồi lấy giữa, trung bình 2 phần tử giữa nếu n chẵn)
+    @param values Mảng chỉ chứa giá trị hợp lệ ở [0, length), bị hoán vị tại chỗ
+    @param length Số phần tử hợp lệ (> 0)
+     */
+    public static double median(double[] values, int length) {
+        int mid = length / 2;
+        double upper = select(values, length, mid);
+        if (length % 2 == 1) {
+            return upper;
+        }
+        // Sau select, values[0, mid) đều <= upper: phần tử thứ mid-1 là max của đoạn đó
+        double lower = values[0];
+        for (int i = 1; i < mid; i++) {
+            if (Double.compare(values[i], lower) > 0) {
+                lower = values[i];
+            }
+        }
+        return (lower + upper) / 2.0;
+    }
+
+    private static int medianOfThree(double[] values, int a, int b, int c) {
+        if (Double.compare(values[a], values[b]) > 0) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        if (Double.compare(values[b], values[c]) > 0) {
+            b = c;
+            if (Double.compare(values[a], values[b]) > 0) {
+                b = a;
+            }
+        }
+        return b;
+    }
+
+    private static void insertionSort(double[] values, int left, int right) {
+        for (int i = left + 1; i <= right; i++) {
+            double v = values[i];
+            int j = i - 1;
+            while (j >= left && Double.compare(values[j], v) > 0) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = v;
+        }
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double t = values[i];
+        values[i] = values[j];
+        values[j] = t;
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.ParallelIteratedSingleClassifierEnhancer;
+import weka.classifiers.SingleClassifierEnhancer;
+import weka.core.Instances;
+
+/*
+Ngân sách CPU chung cho mọi tầng song song lồng nhau (nhánh pipeline → grid tuning → fold CV → cây RF)
+- Một slot = một thread đang chạy việc nặng. Thread đang giữ slot chỉ XIN THÊM slot còn trống (không chờ),
+  thread chưa có slot (main, pipeline) chờ một slot → không tầng nào làm tràn số core, không deadlock
+- invokeAll(): chạy danh sách task trên slot còn trống, thread gọi cũng làm việc bằng slot của nó
+- buildClassifier(): RandomForest / Bagging nhận numExecutionSlots = số slot xin được lúc build
+- parallelFor(): vòng lặp song song của tầng dữ liệu (profile, SMOTE, dedup...) chạy trong governor mà thread
+  hiện tại đang giữ slot (current()), thay cho parallel stream trên common pool nằm ngoài ngân sách
+- printUtilization(): slot đã dùng và CPU thực của process so với ngân sách
+Tầng ngoài xin slot trước nên được ưu tiên (grid > fold > cây); slot trả lại ngay khi hết việc.
+ */
+public class ResourceGovernor {
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+    // Số block mỗi slot trong parallelFor: đủ nhỏ để cân tải giữa các slot mượn được
+    private static final int BLOCKS_PER_SLOT = 4;
+    // Governor mà thread hiện tại đang giữ slot (null = thread ngoài mọi governor)
+    private static final ThreadLocal<ResourceGovernor> CURRENT = new ThreadLocal<>();
+
+    private final int budget;
+    private final Semaphore slots;
+    // Số slot thread hiện tại đang giữ (slot gốc + slot mượn thêm)
+    private final ThreadLocal<int[]> held = ThreadLocal.withInitial(() -> new int[1]);
+    private final ExecutorService workers;
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicLong busySlotNanos = new AtomicLong();
+    private long windowStart;
+    private long cpuStart;
+
+    public ResourceGovernor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /*
+    @param budget Số slot (thread làm việc) tối đa trên toàn pipeline
+     */
+    public ResourceGovernor(int budget) {
+        this.budget = Math.max(1, budget);
+        this.slots = new Semaphore(this.budget, true);
+        int id = POOL_ID.incrementAndGet();
+        AtomicInteger threadId = new AtomicInteger();
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "governor-" + id + "-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        resetUtilization();
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    // Một lần giữ slot; close() trả slot (dùng với try-with-resources, trên cùng thread đã xin)
+    public final class Lease implements AutoCloseable {
+        private final int own;
+        private final int extra;
+        // current() trước lease này (thread có thể đang giữ slot của governor khác)
+        private final ResourceGovernor previous;
+        private final long start = System.nanoTime();
+        private boolean closed;
+
+        private Lease(int own, int extra, ResourceGovernor previous) {
+            this.own = own;
+            this.extra = extra;
+            this.previous = previous;
+        }
+
+        // Số slot thread này được dùng trong lease (gồm slot đang giữ từ trước)
+        public int slots() {
+            return held.get()[0];
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(own + extra, start);
+            held.get()[0] -= own + extra;
+            if (own > 0) {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /*
+    Xin slot cho thread hiện tại
+    @param wanted Số slot muốn dùng (tính cả slot thread đang giữ)
+    @return Lease: chưa giữ slot nào → chờ 1 slot; sau đó mượn thêm slot còn trống (không chờ) tới wanted
+    @throws InterruptedException Bị ngắt khi đang chờ slot đầu tiên
+     */
+    public Lease acquire(int wanted) throws InterruptedException {
+        int own = 0;
+        ResourceGovernor previous = CURRENT.get();
+        if (held.get()[0] == 0) {
+            slots.acquire();
+            own = 1;
+            occupy(1);
+            CURRENT.set(this);
+        }
+        int extra = tryTake(Math.max(0, wanted - held.get()[0] - own));
+        held.get()[0] += own + extra;
+        return new Lease(own, extra, previous);
+    }
+
+    /*
+    Chạy một task trên slot của thread hiện tại (chờ slot nếu chưa có)
+    @param task Công việc
+    @return Kết quả của task
+    @throws Exception Lỗi của task
+     */
+    @SuppressWarnings("try") // lease chỉ giữ slot trong lúc chạy
+    public <T> T call(Callable<T> task) throws Exception {
+        try (Lease ignored = acquire(1)) {
+            return task.call();
+        }
+    }
+
+    /*
+    Chạy các task độc lập song song trong ngân sách
+    Thread gọi chạy task bằng slot của nó, mỗi slot trống mượn được thêm một worker. Task được lấy theo
+    thứ tự danh sách; worker hết việc trả slot ngay.
+    @param tasks Danh sách task
+    @return Kết quả theo đúng thứ tự danh sách
+    @throws Exception Lỗi đầu tiên (theo thứ tự task) — task chưa bắt đầu bị bỏ
+     */
+    @SuppressWarnings("try") // lease chỉ giữ slot của thread gọi trong lúc chạy
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws Exception {
+        int n = tasks.size();
+        Object[] results = new Object[n];
+        Exception[] errors = new Exception[n];
+        AtomicInteger next = new AtomicInteger();
+        try (Lease ignored = acquire(1)) {
+            int extra = tryTake(n - 1);
+            List<Future<?>> futures = new ArrayList<>(extra);
+            for (int w = 0; w < extra; w++) {
+                futures.add(workers.submit(() -> {
+                    long start = System.nanoTime();
+                    held.get()[0] = 1;
+                    CURRENT.set(this);
+                    try {
+                        drain(tasks, results, errors, next);
+                    } finally {
+                        held.get()[0] = 0;
+                        CURRENT.remove();
+                        release(1, start);
+                    }
+                }));
+            }
+            drain(tasks, results, errors, next);
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new Exception(e.getCause());
+                }
+            }
+        }
+        for (Exception error : errors) {
+            if (error != null) {
+                throw error;
+            }
+        }
+        List<T> ordered = new ArrayList<>(n);
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            T value = (T) result;
+            ordered.add(value);
+        }
+        return ordered;
+    }
+
+    // Governor mà thread hiện tại đang giữ slot, null nếu không có
+    public static ResourceGovernor current() {
+        return CURRENT.get();
+    }
+
+    /*
+    Vòng lặp song song trong ngân sách của current(): [0, n) chia thành block, chạy bằng invokeAll
+    (thread gọi làm việc bằng slot của nó, chỉ mượn thêm slot còn trống). Thread ngoài mọi governor
+    (vd công cụ dòng lệnh, test) → parallel stream như trước.
+    @param n Số vòng lặp
+    @param body Thân vòng lặp cho mỗi index, không phụ thuộc thứ tự
+     */
+    public static void parallelFor(int n, IntConsumer body) {
+        ResourceGovernor governor = CURRENT.get();
+        if (governor == null) {
+            IntStream.range(0, n).parallel().forEach(body);
+            return;
+        }
+        governor.forRange(n, body);
+    }
+
+    private void forRange(int n, IntConsumer body) {
+        if (n <= 0) {
+            return;
+        }
+        int blocks = (int) Math.min(n, (long) budget * BLOCKS_PER_SLOT);
+        List<Callable<Void>> tasks = new ArrayList<>(blocks);
+        for (int b = 0; b < blocks; b++) {
+            int from = (int) ((long) n * b / blocks);
+            int to = (int) ((long) n * (b + 1) / blocks);
+            tasks.add(() -> {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+                return null;
+            });
+        }
+        try {
+            invokeAll(tasks);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Thân vòng lặp không ném checked exception: chỉ còn Error của worker (bọc bởi invokeAll)
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+    Build classifier với số slot còn trống: RandomForest / Bagging (kể cả khi bọc trong
+    CostSensitiveClassifier...) nhận numExecutionSlots = số slot xin được
+    @param classifier Classifier chưa train
+    @param data Dataset train
+     */
+    public void buildClassifier(Classifier classifier, Instances data) throws Exception {
+        ParallelIteratedSingleClassifierEnhancer ensemble = findEnsemble(classifier);
+        int wanted = ensemble == null ? 1 : budget;
+        try (Lease lease = acquire(wanted)) {
+            if (ensemble != null) {
+                ensemble.setNumExecutionSlots(lease.slots());
+            }
+            classifier.buildClassifier(data);
+        }
+    }
+
+    // Bắt đầu cửa sổ đo utilization mới
+    public synchronized void resetUtilization() {
+        busySlotNanos.set(0);
+        peak.set(inUse.get());
+        windowStart = System.nanoTime();
+        cpuStart = processCpuNanos();
+    }
+
+    // In slot-time đã dùng và CPU thực của process so với ngân sách kể từ resetUtilization()
+    public synchronized void printUtilization() {
+        double wall = Math.max(1, System.nanoTime() - windowStart);
+        double capacity = wall * budget;
+        System.out.printf("%nResource governor: budget %d slots, peak %d in use, slot utilization %.1f%% over %.1f s%n",
+                budget, peak.get(), 100.0 * busySlotNanos.get() / capacity, wall / 1e9);
+        long cpu = processCpuNanos();
+        if (cpu >= 0 && cpuStart >= 0) {
+            System.out.printf("  ℹ Process CPU: %.1f s = %.1f%% of budget (%d cores available)%n",
+                    (cpu - cpuStart) / 1e9, 100.0 * (cpu - cpuStart) / capacity,
+                    Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private <T> void drain(List<? extends Callable<T>> tasks, Object[] results, Exception[] errors,
+                           AtomicInteger next) {
+        int i;
+        while ((i = next.getAndIncrement()) < tasks.size()) {
+            try {
+                results[i] = tasks.get(i).call();
+            } catch (Exception e) {
+                errors[i] = e;
+                next.set(tasks.size());
+            }
+        }
+    }
+
+    private int tryTake(int wanted) {
+        int taken = 0;
+        while (taken < wanted && slots.tryAcquire()) {
+            taken++;
+        }
+        if (taken > 0) {
+            occupy(taken);
+        }
+        return taken;
+    }
+
+    private void occupy(int count) {
+        peak.accumulateAndGet(inUse.addAndGet(count), Math::max);
+    }
+
+    private void release(int count, long since) {
+        if (count == 0) {
+            return;
+        }
+        busySlotNanos.addAndGet(count * (System.nanoTime() - since));
+        inUse.addAndGet(-count);
+        slots.release(count);
+    }
+
+    private static ParallelIteratedSingleClassifierEnhancer findEnsemble(Classifier classifier) {
+        Classifier current = classifier;
+        while (current != null) {
+            if (current instanceof ParallelIteratedSingleClassifierEnhancer) {
+                return (ParallelIteratedSingleClassifierEnhancer) current;
+            }
+            current = current instanceof SingleClassifierEnhancer
+                    ? ((SingleClassifierEnhancer) current).getClassifier() : null;
+        }
+        return null;
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.utils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Cache gắn với chính object (so sánh ==, identityHashCode), key giữ bằng weak reference
+Khác WeakHashMap<Instances, ...>: Instances là AbstractList nên equals/hashCode theo NỘI DUNG
+→ mỗi lookup hash cả dataset, sửa tại chỗ làm đổi hash (remove không tìm thấy entry cũ) và hai dataset
+cùng nội dung dùng chung entry. Ở đây lookup O(1), entry tự bị dọn khi object key được GC.
+Thread-safe (mọi thao tác synchronized).
+ */
+public final class WeakIdentityCache<K, V> {
+    private final Map<IdentityKey<K>, V> entries = new HashMap<>();
+    private final ReferenceQueue<K> collected = new ReferenceQueue<>();
+
+    public synchronized V get(K key) {
+        expunge();
+        return entries.get(new IdentityKey<>(key, null));
+    }
+
+    public synchronized void put(K key, V value) {
+        expunge();
+        entries.put(new IdentityKey<>(key, collected), value);
+    }
+
+    public synchronized void remove(K key) {
+        expunge();
+        entries.remove(new IdentityKey<>(key, null));
+    }
+
+    public synchronized void clear() {
+        expunge();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        expunge();
+        return entries.size();
+    }
+
+    private void expunge() {
+        Object reference;
+        while ((reference = collected.poll()) != null) {
+            entries.remove(reference);
+        }
+    }
+
+    private static final class IdentityKey<K> extends WeakReference<K> {
+        private final int hash;
+
+        IdentityKey(K referent, ReferenceQueue<K> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey<?>) other).get();
+        }
+    }
+}